@@ -0,0 +1,132 @@
+package hr.fer.zemris.engine.demo;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hr.fer.zemris.engine.road.PathfindingProblem;
+import hr.fer.zemris.engine.search.ExternalGridAStar;
+import hr.fer.zemris.engine.search.GridIndexer;
+import hr.fer.zemris.engine.search.ISearchAlgorithm;
+import hr.fer.zemris.engine.search.Node;
+import hr.fer.zemris.engine.terrain.SimplexHeightGenerator;
+import hr.fer.zemris.engine.util.Point2Df;
+import hr.fer.zemris.engine.util.Point2Di;
+import hr.fer.zemris.engine.util.SamplerUtility.SamplingType;
+
+/**
+ * Finds a road over a large domain with the memory-bounded search and checks
+ * that the heap grew by no more than the memory budget of the open list during
+ * the search, exiting with status 1 otherwise. Domain is the one from
+ * PathfinderRoadsScene; arguments are cell size and the budget in megabytes,
+ * e.g. "5 64". Heap is measured after a full collection every second, so
+ * garbage is not counted and the search runs somewhat slower than it would.
+ * Maximum heap has to hold the heap used before the search and the budget,
+ * e.g. -Xmx256m for the default budget of 64 MB; -XX:MarkSweepDeadRatio=0 keeps
+ * full collections from leaving dead objects in place, which would be counted.
+ */
+public class ExternalSearchBenchmark {
+
+	private static final long SAMPLE_MILLIS = 1000;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		float cellSize = args.length > 0 ? Float.parseFloat(args[0]) : 5f;
+		long budget = (args.length > 1 ? Long.parseLong(args[1]) : 64) << 20;
+		float margin = 10f;
+
+		SimplexHeightGenerator heightGenerator = new SimplexHeightGenerator(1, 9000f, 0.0001f, 2f, 5, 0.4f, 0.2f, 5f);
+
+		PathfindingProblem problem = new PathfindingProblem(
+				new Point2Df(9500f, -5100f), // start
+				new Point2Df(10000f - margin, -22000f + margin), // goal
+				new Point2Df(margin, -5000f - margin), // domainLowerLeftLimit
+				new Point2Df(10000f - margin, -22000f + margin), // domainUpperRightLimit
+				heightGenerator, cellSize,
+				false, // allowTunnels
+				15f, // minimum tunnel depth
+				4500f, // tunnelInnerRadius
+				6000f, // tunnelOuterRadius
+				100, // tunnelCandidates
+				true, // limitTunnelCandidates
+				new Random(0), // random,
+				4, // roadRange,
+				0.35, // maxRoadSlopePercent,
+				1.75, // maxRoadCurvature,
+				1.0, // roadLengthMultiplier,
+				80.0, // roadSlopeMultiplier,
+				10.0, // roadCurvatureMultiplier,
+				2.0, // roadSlopeExponent,
+				3.0, // roadCurvatureExponent,
+				0.25, // maxTunnelSlopePercent,
+				1.75, // maxTunnelCurvature,
+				10.0, // tunnelLengthMultiplier,
+				200.0, // tunnelSlopeMultiplier,
+				10.0, // tunnelCurvatureMultiplier,
+				2.0, // tunnelSlopeExponent,
+				3.0, // tunnelCurvatureExponent,
+				SamplingType.FARTHEST // roadSamplingType
+		);
+
+		Point2Df goal = problem.getGoalLocation();
+		float goalY = heightGenerator.getHeightApprox(goal.getX(), goal.getZ());
+		ISearchAlgorithm<Point2Di> algorithm = new ExternalGridAStar(problem, state -> {
+			Point2Df point = problem.gridToReal(state);
+			float pointY = heightGenerator.getHeightApprox(point.getX(), point.getZ());
+			return Math.sqrt(Math.pow(point.getX() - goal.getX(), 2.0) + Math.pow(pointY - goalY, 2.0) +
+					Math.pow(point.getZ() - goal.getZ(), 2.0));
+		}, budget, cellSize);
+
+		// slope limits of all cells are computed on first use, they belong to the problem
+		problem.getSuccessors(problem.getInitialState());
+		// names of temporary files are random, the generator loads security providers on first use
+		Files.delete(Files.createTempFile("open", ".bin"));
+
+		liveHeap(); // management beans are created by the first call, after its collection
+		long baseline = liveHeap();
+		AtomicLong peak = new AtomicLong(baseline);
+		Thread sampler = new Thread(() -> {
+			while(true) {
+				peak.accumulateAndGet(liveHeap(), Math::max);
+				try {
+					Thread.sleep(SAMPLE_MILLIS);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		});
+		sampler.setDaemon(true);
+		sampler.start();
+
+		Optional<Node<Point2Di>> result = algorithm.search();
+
+		sampler.interrupt();
+		sampler.join();
+
+		System.out.println("Grid cells: " + new GridIndexer(problem).size());
+		System.out.println("Path cost: " + result.map(node -> String.valueOf(node.getCost())).orElse("no path"));
+		System.out.println("Statistics: " + algorithm.getStatistics().get());
+		System.out.println("Open list budget: " + (budget >> 20) + " MB");
+		System.out.println("Heap before search: " + (baseline >> 20) + " MB, peak heap: " + (peak.get() >> 20) + " MB");
+
+		long growth = peak.get() - baseline;
+		if(growth > budget) {
+			System.out.println("Heap grew by " + (growth >> 10) + " kB, more than the budget.");
+			System.exit(1);
+		}
+		System.out.println("Heap grew by " + (growth >> 10) + " kB, within the budget.");
+	}
+
+	// heap left by a full collection, before other threads allocate again
+	private static long liveHeap() {
+		System.gc();
+		return ManagementFactory.getMemoryPoolMXBeans().stream()
+				.filter(pool -> pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null)
+				.mapToLong(pool -> pool.getCollectionUsage().getUsed())
+				.sum();
+	}
+
+}
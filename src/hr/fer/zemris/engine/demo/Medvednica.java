@@ -38,7 +38,7 @@ import hr.fer.zemris.engine.renderer.MasterRenderer;
 import hr.fer.zemris.engine.road.Pathfinder;
 import hr.fer.zemris.engine.road.Road;
 import hr.fer.zemris.engine.road.TunnelManager;
-import hr.fer.zemris.engine.search.AStar;
+import hr.fer.zemris.engine.search.GridAStar;
 import hr.fer.zemris.engine.terrain.BiomesMap;
 import hr.fer.zemris.engine.terrain.IHeightMap;
 import hr.fer.zemris.engine.terrain.ITerrain;
@@ -54,7 +54,6 @@ import hr.fer.zemris.engine.texture.TerrainTexturePack;
 import hr.fer.zemris.engine.util.CatmullRomSpline3D;
 import hr.fer.zemris.engine.util.Globals;
 import hr.fer.zemris.engine.util.Point2Df;
-import hr.fer.zemris.engine.util.Point2Di;
 import hr.fer.zemris.engine.util.PoissonDiskSampler;
 import hr.fer.zemris.engine.util.QueueProduct;
 import hr.fer.zemris.engine.util.Range;
@@ -151,7 +150,7 @@ public class Medvednica {
 		Point2Df domainUpperRightLimit = new Point2Df(size, 0f);
 
 		Pathfinder pathfinder = new Pathfinder(
-				AStar<Point2Di>::new, // algorithm
+				GridAStar::new, // algorithm
 				CatmullRomSpline3D::new, // spline
 				new Point2Df(9350f, 11950f), // start,
 				new Point2Df(4000f, 0f), // goal,
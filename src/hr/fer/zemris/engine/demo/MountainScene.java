@@ -33,7 +33,7 @@ import hr.fer.zemris.engine.renderer.MasterRenderer;
 import hr.fer.zemris.engine.road.Pathfinder;
 import hr.fer.zemris.engine.road.Road;
 import hr.fer.zemris.engine.road.TunnelManager;
-import hr.fer.zemris.engine.search.AStar;
+import hr.fer.zemris.engine.search.GridAStar;
 import hr.fer.zemris.engine.terrain.BiomesMap;
 import hr.fer.zemris.engine.terrain.IHeightMap;
 import hr.fer.zemris.engine.terrain.ITerrain;
@@ -48,7 +48,6 @@ import hr.fer.zemris.engine.texture.TerrainTexturePack;
 import hr.fer.zemris.engine.util.CatmullRomSpline3D;
 import hr.fer.zemris.engine.util.Globals;
 import hr.fer.zemris.engine.util.Point2Df;
-import hr.fer.zemris.engine.util.Point2Di;
 import hr.fer.zemris.engine.util.PoissonDiskSampler;
 import hr.fer.zemris.engine.util.QueueProduct;
 import hr.fer.zemris.engine.util.Range;
@@ -135,7 +134,7 @@ public class MountainScene {
 
 		// tunnels not allowed, only roads with max slope 0.15
 		Pathfinder pathfinder = new Pathfinder(
-				AStar<Point2Di>::new, // algorithm
+				GridAStar::new, // algorithm
 				CatmullRomSpline3D::new, // spline
 				new Point2Df(6000f, -21560f), // start,
 				new Point2Df(11580f, -7130f), // goal,
@@ -0,0 +1,94 @@
+package hr.fer.zemris.engine.demo;
+
+import hr.fer.zemris.engine.terrain.SimplexHeightGenerator;
+import hr.fer.zemris.engine.terrain.SimplexHeightGenerator.NoiseMode;
+import hr.fer.zemris.engine.util.FastSimplexNoise;
+import hr.fer.zemris.engine.util.OpenSimplexNoise;
+
+/**
+ * Measures evaluations per second of the double and single precision 2D noise
+ * and of simplex heights and normals in both modes, on one thread, at points of
+ * a square grid like the vertices of a terrain. Heights and normals of the grid
+ * are first computed in the checked mode, which fails if fast noise differs from
+ * precise noise by more than its tolerance. Argument is the number of points
+ * along a side of the grid, e.g. "1000".
+ */
+public class NoiseBenchmark {
+
+	private static final int ROUNDS = 5;
+	private static final float AREA_SIZE = 20000f;
+
+	public static void main(String[] args) {
+		int side = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int count = side * side;
+
+		float[] xs = new float[count];
+		float[] zs = new float[count];
+		for(int i = 0; i < count; i++) {
+			xs[i] = i % side * AREA_SIZE / side;
+			zs[i] = i / side * AREA_SIZE / side;
+		}
+
+		SimplexHeightGenerator checked = new SimplexHeightGenerator(1, NoiseMode.CHECKED);
+		checked.getHeightsApprox(xs, zs, count, new float[count]);
+		checked.getNormalsApprox(xs, zs, count, new float[count * 3]);
+		System.out.println("Fast noise is within tolerance at " + count + " points.");
+
+		// noise coordinates of the highest octave of the default generator
+		float[] noiseXs = new float[count];
+		float[] noiseZs = new float[count];
+		for(int i = 0; i < count; i++) {
+			noiseXs[i] = xs[i] * 0.0016f;
+			noiseZs[i] = zs[i] * 0.0016f;
+		}
+
+		OpenSimplexNoise preciseNoise = new OpenSimplexNoise(1);
+		FastSimplexNoise fastNoise = new FastSimplexNoise(1);
+		measure("OpenSimplexNoise", count, () -> {
+			double sum = 0;
+			for(int i = 0; i < count; i++) sum += preciseNoise.eval(noiseXs[i], noiseZs[i]);
+			return sum;
+		});
+		measure("FastSimplexNoise", count, () -> {
+			double sum = 0;
+			for(int i = 0; i < count; i++) sum += fastNoise.eval(noiseXs[i], noiseZs[i]);
+			return sum;
+		});
+
+		float[] heights = new float[count];
+		float[] normals = new float[count * 3];
+		for(NoiseMode mode : new NoiseMode[] {NoiseMode.PRECISE, NoiseMode.FAST}) {
+			SimplexHeightGenerator generator = new SimplexHeightGenerator(1, mode);
+			measure("Heights, " + mode, count, () -> {
+				generator.getHeightsApprox(xs, zs, count, heights);
+				return heights[count - 1];
+			});
+			measure("Normals, " + mode, count, () -> {
+				generator.getNormalsApprox(xs, zs, count, normals);
+				return normals[count * 3 - 1];
+			});
+		}
+	}
+
+	// best of a few rounds, the first ones include compilation
+	private static void measure(String name, int count, Measurement measurement) {
+		long best = Long.MAX_VALUE;
+		double result = 0;
+
+		for(int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			result += measurement.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		System.out.println(String.format("%-20s %8.2f M evaluations/s (checksum %.3f)", name,
+				count / (best / 1e9) / 1e6, result));
+	}
+
+	private interface Measurement {
+
+		double run();
+
+	}
+
+}
@@ -0,0 +1,166 @@
+package hr.fer.zemris.engine.road;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+
+import hr.fer.zemris.engine.util.Fingerprint;
+import hr.fer.zemris.engine.util.Point2Df;
+
+/**
+ * Cost model with penalties for length, slope and curvature. A segment costs its
+ * length in 3D times the length multiplier plus the same length times its slope
+ * angle raised to the slope exponent and the slope multiplier; a turn costs its
+ * angle raised to the curvature exponent times the curvature multiplier. Slopes
+ * and turns steeper than the limits are infeasible.
+ *
+ * Slope penalties are read from a table over the ratio of height difference and
+ * length with linear interpolation; for slope exponents of one and of two or more
+ * it differs from the exact penalty by less than a millionth of the penalty of
+ * the steepest slope. Curvature penalties between all pairs of grid directions
+ * within the heading range are precomputed exactly, turns between longer
+ * directions are computed directly.
+ */
+public class DefaultCostModel implements ICostModel {
+	
+	private static final int SLOPE_TABLE_SIZE = 4096;
+	private static final int MAX_HEADING_RANGE = 8; // table of range r has (2r+1)^4 entries
+	
+	private final Penalties road;
+	private final Penalties tunnel;
+	private final long fingerprint; // heading range changes only precomputation, not costs
+	
+	/**
+	 * Slope limits are given in percentage and curvature limits in radians. Heading
+	 * range should be the road range of the problem.
+	 */
+	public DefaultCostModel(int headingRange, double maxRoadSlopePercent, double maxRoadCurvature,
+			double roadLengthMultiplier, double roadSlopeMultiplier, double roadCurvatureMultiplier,
+			double roadSlopeExponent, double roadCurvatureExponent, double maxTunnelSlopePercent,
+			double maxTunnelCurvature, double tunnelLengthMultiplier, double tunnelSlopeMultiplier,
+			double tunnelCurvatureMultiplier, double tunnelSlopeExponent, double tunnelCurvatureExponent) {
+		if(headingRange < 0) {
+			throw new IllegalArgumentException("Heading range must be non-negative, got: " + headingRange);
+		}
+		
+		int range = Math.min(headingRange, MAX_HEADING_RANGE);
+		this.road = new Penalties(range, maxRoadSlopePercent, maxRoadCurvature, roadLengthMultiplier,
+				roadSlopeMultiplier, roadCurvatureMultiplier, roadSlopeExponent, roadCurvatureExponent);
+		this.tunnel = new Penalties(range, maxTunnelSlopePercent, maxTunnelCurvature, tunnelLengthMultiplier,
+				tunnelSlopeMultiplier, tunnelCurvatureMultiplier, tunnelSlopeExponent, tunnelCurvatureExponent);
+		this.fingerprint = new Fingerprint(DefaultCostModel.class.getName())
+				.add(maxRoadSlopePercent).add(maxRoadCurvature).add(roadLengthMultiplier).add(roadSlopeMultiplier)
+				.add(roadCurvatureMultiplier).add(roadSlopeExponent).add(roadCurvatureExponent)
+				.add(maxTunnelSlopePercent).add(maxTunnelCurvature).add(tunnelLengthMultiplier)
+				.add(tunnelSlopeMultiplier).add(tunnelCurvatureMultiplier).add(tunnelSlopeExponent)
+				.add(tunnelCurvatureExponent).get();
+	}
+	
+	@Override
+	public double getRoadCost(double horizontalLength, double heightDifference) {
+		return road.segmentCost(horizontalLength, heightDifference);
+	}
+	
+	@Override
+	public double getTunnelCost(double horizontalLength, double heightDifference) {
+		return tunnel.segmentCost(horizontalLength, heightDifference);
+	}
+	
+	@Override
+	public double getRoadCurvatureCost(int fromX, int fromZ, int toX, int toZ) {
+		return road.curvatureCost(fromX, fromZ, toX, toZ);
+	}
+	
+	@Override
+	public double getTunnelCurvatureCost(int fromX, int fromZ, int toX, int toZ) {
+		return tunnel.curvatureCost(fromX, fromZ, toX, toZ);
+	}
+	
+	@Override
+	public double getMinimalCostPerLength() {
+		return Math.max(0.0, Math.min(road.minimalCostPerLength, tunnel.minimalCostPerLength));
+	}
+	
+	@Override
+	public OptionalLong getFingerprint() {
+		return OptionalLong.of(fingerprint);
+	}
+	
+	// slope limit in percentage is converted the same way as it always was
+	private static double percentageToAngle(double p) {
+		return p / Math.sqrt(1 + p * p);
+	}
+	
+	private static class Penalties {
+		
+		private final double maxRatio; // sine of the steepest allowed slope
+		private final double ratioStep;
+		private final double lengthMultiplier;
+		private final double[] slopePenalties; // per unit of length, by ratio
+		private final double minimalCostPerLength; // 3D length is never shorter than the horizontal one
+		
+		private final int headingRange;
+		private final int side;
+		private final double maxCurvature;
+		private final double curvatureMultiplier;
+		private final double curvatureExponent;
+		private final double[] curvaturePenalties; // by both directions
+		
+		public Penalties(int headingRange, double maxSlopePercent, double maxCurvature, double lengthMultiplier,
+				double slopeMultiplier, double curvatureMultiplier, double slopeExponent, double curvatureExponent) {
+			this.maxRatio = Math.sin(percentageToAngle(maxSlopePercent));
+			this.ratioStep = maxRatio / (SLOPE_TABLE_SIZE - 1);
+			this.lengthMultiplier = lengthMultiplier;
+			this.slopePenalties = new double[SLOPE_TABLE_SIZE];
+			for(int i = 0; i < SLOPE_TABLE_SIZE; i++) {
+				slopePenalties[i] = Math.pow(Math.asin(i * ratioStep), slopeExponent) * slopeMultiplier;
+			}
+			this.minimalCostPerLength = lengthMultiplier + Arrays.stream(slopePenalties).min().getAsDouble();
+			
+			this.headingRange = headingRange;
+			this.side = 2 * headingRange + 1;
+			this.maxCurvature = maxCurvature;
+			this.curvatureMultiplier = curvatureMultiplier;
+			this.curvatureExponent = curvatureExponent;
+			this.curvaturePenalties = new double[side * side * side * side];
+			for(int from = 0; from < side * side; from++) {
+				for(int to = 0; to < side * side; to++) {
+					curvaturePenalties[from * side * side + to] = computeCurvatureCost(
+							from % side - headingRange, from / side - headingRange,
+							to % side - headingRange, to / side - headingRange);
+				}
+			}
+		}
+		
+		public double segmentCost(double horizontalLength, double heightDifference) {
+			double length = Math.sqrt(horizontalLength * horizontalLength + heightDifference * heightDifference);
+			double ratio = Math.abs(heightDifference) / length;
+			if(ratio > maxRatio) return Double.POSITIVE_INFINITY;
+			
+			double position = ratio / ratioStep;
+			int i = Math.min((int) position, SLOPE_TABLE_SIZE - 2);
+			double t = position - i;
+			double slopePenalty = slopePenalties[i] + (slopePenalties[i + 1] - slopePenalties[i]) * t;
+			
+			return length * (lengthMultiplier + slopePenalty);
+		}
+		
+		public double curvatureCost(int fromX, int fromZ, int toX, int toZ) {
+			if(Math.abs(fromX) > headingRange || Math.abs(fromZ) > headingRange ||
+					Math.abs(toX) > headingRange || Math.abs(toZ) > headingRange) {
+				return computeCurvatureCost(fromX, fromZ, toX, toZ);
+			}
+			
+			int from = (fromZ + headingRange) * side + fromX + headingRange;
+			int to = (toZ + headingRange) * side + toX + headingRange;
+			return curvaturePenalties[from * side * side + to];
+		}
+		
+		private double computeCurvatureCost(int fromX, int fromZ, int toX, int toZ) {
+			double angle = Point2Df.angle(new Point2Df(fromX, fromZ), new Point2Df(toX, toZ));
+			if(angle > maxCurvature) return Double.POSITIVE_INFINITY;
+			return Math.pow(angle, curvatureExponent) * curvatureMultiplier;
+		}
+		
+	}
+
+}
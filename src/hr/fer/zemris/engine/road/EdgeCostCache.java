@@ -0,0 +1,145 @@
+package hr.fer.zemris.engine.road;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded map from non-negative long keys to double values, safe for use from
+ * multiple threads. Keys are spread over independently locked segments, each an
+ * open addressing table with a limited probe length. When no free slot is found
+ * within the probe length, the entry in the home slot of the key is evicted.
+ */
+public class EdgeCostCache {
+
+	private static final long EMPTY = -1L;
+	private static final int SEGMENTS = 64;
+	private static final int PROBE_LENGTH = 8;
+
+	private final Segment[] segments;
+	private final int segmentMask;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public EdgeCostCache(int capacity) {
+		if(capacity < SEGMENTS) {
+			throw new IllegalArgumentException("Cache capacity must be at least " + SEGMENTS + ", got: " + capacity);
+		}
+
+		int segmentCapacity = Integer.highestOneBit(capacity / SEGMENTS);
+		this.segments = new Segment[SEGMENTS];
+		for(int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(segmentCapacity);
+		}
+		this.segmentMask = segmentCapacity - 1;
+	}
+
+	/**
+	 * Returns the cached value of the key, or NaN if the key is not cached.
+	 */
+	public double get(long key) {
+		long hash = mix(key);
+		double value = segments[(int) (hash >>> 58)].get(key, (int) hash & segmentMask);
+
+		if(Double.isNaN(value)) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+
+		return value;
+	}
+
+	public void put(long key, double value) {
+		if(key < 0) {
+			throw new IllegalArgumentException("Cache keys must be non-negative, got: " + key);
+		}
+
+		long hash = mix(key);
+		if(segments[(int) (hash >>> 58)].put(key, value, (int) hash & segmentMask)) {
+			evictions.increment();
+		}
+	}
+
+	public void clear() {
+		for(Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public double getHitRate() {
+		long hits = getHits();
+		long lookups = hits + getMisses();
+		return lookups == 0 ? 0.0 : hits / (double) lookups;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits: %d, misses: %d, evictions: %d, hit rate: %.3f",
+				getHits(), getMisses(), getEvictions(), getHitRate());
+	}
+
+	// finalizer of splitmix64, neighbouring edges end up in different segments
+	private static long mix(long key) {
+		key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+		key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+		return key ^ (key >>> 31);
+	}
+
+	private static class Segment {
+
+		private final long[] keys;
+		private final double[] values;
+
+		public Segment(int capacity) {
+			this.keys = new long[capacity];
+			this.values = new double[capacity];
+			Arrays.fill(keys, EMPTY);
+		}
+
+		public synchronized double get(long key, int slot) {
+			for(int i = 0; i < PROBE_LENGTH; i++) {
+				int current = (slot + i) & (keys.length - 1);
+				if(keys[current] == key) return values[current];
+				if(keys[current] == EMPTY) break;
+			}
+
+			return Double.NaN;
+		}
+
+		// returns true if an entry was evicted
+		public synchronized boolean put(long key, double value, int slot) {
+			for(int i = 0; i < PROBE_LENGTH; i++) {
+				int current = (slot + i) & (keys.length - 1);
+				if(keys[current] == key || keys[current] == EMPTY) {
+					keys[current] = key;
+					values[current] = value;
+					return false;
+				}
+			}
+
+			keys[slot] = key;
+			values[slot] = value;
+			return true;
+		}
+
+		public synchronized void clear() {
+			Arrays.fill(keys, EMPTY);
+		}
+
+	}
+
+}
@@ -0,0 +1,104 @@
+package hr.fer.zemris.engine.road;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import hr.fer.zemris.engine.search.GridCostField;
+import hr.fer.zemris.engine.search.GridDijkstra;
+import hr.fer.zemris.engine.search.ISearchAlgorithm;
+import hr.fer.zemris.engine.search.Node;
+import hr.fer.zemris.engine.util.AbstractSpline;
+import hr.fer.zemris.engine.util.Point2Df;
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Plans roads from a single hub, the start location of the problem, to many
+ * destinations. A single uniform-cost search from the hub stores costs and
+ * predecessors of all reached cells; the path to a destination is then read
+ * from it in time proportional to the path length. Goal of the problem is
+ * ignored.
+ */
+public class HubPlanner {
+
+	private static final Logger LOGGER = Logger.getLogger(HubPlanner.class.getName());
+
+	private final PathfindingProblem problem;
+	private final GridCostField costField;
+
+	/**
+	 * Searches the whole domain, so roads to any destination can be planned.
+	 */
+	public HubPlanner(PathfindingProblem problem) {
+		this(problem, Collections.emptyList());
+	}
+
+	/**
+	 * Stops the search once all given destinations are reached; roads to other
+	 * destinations can be missing or more expensive than necessary.
+	 */
+	public HubPlanner(PathfindingProblem problem, Collection<Point2Df> destinations) {
+		this.problem = problem;
+
+		long start = System.nanoTime();
+		List<Point2Di> targets = destinations.stream().map(problem::realToGrid).collect(Collectors.toList());
+		this.costField = new GridDijkstra(problem).search(targets);
+		LOGGER.info("Hub search duration: " + (System.nanoTime() - start) * 1e-9);
+	}
+
+	public boolean isReachable(Point2Df destination) {
+		return costField.isReached(problem.realToGrid(destination));
+	}
+
+	public double getCost(Point2Df destination) {
+		return costField.getCost(problem.realToGrid(destination));
+	}
+
+	/**
+	 * Creates a pathfinder for the road from the hub to the destination. It does
+	 * not search again, but its waypoints, trajectory, modifiers and tunnel data
+	 * are generated the same way as for any other pathfinder.
+	 */
+	public Pathfinder createPathfinder(Point2Df destination,
+			BiFunction<List<Vector3f>, Float, AbstractSpline<Vector3f>> splineSupplier,
+			int endpointOffset, int maskOffset) {
+		Optional<Node<Point2Di>> node = costField.getNode(problem.realToGrid(destination));
+
+		return new Pathfinder((p, h) -> new FixedPathAlgorithm(node), splineSupplier,
+				problem.withEndpoints(problem.getStartLocation(), destination), endpointOffset, maskOffset);
+	}
+
+	public Optional<List<Vector3f>> findTrajectory(Point2Df destination,
+			BiFunction<List<Vector3f>, Float, AbstractSpline<Vector3f>> splineSupplier,
+			int endpointOffset, int maskOffset, float segmentLength) {
+		return createPathfinder(destination, splineSupplier, endpointOffset, maskOffset).findTrajectory(segmentLength);
+	}
+
+	// returns the path read from the cost field instead of searching
+	private static class FixedPathAlgorithm implements ISearchAlgorithm<Point2Di> {
+
+		private final Optional<Node<Point2Di>> node;
+
+		public FixedPathAlgorithm(Optional<Node<Point2Di>> node) {
+			this.node = node;
+		}
+
+		@Override
+		public Optional<Node<Point2Di>> search() {
+			return node;
+		}
+
+		@Override
+		public String getName() {
+			return "Hub cost field";
+		}
+
+	}
+
+}
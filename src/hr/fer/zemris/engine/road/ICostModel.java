@@ -0,0 +1,52 @@
+package hr.fer.zemris.engine.road;
+
+import java.util.OptionalLong;
+
+/**
+ * Cost of roads and tunnels between cells of a pathfinding problem. Costs are
+ * split into a part which depends only on the segment itself and a part which
+ * depends on the turn from the previous segment, so the former can be cached.
+ * Infeasible segments and turns cost positive infinity. Implementations are used
+ * from multiple threads and must not change their costs.
+ */
+public interface ICostModel {
+	
+	/**
+	 * Cost of a road of the given horizontal length whose ends differ in height.
+	 */
+	public double getRoadCost(double horizontalLength, double heightDifference);
+	
+	/**
+	 * Cost of a tunnel of the given horizontal length whose ends differ in height;
+	 * tunnel depth is checked by the problem.
+	 */
+	public double getTunnelCost(double horizontalLength, double heightDifference);
+	
+	/**
+	 * Cost of turning a road from the first grid direction to the second one.
+	 */
+	public double getRoadCurvatureCost(int fromX, int fromZ, int toX, int toZ);
+	
+	/**
+	 * Cost of turning a tunnel from the first grid direction to the second one.
+	 */
+	public double getTunnelCurvatureCost(int fromX, int fromZ, int toX, int toZ);
+	
+	/**
+	 * Lower bound of the cost of roads and tunnels per unit of horizontal length;
+	 * turns are assumed not to lower costs. Zero if not known.
+	 */
+	public default double getMinimalCostPerLength() {
+		return 0.0;
+	}
+	
+	/**
+	 * Hash of the parameters of the model, equal for models with equal costs.
+	 * Models which cannot be identified return nothing; their routes are not
+	 * cached.
+	 */
+	public default OptionalLong getFingerprint() {
+		return OptionalLong.empty();
+	}
+
+}
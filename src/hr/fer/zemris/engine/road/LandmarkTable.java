@@ -0,0 +1,387 @@
+package hr.fer.zemris.engine.road;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.logging.Logger;
+
+import hr.fer.zemris.engine.search.GridIndexer;
+import hr.fer.zemris.engine.search.IHeuristics;
+import hr.fer.zemris.engine.search.IndexedMinHeap;
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Costs from a few landmark blocks to all blocks of the pathfinding grid and
+ * back, where a block is a square of blockSize x blockSize cells. Blocks are
+ * joined by the cheapest road between their cells, without turning costs, and
+ * by tunnels priced at the minimal cost per length of the cost model over the
+ * shortest distance a tunnel between them can have, whether or not a cell
+ * tries it. Any path of the grid is at least as expensive as the path of its
+ * blocks, so heuristics created from the table bound the cost between two
+ * cells from below by the triangle inequality, both over the costs from the
+ * landmarks and over those to them.
+ *
+ * Bounds hold for moves between cells of the grid. Straight roads of any-angle
+ * searches are priced from heights sampled between cells, so for them the
+ * estimates are lower bounds only up to that difference.
+ *
+ * Table depends only on the terrain, the cost model and the grid of the
+ * problem, so it can be reused for all queries on the same height map and
+ * stored to disk together with their fingerprint.
+ */
+public class LandmarkTable {
+
+	private static final Logger LOGGER = Logger.getLogger(LandmarkTable.class.getName());
+	private static final int FORMAT_VERSION = 2;
+
+	private final OptionalLong fingerprint;
+	private final Point2Di lowerBound;
+	private final Point2Di upperBound;
+	private final int blockSize;
+	private final GridIndexer blocks;
+	private final Point2Di[] landmarks;
+	private final double[][] costsFrom; // costsFrom[landmark][block index]
+	private final double[][] costsTo;
+
+	private LandmarkTable(OptionalLong fingerprint, Point2Di lowerBound, Point2Di upperBound, int blockSize,
+			Point2Di[] landmarks, double[][] costsFrom, double[][] costsTo) {
+		this.fingerprint = fingerprint;
+		this.lowerBound = lowerBound;
+		this.upperBound = upperBound;
+		this.blockSize = blockSize;
+		this.blocks = new GridIndexer(new Point2Di(0, 0), new Point2Di(
+				(upperBound.getX() - lowerBound.getX()) / blockSize,
+				(upperBound.getZ() - lowerBound.getZ()) / blockSize));
+		this.landmarks = landmarks;
+		this.costsFrom = costsFrom;
+		this.costsTo = costsTo;
+	}
+
+	/**
+	 * Computes the table on the grid of the problem. The first landmark is the
+	 * first block, and every next one is the reached block farthest from all
+	 * previous landmarks.
+	 */
+	public static LandmarkTable compute(PathfindingProblem problem, int blockSize, int landmarkCount) {
+		if(blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be positive, got: " + blockSize);
+		}
+		if(landmarkCount < 1) {
+			throw new IllegalArgumentException("At least one landmark is required, got: " + landmarkCount);
+		}
+
+		long start = System.nanoTime();
+
+		LandmarkTable table = new LandmarkTable(problem.getGridFingerprint(), problem.getGridLowerBound(),
+				problem.getGridUpperBound(), blockSize, new Point2Di[landmarkCount],
+				new double[landmarkCount][], new double[landmarkCount][]);
+		BlockGraph graph = table.new BlockGraph(problem);
+
+		double[] minimalCosts = new double[table.blocks.size()];
+		Arrays.fill(minimalCosts, Double.POSITIVE_INFINITY);
+
+		int landmark = 0;
+		for(int i = 0; i < landmarkCount; i++) {
+			table.landmarks[i] = table.blocks.point(landmark);
+			table.costsFrom[i] = graph.search(landmark, false);
+			table.costsTo[i] = graph.search(landmark, true);
+
+			int farthest = -1;
+			for(int index = 0; index < minimalCosts.length; index++) {
+				minimalCosts[index] = Math.min(minimalCosts[index], table.costsFrom[i][index]);
+
+				if(minimalCosts[index] == Double.POSITIVE_INFINITY) continue;
+				if(farthest == -1 || minimalCosts[index] > minimalCosts[farthest]) farthest = index;
+			}
+
+			LOGGER.fine("Landmark " + i + " at " + table.landmarks[i] + " reaches costs up to " +
+					(farthest == -1 ? 0.0 : minimalCosts[farthest]));
+			landmark = farthest == -1 ? landmark : farthest;
+		}
+
+		LOGGER.info("Computed " + landmarkCount + " landmarks over " + table.blocks.size() + " blocks in " +
+				(System.nanoTime() - start) * 1e-9 + " s.");
+
+		return table;
+	}
+
+	/**
+	 * Loads a table saved for the terrain, cost model and grid of the problem;
+	 * tables of any other are rejected.
+	 */
+	public static LandmarkTable load(Path path, PathfindingProblem problem) throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			int version = in.readInt();
+			if(version != FORMAT_VERSION) {
+				throw new IOException("Unsupported landmark table version: " + version);
+			}
+
+			OptionalLong fingerprint = OptionalLong.of(in.readLong());
+			Point2Di lowerBound = new Point2Di(in.readInt(), in.readInt());
+			Point2Di upperBound = new Point2Di(in.readInt(), in.readInt());
+			if(!fingerprint.equals(problem.getGridFingerprint()) || !lowerBound.equals(problem.getGridLowerBound()) ||
+					!upperBound.equals(problem.getGridUpperBound())) {
+				throw new IOException("Landmark table " + path + " was computed for another terrain, cost model or grid.");
+			}
+
+			int blockSize = in.readInt();
+			int landmarkCount = in.readInt();
+			if(blockSize < 1 || landmarkCount < 1) {
+				throw new IOException("Landmark table " + path + " is corrupted.");
+			}
+
+			LandmarkTable table = new LandmarkTable(fingerprint, lowerBound, upperBound, blockSize,
+					new Point2Di[landmarkCount], new double[landmarkCount][], new double[landmarkCount][]);
+			int blockCount = table.blocks.size();
+			if(landmarkCount * (8 + 16L * blockCount) > Files.size(path)) {
+				throw new IOException("Landmark table " + path + " is corrupted.");
+			}
+
+			for(int i = 0; i < landmarkCount; i++) {
+				table.landmarks[i] = new Point2Di(in.readInt(), in.readInt());
+				table.costsFrom[i] = readCosts(in, blockCount);
+				table.costsTo[i] = readCosts(in, blockCount);
+			}
+
+			return table;
+		}
+	}
+
+	private static double[] readCosts(DataInputStream in, int count) throws IOException {
+		double[] costs = new double[count];
+		for(int index = 0; index < count; index++) {
+			costs[index] = in.readDouble();
+		}
+		return costs;
+	}
+
+	/**
+	 * Tables of terrains or cost models which cannot be identified cannot be
+	 * saved, as they could not be checked when loaded.
+	 */
+	public void save(Path path) throws IOException {
+		if(!fingerprint.isPresent()) {
+			throw new IllegalStateException("Landmark table of an unidentified terrain or cost model cannot be saved.");
+		}
+
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(fingerprint.getAsLong());
+			out.writeInt(lowerBound.getX());
+			out.writeInt(lowerBound.getZ());
+			out.writeInt(upperBound.getX());
+			out.writeInt(upperBound.getZ());
+			out.writeInt(blockSize);
+
+			out.writeInt(landmarks.length);
+			for(int i = 0; i < landmarks.length; i++) {
+				out.writeInt(landmarks[i].getX());
+				out.writeInt(landmarks[i].getZ());
+				for(double cost : costsFrom[i]) {
+					out.writeDouble(cost);
+				}
+				for(double cost : costsTo[i]) {
+					out.writeDouble(cost);
+				}
+			}
+		}
+	}
+
+	public List<Point2Di> getLandmarks() {
+		return new ArrayList<>(Arrays.asList(landmarks));
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * Creates heuristics for the goal of the problem, which must have the
+	 * terrain, cost model and grid the table was computed for. Estimate is the
+	 * larger of the landmark bound and the fallback estimate, so it is never worse
+	 * than the fallback.
+	 */
+	public IHeuristics<Point2Di> createHeuristics(PathfindingProblem problem, IHeuristics<Point2Di> fallback) {
+		if(!fingerprint.equals(problem.getGridFingerprint()) || !lowerBound.equals(problem.getGridLowerBound()) ||
+				!upperBound.equals(problem.getGridUpperBound())) {
+			throw new IllegalArgumentException("Landmark table was computed for another terrain, cost model or grid.");
+		}
+
+		Optional<Point2Di> goal = problem.getGoalState().filter(this::contains);
+		if(!goal.isPresent()) return fallback;
+
+		int goalIndex = blockIndex(goal.get());
+		double[] goalCostsFrom = new double[landmarks.length];
+		double[] goalCostsTo = new double[landmarks.length];
+		for(int i = 0; i < landmarks.length; i++) {
+			goalCostsFrom[i] = costsFrom[i][goalIndex];
+			goalCostsTo[i] = costsTo[i][goalIndex];
+		}
+
+		return state -> {
+			double estimate = fallback.getEstimatedCost(state);
+			if(!contains(state)) return estimate;
+
+			int index = blockIndex(state);
+			for(int i = 0; i < landmarks.length; i++) {
+				double stateCostFrom = costsFrom[i][index];
+				if(stateCostFrom != Double.POSITIVE_INFINITY && goalCostsFrom[i] != Double.POSITIVE_INFINITY) {
+					estimate = Math.max(estimate, goalCostsFrom[i] - stateCostFrom);
+				}
+
+				double stateCostTo = costsTo[i][index];
+				if(stateCostTo != Double.POSITIVE_INFINITY && goalCostsTo[i] != Double.POSITIVE_INFINITY) {
+					estimate = Math.max(estimate, stateCostTo - goalCostsTo[i]);
+				}
+			}
+
+			return estimate;
+		};
+	}
+
+	private boolean contains(Point2Di cell) {
+		return cell.getX() >= lowerBound.getX() && cell.getX() <= upperBound.getX() &&
+				cell.getZ() >= lowerBound.getZ() && cell.getZ() <= upperBound.getZ();
+	}
+
+	private int blockIndex(Point2Di cell) {
+		return blocks.index((cell.getX() - lowerBound.getX()) / blockSize, (cell.getZ() - lowerBound.getZ()) / blockSize);
+	}
+
+	// distances between cells of two blocks the given number of blocks apart, in cells along one axis
+	private int minimalCellDistance(int blockOffset) {
+		return Math.max(0, Math.abs(blockOffset) * blockSize - (blockSize - 1));
+	}
+
+	private int maximalCellDistance(int blockOffset) {
+		return Math.abs(blockOffset) * blockSize + blockSize - 1;
+	}
+
+	/**
+	 * Blocks with the cheapest road from every block to each of the nearby ones
+	 * and tunnels of the same cost between all blocks at the same offset.
+	 */
+	private class BlockGraph {
+
+		private final int roadRange; // in blocks
+		private final double[] roadCosts; // roadCosts[block * roadOffsets + offset]
+		private final List<Point2Di> tunnelOffsets = new ArrayList<>();
+		private final List<Double> tunnelCosts = new ArrayList<>();
+
+		BlockGraph(PathfindingProblem problem) {
+			int cellRange = problem.getRoadRange();
+			this.roadRange = (cellRange + blockSize - 1) / blockSize;
+			int roadSide = 2 * roadRange + 1;
+			this.roadCosts = new double[blocks.size() * roadSide * roadSide];
+			Arrays.fill(roadCosts, Double.POSITIVE_INFINITY);
+
+			Optional<Point2Di> noPredecessor = Optional.empty();
+			for(int z = lowerBound.getZ(); z <= upperBound.getZ(); z++) {
+				for(int x = lowerBound.getX(); x <= upperBound.getX(); x++) {
+					Point2Di cell = new Point2Di(x, z);
+					int block = blockIndex(cell);
+					int blockX = blocks.x(block);
+					int blockZ = blocks.z(block);
+
+					for(int dz = -cellRange; dz <= cellRange; dz++) {
+						for(int dx = -cellRange; dx <= cellRange; dx++) {
+							Point2Di neighbour = new Point2Di(x + dx, z + dz);
+							if(!contains(neighbour)) continue;
+
+							int neighbourBlock = blockIndex(neighbour);
+							if(neighbourBlock == block) continue;
+
+							int offset = (blocks.z(neighbourBlock) - blockZ + roadRange) * roadSide +
+									blocks.x(neighbourBlock) - blockX + roadRange;
+							int edge = block * roadSide * roadSide + offset;
+							roadCosts[edge] = Math.min(roadCosts[edge],
+									problem.getTransitionCost(cell, neighbour, noPredecessor));
+						}
+					}
+				}
+			}
+
+			if(!problem.allowsTunnels()) return;
+
+			double cellSize = problem.getCellSize();
+			double costPerLength = problem.getCostModel().getMinimalCostPerLength();
+			double innerRadius = problem.getTunnelInnerRadius();
+			double outerRadius = problem.getTunnelOuterRadius();
+			int tunnelRange = (int) Math.ceil(outerRadius / cellSize / blockSize) + 1;
+
+			for(int bz = -tunnelRange; bz <= tunnelRange; bz++) {
+				for(int bx = -tunnelRange; bx <= tunnelRange; bx++) {
+					double minimalLength = cellSize * Math.hypot(minimalCellDistance(bx), minimalCellDistance(bz));
+					double maximalLength = cellSize * Math.hypot(maximalCellDistance(bx), maximalCellDistance(bz));
+					if(minimalLength > outerRadius || maximalLength < innerRadius) continue;
+
+					tunnelOffsets.add(new Point2Di(bx, bz));
+					tunnelCosts.add(costPerLength * Math.max(minimalLength, innerRadius));
+				}
+			}
+		}
+
+		/**
+		 * Costs from the source block to all blocks, or from all blocks to it if
+		 * backward.
+		 */
+		double[] search(int source, boolean backward) {
+			int roadSide = 2 * roadRange + 1;
+			double[] costs = new double[blocks.size()];
+			Arrays.fill(costs, Double.POSITIVE_INFINITY);
+			boolean[] closed = new boolean[blocks.size()];
+			IndexedMinHeap openQueue = new IndexedMinHeap(blocks.size());
+
+			costs[source] = 0.0;
+			openQueue.add(source, 0.0);
+
+			while(!openQueue.isEmpty()) {
+				int current = openQueue.poll();
+				closed[current] = true;
+				int x = blocks.x(current);
+				int z = blocks.z(current);
+
+				for(int dz = -roadRange; dz <= roadRange; dz++) {
+					for(int dx = -roadRange; dx <= roadRange; dx++) {
+						if(!blocks.contains(x + dx, z + dz)) continue;
+
+						int neighbour = blocks.index(x + dx, z + dz);
+						double edgeCost = backward ?
+								roadCosts[neighbour * roadSide * roadSide + (roadRange - dz) * roadSide + roadRange - dx] :
+								roadCosts[current * roadSide * roadSide + (dz + roadRange) * roadSide + dx + roadRange];
+						relax(neighbour, costs[current] + edgeCost, costs, closed, openQueue);
+					}
+				}
+
+				// tunnel offsets are symmetric and their costs depend only on the offset
+				for(int i = 0; i < tunnelOffsets.size(); i++) {
+					Point2Di offset = tunnelOffsets.get(i);
+					if(!blocks.contains(x + offset.getX(), z + offset.getZ())) continue;
+
+					relax(blocks.index(x + offset.getX(), z + offset.getZ()), costs[current] + tunnelCosts.get(i),
+							costs, closed, openQueue);
+				}
+			}
+
+			return costs;
+		}
+
+		private void relax(int block, double cost, double[] costs, boolean[] closed, IndexedMinHeap openQueue) {
+			if(closed[block] || cost >= costs[block]) return;
+
+			costs[block] = cost;
+			openQueue.update(block, cost);
+		}
+
+	}
+
+}
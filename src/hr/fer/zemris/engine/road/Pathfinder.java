@@ -1,8 +1,12 @@
 package hr.fer.zemris.engine.road;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Random;
 import java.util.function.BiFunction;
 import java.util.logging.Logger;
@@ -10,33 +14,59 @@ import java.util.stream.Collectors;
 
 import org.lwjgl.util.vector.Vector3f;
 
+import hr.fer.zemris.engine.search.GridIndexer;
 import hr.fer.zemris.engine.search.IHeuristics;
+import hr.fer.zemris.engine.search.IncrementalGridAStar;
 import hr.fer.zemris.engine.search.IProblem;
 import hr.fer.zemris.engine.search.ISearchAlgorithm;
 import hr.fer.zemris.engine.search.Node;
+import hr.fer.zemris.engine.search.RestrictedGridProblem;
 import hr.fer.zemris.engine.terrain.IHeightMap;
 import hr.fer.zemris.engine.util.AbstractSpline;
+import hr.fer.zemris.engine.util.Fingerprint;
 import hr.fer.zemris.engine.util.Point2Df;
 import hr.fer.zemris.engine.util.Point2Di;
 import hr.fer.zemris.engine.util.SamplerUtility.SamplingType;
 
+/**
+ * Finds a road between the endpoints of a problem: searches its grid, turns the
+ * found cells into waypoints and a trajectory, and determines tunnels and
+ * terrain modifiers along it. Endpoints are fixed for the whole lifetime of a
+ * pathfinder.
+ *
+ * An incremental search algorithm keeps its search tree between searches and
+ * only repairs it when terrain changes. The tree is rooted at the start, since
+ * transition costs depend on the predecessor and cannot be evaluated from the
+ * goal backwards, so it can be reused for another goal but not for another
+ * start; a route from a new start needs a new pathfinder and a new search.
+ */
 public class Pathfinder {
 	
 	private static final Logger LOGGER = Logger.getLogger(Pathfinder.class.getName());
+	private static final float MAX_HEIGHT_DEVIATION = 0.5f; // of straight roads from the terrain
 	
 	private final IHeightMap heightGenerator;
 	private final PathfindingProblem searchProblem;
 	private final IHeuristics<Point2Di> heuristics;
 	private final ISearchAlgorithm<Point2Di> searchAlgorithm;
+	private final BiFunction<IProblem<Point2Di>, IHeuristics<Point2Di>, ISearchAlgorithm<Point2Di>> algorithmSupplier;
+	
+	// coarse-to-fine search, disabled if factor is 1
+	private final int coarseningFactor;
+	private final float corridorRadius;
+	
+	private final Optional<LandmarkTable> landmarks;
+	private final Optional<RouteCache> routeCache;
 	
 	private final float minimalTunnelDepth;
 	private final int endpointOffset;
 	private final int maskOffset;
-	private TrajectoryPostprocessor trajectoryPostprocessor;
 	private final BiFunction<List<Vector3f>, Float, AbstractSpline<Vector3f>> splineSupplier;
 	
 	Optional<List<PathPoint3D>> waypointsCache = null;
 	Optional<List<Vector3f>> trajectoryCache = null;
+	private List<TunnelData> tunnelsData;
+	private List<List<Vector3f>> modifierTrajectories;
 	
 	public Pathfinder(BiFunction<IProblem<Point2Di>, IHeuristics<Point2Di>, ISearchAlgorithm<Point2Di>> algorithmSupplier,
 			BiFunction<List<Vector3f>, Float, AbstractSpline<Vector3f>> splineSupplier,
@@ -51,30 +81,88 @@ public class Pathfinder {
 			double maxTunnelCurvature, double tunnelLengthMultiplier, double tunnelSlopeMultiplier,
 			double tunnelCurvatureMultiplier, double tunnelSlopeExponent, double tunnelCurvatureExponent,
 			SamplingType roadSamplingType) {
-		this.heightGenerator = heightGenerator;
-		this.minimalTunnelDepth = minimalTunnelDepth;
+		this(algorithmSupplier, splineSupplier,
+				new PathfindingProblem(start, goal, domainLowerLeftLimit,
+						domainUpperRightLimit, heightGenerator, cellSize, allowTunnels, minimalTunnelDepth,
+						tunnelInnerRadius,
+						tunnelOuterRadius, tunnelCandidates, limitTunnelCandidates, random, roadRange,
+						maxRoadSlopePercent, maxRoadCurvature,
+						roadLengthMultiplier, roadSlopeMultiplier, roadCurvatureMultiplier,
+						roadSlopeExponent, roadCurvatureExponent, maxTunnelSlopePercent,
+						maxTunnelCurvature, tunnelLengthMultiplier, tunnelSlopeMultiplier,
+						tunnelCurvatureMultiplier, tunnelSlopeExponent, tunnelCurvatureExponent,
+						roadSamplingType),
+				endpointOffset, maskOffset);
+	}
+	
+	public Pathfinder(BiFunction<IProblem<Point2Di>, IHeuristics<Point2Di>, ISearchAlgorithm<Point2Di>> algorithmSupplier,
+			BiFunction<List<Vector3f>, Float, AbstractSpline<Vector3f>> splineSupplier,
+			PathfindingProblem searchProblem, int endpointOffset, int maskOffset) {
+		this(algorithmSupplier, splineSupplier, searchProblem, endpointOffset, maskOffset, 1, 0f);
+	}
+	
+	/**
+	 * Creates a pathfinder which first solves the problem on a grid with cells
+	 * coarseningFactor times larger, and then solves the original problem only
+	 * in cells closer than corridorRadius to the coarse path. If either search
+	 * fails, the original problem is solved without restrictions.
+	 */
+	public Pathfinder(BiFunction<IProblem<Point2Di>, IHeuristics<Point2Di>, ISearchAlgorithm<Point2Di>> algorithmSupplier,
+			BiFunction<List<Vector3f>, Float, AbstractSpline<Vector3f>> splineSupplier,
+			PathfindingProblem searchProblem, int endpointOffset, int maskOffset,
+			int coarseningFactor, float corridorRadius) {
+		this(algorithmSupplier, splineSupplier, searchProblem, endpointOffset, maskOffset,
+				coarseningFactor, corridorRadius, Optional.empty());
+	}
+	
+	/**
+	 * Creates a pathfinder whose heuristics is tightened with the landmark table,
+	 * which has to be computed for the terrain, cost model and grid of the problem.
+	 */
+	public Pathfinder(BiFunction<IProblem<Point2Di>, IHeuristics<Point2Di>, ISearchAlgorithm<Point2Di>> algorithmSupplier,
+			BiFunction<List<Vector3f>, Float, AbstractSpline<Vector3f>> splineSupplier,
+			PathfindingProblem searchProblem, int endpointOffset, int maskOffset,
+			int coarseningFactor, float corridorRadius, Optional<LandmarkTable> landmarks) {
+		this(algorithmSupplier, splineSupplier, searchProblem, endpointOffset, maskOffset,
+				coarseningFactor, corridorRadius, landmarks, Optional.empty());
+	}
+	
+	/**
+	 * Creates a pathfinder which loads its waypoints, trajectory, modifiers and
+	 * tunnel data from the route cache if they were found before with the same
+	 * parameters, and stores them there otherwise.
+	 */
+	public Pathfinder(BiFunction<IProblem<Point2Di>, IHeuristics<Point2Di>, ISearchAlgorithm<Point2Di>> algorithmSupplier,
+			BiFunction<List<Vector3f>, Float, AbstractSpline<Vector3f>> splineSupplier,
+			PathfindingProblem searchProblem, int endpointOffset, int maskOffset,
+			int coarseningFactor, float corridorRadius, Optional<LandmarkTable> landmarks,
+			Optional<RouteCache> routeCache) {
+		if(coarseningFactor < 1) {
+			throw new IllegalArgumentException("Coarsening factor must be positive, got: " + coarseningFactor);
+		}
+		
+		this.heightGenerator = searchProblem.getHeightMap();
+		this.minimalTunnelDepth = searchProblem.getMinimalTunnelDepth();
 		this.endpointOffset = endpointOffset;
 		this.maskOffset = maskOffset;
 		this.splineSupplier = splineSupplier;
-		
-		this.searchProblem = new PathfindingProblem(start, goal, domainLowerLeftLimit,
-				domainUpperRightLimit, heightGenerator, cellSize, allowTunnels, minimalTunnelDepth,
-				tunnelInnerRadius,
-				tunnelOuterRadius, tunnelCandidates, limitTunnelCandidates, random, roadRange,
-				maxRoadSlopePercent, maxRoadCurvature,
-				roadLengthMultiplier, roadSlopeMultiplier, roadCurvatureMultiplier,
-				roadSlopeExponent, roadCurvatureExponent, maxTunnelSlopePercent,
-				maxTunnelCurvature, tunnelLengthMultiplier, tunnelSlopeMultiplier,
-				tunnelCurvatureMultiplier, tunnelSlopeExponent, tunnelCurvatureExponent,
-				roadSamplingType);
-		this.heuristics = setupHeuristics(goal);
+		this.searchProblem = searchProblem;
+		this.landmarks = landmarks;
+		this.routeCache = routeCache;
+		this.heuristics = landmarks.isPresent() ?
+				landmarks.get().createHeuristics(searchProblem, distanceHeuristics(searchProblem)) :
+				distanceHeuristics(searchProblem);
 		this.searchAlgorithm = algorithmSupplier.apply(searchProblem, heuristics);
+		this.algorithmSupplier = algorithmSupplier;
+		this.coarseningFactor = coarseningFactor;
+		this.corridorRadius = corridorRadius;
 	}
 
-	private IHeuristics<Point2Di> setupHeuristics(Point2Df goal) {
+	private IHeuristics<Point2Di> distanceHeuristics(PathfindingProblem searchProblem) {
+		Point2Df goal = searchProblem.getGoalLocation();
 		double goalY = heightGenerator.getHeightApprox(goal.getX(), goal.getZ());
 		
-		return new IHeuristics<Point2Di>() {
+		IHeuristics<Point2Di> distanceHeuristics = new IHeuristics<Point2Di>() {
 			@Override
 			public double getEstimatedCost(Point2Di state) {
 				Point2Df point = searchProblem.gridToReal(state);
@@ -89,28 +177,61 @@ public class Pathfinder {
 				return distance;
 			}
 		};
+		
+		return distanceHeuristics;
+	}
+	
+	/**
+	 * Discards found waypoints and trajectory after terrain in the given area
+	 * changed. Incremental search algorithm repairs its search only in the cells
+	 * affected by the change.
+	 */
+	public void terrainChanged(Point2Df lowerLeft, Point2Df upperRight) {
+		searchProblem.clearCostCache();
+		
+		if(searchAlgorithm instanceof IncrementalGridAStar) {
+			((IncrementalGridAStar) searchAlgorithm).invalidate(searchProblem.getAffectedCells(lowerLeft, upperRight));
+		}
+		
+		waypointsCache = null;
+		trajectoryCache = null;
+		tunnelsData = null;
+		modifierTrajectories = null;
 	}
 	
 	public Optional<List<TunnelData>> findTunnelsData() {
-		if(trajectoryPostprocessor == null) return Optional.empty();
-		return Optional.ofNullable(trajectoryPostprocessor.getTunnelsData());
+		return Optional.ofNullable(tunnelsData);
 	}
 	
 	public Optional<List<Vector3f>> findWaypoints() {
-		if(waypointsCache == null) {
-			waypointsCache = generateWaypoints(searchAlgorithm);
-		}
-		
-		return waypointsCache.map(pathpoints -> pathpoints
+		return findPathPoints().map(pathpoints -> pathpoints
 				.stream()
 				.map(pp -> pp.getLocation())
 				.collect(Collectors.toList()));
 	}
 	
-	private Optional<List<PathPoint3D>> generateWaypoints(ISearchAlgorithm<Point2Di> searchAlgorithm) {
+	// waypoints with their tunnel flags
+	Optional<List<PathPoint3D>> findPathPoints() {
+		if(waypointsCache == null) {
+			OptionalLong key = waypointsKey();
+			waypointsCache = key.isPresent() ? routeCache.get().loadWaypoints(key.getAsLong()) : Optional.empty();
+			
+			if(waypointsCache.isPresent()) {
+				LOGGER.info("Waypoints loaded from route cache.");
+			} else {
+				waypointsCache = generateWaypoints();
+				if(key.isPresent()) waypointsCache.ifPresent(w -> routeCache.get().saveWaypoints(key.getAsLong(), w));
+			}
+		}
+		
+		return waypointsCache;
+	}
+	
+	private Optional<List<PathPoint3D>> generateWaypoints() {
 		long start = System.nanoTime();
 		
-		Optional<Node<Point2Di>> goalNode = searchAlgorithm.search();
+		Optional<Node<Point2Di>> goalNode = coarseningFactor > 1 ? searchInCorridor() : searchAndLog(searchAlgorithm);
+		LOGGER.info("Transition cost cache: " + searchProblem.getCostCache());
 		
 		if(!goalNode.isPresent()) {
 			LOGGER.info("Pathfinder cannot create waypoints with provided terrain and constraints.");
@@ -134,14 +255,102 @@ public class Pathfinder {
 		return Optional.of(waypoints);
 	}
 	
+	private Optional<Node<Point2Di>> searchInCorridor() {
+		long start = System.nanoTime();
+		
+		PathfindingProblem coarseProblem = searchProblem.withCellSize(searchProblem.getCellSize() * coarseningFactor);
+		// landmark bounds hold only on the grid they were computed for
+		IHeuristics<Point2Di> coarseHeuristics = distanceHeuristics(coarseProblem);
+		ISearchAlgorithm<Point2Di> coarseAlgorithm = algorithmSupplier.apply(coarseProblem, coarseHeuristics);
+		Optional<Node<Point2Di>> coarseGoal = coarseAlgorithm.search();
+		
+		LOGGER.info("Coarse search duration: " + (System.nanoTime() - start) * 1e-9);
+		logStatistics(coarseAlgorithm);
+		
+		if(!coarseGoal.isPresent()) {
+			LOGGER.info("Coarse search found no path; searching without corridor.");
+			return searchAndLog(searchAlgorithm);
+		}
+		
+		List<Point2Df> coarsePath = new ArrayList<>();
+		coarsePath.add(searchProblem.getStartLocation());
+		coarseGoal.get().reconstructPath().forEach(p -> coarsePath.add(coarseProblem.gridToReal(p)));
+		coarsePath.add(searchProblem.getGoalLocation());
+		
+		BitSet corridor = searchProblem.createCorridorMask(coarsePath, corridorRadius);
+		LOGGER.info("Corridor contains " + corridor.cardinality() + " of " +
+				new GridIndexer(searchProblem).size() + " cells.");
+		
+		Optional<Node<Point2Di>> goal = searchAndLog(algorithmSupplier
+				.apply(new RestrictedGridProblem(searchProblem, corridor), heuristics));
+		
+		if(!goal.isPresent()) {
+			LOGGER.info("No path found in corridor; searching without corridor.");
+			return searchAndLog(searchAlgorithm);
+		}
+		
+		return goal;
+	}
+	
+	private Optional<Node<Point2Di>> searchAndLog(ISearchAlgorithm<Point2Di> algorithm) {
+		Optional<Node<Point2Di>> goal = algorithm.search();
+		logStatistics(algorithm);
+		
+		return goal;
+	}
+	
+	private void logStatistics(ISearchAlgorithm<Point2Di> algorithm) {
+		algorithm.getStatistics().ifPresent(s -> LOGGER.info(algorithm.getName() + " statistics: " + s));
+	}
+	
 	public Optional<List<Vector3f>> findTrajectory(float segmentLength) {
 		if(trajectoryCache == null) {
-			trajectoryCache = generateTrajectory(segmentLength);
+			OptionalLong key = trajectoryKey(segmentLength);
+			Optional<RouteCache.CachedTrajectory> cached = key.isPresent() ?
+					routeCache.get().loadTrajectory(key.getAsLong()) :
+					Optional.empty();
+			
+			if(cached.isPresent()) {
+				LOGGER.info("Trajectory loaded from route cache.");
+				trajectoryCache = Optional.of(cached.get().getTrajectory());
+				tunnelsData = cached.get().getTunnelsData();
+				modifierTrajectories = cached.get().getModifierTrajectories();
+			} else {
+				trajectoryCache = generateTrajectory(segmentLength);
+				if(key.isPresent()) trajectoryCache.ifPresent(t -> routeCache.get().saveTrajectory(key.getAsLong(),
+						new RouteCache.CachedTrajectory(t, tunnelsData, modifierTrajectories)));
+			}
 		}
 		
 		return trajectoryCache;
 	}
 	
+	// search results depend on the problem, the algorithm and the way it is guided
+	private OptionalLong waypointsKey() {
+		if(!routeCache.isPresent()) return OptionalLong.empty();
+		
+		OptionalLong problem = searchProblem.getFingerprint();
+		OptionalLong algorithm = searchAlgorithm.getFingerprint();
+		if(!problem.isPresent() || !algorithm.isPresent()) return OptionalLong.empty();
+		
+		Fingerprint key = new Fingerprint("waypoints").add(problem.getAsLong()).add(algorithm.getAsLong())
+				.add(coarseningFactor).add(corridorRadius).add(landmarks.isPresent());
+		landmarks.ifPresent(l -> {
+			key.add(l.getBlockSize());
+			l.getLandmarks().forEach(p -> key.add(p.getX()).add(p.getZ()));
+		});
+		
+		return OptionalLong.of(key.get());
+	}
+	
+	private OptionalLong trajectoryKey(float segmentLength) {
+		OptionalLong waypoints = waypointsKey();
+		if(!waypoints.isPresent()) return OptionalLong.empty();
+		
+		return OptionalLong.of(new Fingerprint("trajectory").add(waypoints.getAsLong()).add(segmentLength)
+				.add(minimalTunnelDepth).add(endpointOffset).add(maskOffset).get());
+	}
+	
 	private Optional<List<Vector3f>> generateTrajectory(float segmentLength) {
 		Optional<List<Vector3f>> maybeWaypoints = findWaypoints();
 		if(!maybeWaypoints.isPresent()) return Optional.empty();
@@ -151,18 +360,20 @@ public class Pathfinder {
 		AbstractSpline<Vector3f> curve = splineSupplier.apply(waypoints, segmentLength);
 		List<Vector3f> trajectory = curve.getPointsCopy();
 		
-		trajectoryPostprocessor = new TrajectoryPostprocessor(trajectory, waypointsCache.get(),
-				heightGenerator, minimalTunnelDepth, endpointOffset, maskOffset);
+		TrajectoryPostprocessor trajectoryPostprocessor = new TrajectoryPostprocessor(trajectory,
+				waypointsCache.get(), heightGenerator, minimalTunnelDepth, endpointOffset, maskOffset);
+		tunnelsData = trajectoryPostprocessor.getTunnelsData();
+		modifierTrajectories = trajectoryPostprocessor.getModifierTrajectories();
 		
 		return Optional.of(trajectoryPostprocessor.getCorrectedTrajectory());
 	}
 
 	public Optional<List<List<Vector3f>>> findModifierTrajectories(float offset) {
-		if(trajectoryPostprocessor == null) return Optional.empty();
+		if(modifierTrajectories == null) return Optional.empty();
 		
 		List<List<Vector3f>> shiftedModifiers = new ArrayList<>();
 		
-		for(List<Vector3f> originalModifier : trajectoryPostprocessor.getModifierTrajectories()) {
+		for(List<Vector3f> originalModifier : modifierTrajectories) {
 			List<Vector3f> shiftedModifier = originalModifier
 					.stream()
 					.map(tp -> new Vector3f(tp.x, tp.y + offset, tp.z))
@@ -312,6 +523,7 @@ public class Pathfinder {
 			Point2Df next = problem.gridToReal(gridPoints.get(i + 1));
 			
 			float dist = Point2Df.distance(curr, next);
+			int additionalPatches = (int) (dist / problem.getCellSize());
 
 			if(dist <= problem.getMax2DRoadSize() + 1e-6) {
 				PathPoint currTP = new PathPoint(curr, false, nextIsEndpoint, false);
@@ -320,7 +532,25 @@ public class Pathfinder {
 				continue;
 			}
 			
-			int additionalPatches = (int) (dist / problem.getCellSize());
+			// long straight roads of any-angle searches keep only the points splines need
+			if(!problem.isTunnel(gridPoints.get(i), gridPoints.get(i + 1))) {
+				Point2Di first = gridPoints.get(i);
+				Point2Di second = gridPoints.get(i + 1);
+				int pieces = Math.max(Math.abs(second.getX() - first.getX()), Math.abs(second.getZ() - first.getZ()));
+				
+				boolean[] kept = straightRoadPoints(curr, next, pieces);
+				for(int j = 0; j < pieces; j++) {
+					if(!kept[j]) continue;
+					
+					float t = j / (float)pieces;
+					Point2Df newPoint = new Point2Df(curr.getX() + (next.getX() - curr.getX()) * t,
+							curr.getZ() + (next.getZ() - curr.getZ()) * t);
+					processed.add(new PathPoint(newPoint, false, nextIsEndpoint && j == 0, false));
+				}
+				nextIsEndpoint = false;
+				continue;
+			}
+			
 			float patchSize = dist / (float)additionalPatches;
 			Point2Df direction = Point2Df.normalize(Point2Df.sub(next, curr));
 
@@ -345,5 +575,52 @@ public class Pathfinder {
 		
 		return processed;
 	}
+	
+	/**
+	 * Chooses which of the points splitting a straight road into pieces, as its
+	 * cost was computed, are kept. Points next to the ends confine the turns of
+	 * the spline to a piece; other points are kept only where the terrain
+	 * deviates from the straight line through the kept ones by more than
+	 * MAX_HEIGHT_DEVIATION. Slopes between kept points are averages of slopes of
+	 * the pieces, so they stay within the limits.
+	 */
+	private boolean[] straightRoadPoints(Point2Df first, Point2Df second, int pieces) {
+		float[] heights = new float[pieces + 1];
+		for(int j = 0; j <= pieces; j++) {
+			float t = j / (float)pieces;
+			heights[j] = heightGenerator.getHeightApprox(first.getX() + (second.getX() - first.getX()) * t,
+					first.getZ() + (second.getZ() - first.getZ()) * t);
+		}
+		
+		boolean[] kept = new boolean[pieces + 1];
+		kept[0] = kept[1] = kept[pieces - 1] = kept[pieces] = true;
+		
+		Deque<int[]> ranges = new ArrayDeque<>();
+		ranges.push(new int[] {1, pieces - 1});
+		while(!ranges.isEmpty()) {
+			int[] range = ranges.pop();
+			int from = range[0];
+			int to = range[1];
+			
+			int farthest = -1;
+			float maxDeviation = MAX_HEIGHT_DEVIATION;
+			for(int j = from + 1; j < to; j++) {
+				float line = heights[from] + (heights[to] - heights[from]) * (j - from) / (to - from);
+				float deviation = Math.abs(heights[j] - line);
+				if(deviation > maxDeviation) {
+					maxDeviation = deviation;
+					farthest = j;
+				}
+			}
+			
+			if(farthest != -1) {
+				kept[farthest] = true;
+				ranges.push(new int[] {from, farthest});
+				ranges.push(new int[] {farthest, to});
+			}
+		}
+		
+		return kept;
+	}
 
 }
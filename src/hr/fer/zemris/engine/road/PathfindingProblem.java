@@ -1,18 +1,30 @@
 package hr.fer.zemris.engine.road;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
-import hr.fer.zemris.engine.search.IProblem;
+import hr.fer.zemris.engine.search.GridIndexer;
+import hr.fer.zemris.engine.search.IAnyAngleProblem;
+import hr.fer.zemris.engine.terrain.HeightBounds;
 import hr.fer.zemris.engine.terrain.IHeightMap;
+import hr.fer.zemris.engine.util.CoordinateRandom;
+import hr.fer.zemris.engine.util.Fingerprint;
+import hr.fer.zemris.engine.util.IntList;
+import hr.fer.zemris.engine.util.OffsetTable;
 import hr.fer.zemris.engine.util.Point2Df;
 import hr.fer.zemris.engine.util.Point2Di;
 import hr.fer.zemris.engine.util.SamplerUtility;
 import hr.fer.zemris.engine.util.SamplerUtility.SamplingType;
 
-public class PathfindingProblem implements IProblem<Point2Di> {
+public class PathfindingProblem implements IAnyAngleProblem {
 	
 	private static final Logger LOGGER = Logger.getLogger(PathfindingProblem.class.getName());
 	
@@ -20,12 +32,28 @@ public class PathfindingProblem implements IProblem<Point2Di> {
 	private static final int tunnelSamples = 5;
 	private final float samplingDist;
 	
-	private final Point2Df origin;
+	// heading independent part of transition costs, keyed by packed edge
+	private static final int COST_CACHE_CAPACITY = 1 << 20;
+	private final EdgeCostCache costCache;
+	private final float[] cellHeights; // NaN until sampled, shared like the cost cache
+	private static final int MAX_HEIGHT_CACHE_CELLS = 1 << 26; // larger grids sample the height map directly
+	private final AtomicReference<SlopeFeasibilityMap> slopeFeasibility; // computed on first use, shared like the cost cache
+	private final AtomicReference<Optional<HeightBounds>> heightBounds; // computed on first tunnel, shared by all grids
+	private final GridIndexer indexer;
+	
+	private final Point2Df origin; // origin of the grid
+	private final Point2Df startLocation;
+	private final Point2Df goalLocation;
+	private final Point2Di start;
 	private final Point2Di goal;
 	private final Point2Df domainLowerLeftLimit;
 	private final Point2Df domainUpperRightLimit;
+	private final Point2Di gridLowerBound;
+	private final Point2Di gridUpperBound;
 	private final IHeightMap heightGenerator;
 	private final boolean allowTunnels;
+	private final OffsetTable roadOffsets;
+	private final OffsetTable tunnelOffsets;
 
 	private final float cellSize;
 	private final int roadRange;
@@ -34,27 +62,11 @@ public class PathfindingProblem implements IProblem<Point2Di> {
 	private final float minimalTunnelDepth;
 	private final int tunnelCandidates;
 	private final boolean limitTunnelCandidates;
-	private final Random random;
+	private static final int TUNNEL_STREAM = 1;
+	private final CoordinateRandom tunnelRandom; // tunnel candidates of a cell are always the same
 
-	// road parameters
-	private final double maxRoadSlopePercent; // in percentage
-	private final double maxRoadCurvature; // in radians
-	private final double roadLengthMultiplier;
-	private final double roadSlopeMultiplier;
-	private final double roadCurvatureMultiplier;
-	private final double roadSlopeExponent;
-	private final double roadCurvatureExponent;
-	
 	private final SamplingType roadSamplingType;
-	
-	// tunnel parameters
-	private final double maxTunnelSlopePercent; // in percentage
-	private final double maxTunnelCurvature; // in radians
-	private final double tunnelLengthMultiplier;
-	private final double tunnelSlopeMultiplier;
-	private final double tunnelCurvatureMultiplier;
-	private final double tunnelSlopeExponent;
-	private final double tunnelCurvatureExponent;
+	private final ICostModel costModel;
 
 	public PathfindingProblem(Point2Df origin, Point2Df goal, Point2Df domainLowerLeftLimit,
 			Point2Df domainUpperRightLimit, IHeightMap heightGenerator, float cellSize, boolean allowTunnels,
@@ -65,7 +77,27 @@ public class PathfindingProblem implements IProblem<Point2Di> {
 			double maxTunnelCurvature, double tunnelLengthMultiplier, double tunnelSlopeMultiplier,
 			double tunnelCurvatureMultiplier, double tunnelSlopeExponent, double tunnelCurvatureExponent,
 			SamplingType roadSamplingType) {
+		this(origin, goal, domainLowerLeftLimit, domainUpperRightLimit, heightGenerator, cellSize, allowTunnels,
+				minimalTunnelDepth, tunnelInnerRadius, tunnelOuterRadius, tunnelCandidates, limitTunnelCandidates,
+				random, roadRange, roadSamplingType, new DefaultCostModel(roadRange, maxRoadSlopePercent,
+						maxRoadCurvature, roadLengthMultiplier, roadSlopeMultiplier, roadCurvatureMultiplier,
+						roadSlopeExponent, roadCurvatureExponent, maxTunnelSlopePercent, maxTunnelCurvature,
+						tunnelLengthMultiplier, tunnelSlopeMultiplier, tunnelCurvatureMultiplier, tunnelSlopeExponent,
+						tunnelCurvatureExponent));
+	}
+	
+	/**
+	 * Road and tunnel costs are given by the cost model instead of the parameters
+	 * of the default one.
+	 */
+	public PathfindingProblem(Point2Df origin, Point2Df goal, Point2Df domainLowerLeftLimit,
+			Point2Df domainUpperRightLimit, IHeightMap heightGenerator, float cellSize, boolean allowTunnels,
+			float minimalTunnelDepth, float tunnelInnerRadius, float tunnelOuterRadius, int tunnelCandidates,
+			boolean limitTunnelCandidates, Random random, int roadRange, SamplingType roadSamplingType,
+			ICostModel costModel) {
 		this.origin = origin;
+		this.startLocation = origin;
+		this.goalLocation = goal;
 		this.domainLowerLeftLimit = domainLowerLeftLimit;
 		this.domainUpperRightLimit = domainUpperRightLimit;
 		this.heightGenerator = heightGenerator;
@@ -78,28 +110,239 @@ public class PathfindingProblem implements IProblem<Point2Di> {
 		this.minimalTunnelDepth = minimalTunnelDepth;
 		this.tunnelCandidates = tunnelCandidates;
 		this.limitTunnelCandidates = limitTunnelCandidates;
-		this.random = random;
-		this.maxRoadSlopePercent = maxRoadSlopePercent;
-		this.maxRoadCurvature = maxRoadCurvature;
-		this.roadLengthMultiplier = roadLengthMultiplier;
-		this.roadSlopeMultiplier = roadSlopeMultiplier;
-		this.roadCurvatureMultiplier = roadCurvatureMultiplier;
-		this.roadSlopeExponent = roadSlopeExponent;
-		this.roadCurvatureExponent = roadCurvatureExponent;
-		this.maxTunnelSlopePercent = maxTunnelSlopePercent;
-		this.maxTunnelCurvature = maxTunnelCurvature;
-		this.tunnelLengthMultiplier = tunnelLengthMultiplier;
-		this.tunnelSlopeMultiplier = tunnelSlopeMultiplier;
-		this.tunnelCurvatureMultiplier = tunnelCurvatureMultiplier;
-		this.tunnelSlopeExponent = tunnelSlopeExponent;
-		this.tunnelCurvatureExponent = tunnelCurvatureExponent;
+		this.tunnelRandom = new CoordinateRandom(random.nextLong());
 		this.roadSamplingType = roadSamplingType;
+		this.costModel = costModel;
+		this.start = realToGrid(origin);
 		this.goal = realToGrid(goal);
+		this.gridLowerBound = computeGridLowerBound();
+		this.gridUpperBound = computeGridUpperBound();
+		this.indexer = new GridIndexer(gridLowerBound, gridUpperBound);
+		this.roadOffsets = SamplerUtility.squareOffsets(roadRange, roadSamplingType, true);
+		this.tunnelOffsets = SamplerUtility.circularCrownOffsets(tunnelInnerRadius, tunnelOuterRadius, cellSize, true);
+		this.costCache = new EdgeCostCache(COST_CACHE_CAPACITY);
+		this.cellHeights = createCellHeights(indexer);
+		this.slopeFeasibility = new AtomicReference<>();
+		this.heightBounds = new AtomicReference<>();
+	}
+
+	private PathfindingProblem(PathfindingProblem other, Point2Df start, Point2Df goal, float cellSize) {
+		this.origin = other.origin;
+		this.startLocation = start;
+		this.goalLocation = goal;
+		this.domainLowerLeftLimit = other.domainLowerLeftLimit;
+		this.domainUpperRightLimit = other.domainUpperRightLimit;
+		this.heightGenerator = other.heightGenerator;
+		this.allowTunnels = other.allowTunnels;
+		this.cellSize = cellSize;
+		this.samplingDist = this.cellSize / (float)tunnelSamples;
+		this.roadRange = other.roadRange;
+		this.tunnelInnerRadius = other.tunnelInnerRadius;
+		this.tunnelOuterRadius = other.tunnelOuterRadius;
+		this.minimalTunnelDepth = other.minimalTunnelDepth;
+		this.tunnelCandidates = other.tunnelCandidates;
+		this.limitTunnelCandidates = other.limitTunnelCandidates;
+		this.tunnelRandom = other.tunnelRandom;
+		this.roadSamplingType = other.roadSamplingType;
+		this.costModel = other.costModel;
+		this.start = realToGrid(start);
+		this.goal = realToGrid(goal);
+		this.gridLowerBound = computeGridLowerBound();
+		this.gridUpperBound = computeGridUpperBound();
+		this.indexer = new GridIndexer(gridLowerBound, gridUpperBound);
+		this.roadOffsets = SamplerUtility.squareOffsets(roadRange, roadSamplingType, true);
+		this.tunnelOffsets = SamplerUtility.circularCrownOffsets(tunnelInnerRadius, tunnelOuterRadius, cellSize, true);
+		this.costCache = cellSize == other.cellSize ? other.costCache : new EdgeCostCache(COST_CACHE_CAPACITY);
+		this.cellHeights = cellSize == other.cellSize ? other.cellHeights : createCellHeights(indexer);
+		this.slopeFeasibility = cellSize == other.cellSize ? other.slopeFeasibility : new AtomicReference<>();
+		this.heightBounds = other.heightBounds;
+	}
+	
+	private Point2Di computeGridLowerBound() {
+		return new Point2Di(
+				(int) Math.floor((domainLowerLeftLimit.getX() - origin.getX()) / cellSize),
+				(int) Math.floor((domainUpperRightLimit.getZ() - origin.getZ()) / cellSize));
+	}
+	
+	private Point2Di computeGridUpperBound() {
+		return new Point2Di(
+				(int) Math.ceil((domainUpperRightLimit.getX() - origin.getX()) / cellSize),
+				(int) Math.ceil((domainLowerLeftLimit.getZ() - origin.getZ()) / cellSize));
+	}
+	
+	/**
+	 * Creates a problem with the same terrain, domain, grid and cost model, but
+	 * different endpoints. Endpoints are snapped to the grid of this problem, so
+	 * data computed over the grid of this problem remains valid for the new one.
+	 * Both problems share the transition cost cache.
+	 */
+	public PathfindingProblem withEndpoints(Point2Df start, Point2Df goal) {
+		return new PathfindingProblem(this, start, goal, cellSize);
+	}
+	
+	/**
+	 * Creates the same problem on a grid with a different cell size. Road range
+	 * stays the same in cells, so road segments scale with the cell size.
+	 */
+	public PathfindingProblem withCellSize(float cellSize) {
+		return new PathfindingProblem(this, startLocation, goalLocation, cellSize);
+	}
+	
+	/**
+	 * Marks cells of this grid closer than the radius to the polyline. Mask is
+	 * indexed by an indexer over the grid bounds of this problem.
+	 */
+	public BitSet createCorridorMask(List<Point2Df> polyline, float radius) {
+		GridIndexer indexer = new GridIndexer(this);
+		BitSet mask = new BitSet(indexer.size());
+		int cellRadius = (int) Math.ceil(radius / cellSize);
+		
+		for(int i = 0; i < polyline.size(); i++) {
+			Point2Df first = polyline.get(i);
+			Point2Df second = polyline.get(Math.min(i + 1, polyline.size() - 1));
+			Point2Di firstGP = realToGrid(first);
+			Point2Di secondGP = realToGrid(second);
+			if(indexer.contains(firstGP)) mask.set(indexer.index(firstGP));
+			
+			int minX = Math.max(Math.min(firstGP.getX(), secondGP.getX()) - cellRadius - 1, gridLowerBound.getX());
+			int maxX = Math.min(Math.max(firstGP.getX(), secondGP.getX()) + cellRadius + 1, gridUpperBound.getX());
+			int minZ = Math.max(Math.min(firstGP.getZ(), secondGP.getZ()) - cellRadius - 1, gridLowerBound.getZ());
+			int maxZ = Math.min(Math.max(firstGP.getZ(), secondGP.getZ()) + cellRadius + 1, gridUpperBound.getZ());
+			
+			for(int z = minZ; z <= maxZ; z++) {
+				for(int x = minX; x <= maxX; x++) {
+					Point2Df cell = gridToReal(new Point2Di(x, z));
+					if(distanceToSegment(cell, first, second) <= radius) mask.set(indexer.index(x, z));
+				}
+			}
+		}
+		
+		return mask;
+	}
+	
+	/**
+	 * Returns cells whose transitions can be affected by a change of terrain in
+	 * the given area, i.e. all cells from which a road or a tunnel can reach it.
+	 */
+	public List<Point2Di> getAffectedCells(Point2Df lowerLeft, Point2Df upperRight) {
+		float reach = getMax2DRoadSize();
+		if(allowTunnels) reach = Math.max(reach, tunnelOuterRadius);
+		reach += cellSize;
+		
+		float minX = Math.min(lowerLeft.getX(), upperRight.getX()) - reach;
+		float maxX = Math.max(lowerLeft.getX(), upperRight.getX()) + reach;
+		float minZ = Math.min(lowerLeft.getZ(), upperRight.getZ()) - reach;
+		float maxZ = Math.max(lowerLeft.getZ(), upperRight.getZ()) + reach;
+		
+		int lowerX = Math.max((int) Math.floor((minX - origin.getX()) / cellSize), gridLowerBound.getX());
+		int upperX = Math.min((int) Math.ceil((maxX - origin.getX()) / cellSize), gridUpperBound.getX());
+		int lowerZ = Math.max((int) Math.floor((minZ - origin.getZ()) / cellSize), gridLowerBound.getZ());
+		int upperZ = Math.min((int) Math.ceil((maxZ - origin.getZ()) / cellSize), gridUpperBound.getZ());
+		
+		List<Point2Di> cells = new ArrayList<>();
+		for(int z = lowerZ; z <= upperZ; z++) {
+			for(int x = lowerX; x <= upperX; x++) {
+				cells.add(new Point2Di(x, z));
+			}
+		}
+		
+		return cells;
+	}
+	
+	private static float distanceToSegment(Point2Df p, Point2Df first, Point2Df second) {
+		Point2Df segment = Point2Df.sub(second, first);
+		float lengthSquared = segment.getX() * segment.getX() + segment.getZ() * segment.getZ();
+		if(lengthSquared < 1e-12f) return Point2Df.distance(p, first);
+		
+		Point2Df relative = Point2Df.sub(p, first);
+		float t = (relative.getX() * segment.getX() + relative.getZ() * segment.getZ()) / lengthSquared;
+		t = Math.max(0f, Math.min(1f, t));
+		
+		Point2Df closest = new Point2Df(first.getX() + segment.getX() * t, first.getZ() + segment.getZ() * t);
+		return Point2Df.distance(p, closest);
+	}
+
+	public EdgeCostCache getCostCache() {
+		return costCache;
+	}
+	
+	/**
+	 * Discards cached transition costs, cell heights, slope feasibility and height
+	 * bounds, must be called when the height map changes.
+	 */
+	public void clearCostCache() {
+		costCache.clear();
+		if(cellHeights != null) Arrays.fill(cellHeights, Float.NaN);
+		slopeFeasibility.set(null);
+		heightBounds.set(null);
+		SlopeFeasibilityMap.invalidate(heightGenerator);
 	}
 
 	public float getCellSize() {
 		return cellSize;
 	}
+	
+	public Point2Df getStartLocation() {
+		return startLocation;
+	}
+	
+	public Point2Df getGoalLocation() {
+		return goalLocation;
+	}
+	
+	public IHeightMap getHeightMap() {
+		return heightGenerator;
+	}
+	
+	public float getMinimalTunnelDepth() {
+		return minimalTunnelDepth;
+	}
+	
+	public ICostModel getCostModel() {
+		return costModel;
+	}
+	
+	/**
+	 * Hash of the terrain, cost model and all parameters which can change found
+	 * paths, nothing if the height map or the cost model cannot be identified.
+	 */
+	public OptionalLong getFingerprint() {
+		OptionalLong grid = getGridFingerprint();
+		if(!grid.isPresent()) return OptionalLong.empty();
+		
+		return OptionalLong.of(new Fingerprint(PathfindingProblem.class.getName())
+				.add(grid.getAsLong()).add(startLocation).add(goalLocation).get());
+	}
+	
+	/**
+	 * Hash of the terrain, cost model and parameters which determine the grid and
+	 * its transition costs, so equal for problems differing only in endpoints.
+	 */
+	@Override
+	public OptionalLong getGridFingerprint() {
+		OptionalLong terrain = heightGenerator.getFingerprint();
+		OptionalLong costs = costModel.getFingerprint();
+		if(!terrain.isPresent() || !costs.isPresent()) return OptionalLong.empty();
+		
+		return OptionalLong.of(new Fingerprint("grid")
+				.add(terrain.getAsLong()).add(costs.getAsLong()).add(origin)
+				.add(domainLowerLeftLimit).add(domainUpperRightLimit).add(cellSize)
+				.add(roadRange).add(roadSamplingType.name()).add(allowTunnels).add(minimalTunnelDepth)
+				.add(tunnelInnerRadius).add(tunnelOuterRadius).add(tunnelCandidates).add(limitTunnelCandidates)
+				.add(tunnelRandom.getSeed()).get());
+	}
+	
+	int getRoadRange() {
+		return roadRange;
+	}
+	
+	float getTunnelInnerRadius() {
+		return tunnelInnerRadius;
+	}
+	
+	float getTunnelOuterRadius() {
+		return tunnelOuterRadius;
+	}
 
 	public Point2Df gridToReal(Point2Di gridPoint) {
 		float realX = origin.getX() + gridPoint.getX() * cellSize;
@@ -107,7 +350,7 @@ public class PathfindingProblem implements IProblem<Point2Di> {
 		return new Point2Df(realX, realZ);
 	}
 	
-	private Point2Di realToGrid(Point2Df realPoint) {
+	public Point2Di realToGrid(Point2Df realPoint) {
 		int gridX = (int)((realPoint.getX() - origin.getX()) / cellSize);
 		int gridZ = (int)((realPoint.getZ() - origin.getZ()) / cellSize);
 		return new Point2Di(gridX, gridZ);
@@ -116,197 +359,563 @@ public class PathfindingProblem implements IProblem<Point2Di> {
 	public float getMax2DRoadSize() {
 		return (float) (roadRange * cellSize * Math.sqrt(2.0));
 	}
+	
+	/**
+	 * Longest straight road accepted by getSegmentCost. Tunnels are never shorter
+	 * than their inner radius, so any shorter segment of a path is a road.
+	 */
+	public float getMaxSegmentLength() {
+		if(!allowTunnels) return Float.POSITIVE_INFINITY;
+		return Math.max(getMax2DRoadSize(), tunnelInnerRadius - cellSize);
+	}
+	
+	public boolean isTunnel(Point2Di first, Point2Di second) {
+		return Point2Df.distance(gridToReal(first), gridToReal(second)) > getMaxSegmentLength() + 1e-6;
+	}
+
+	// cells outside of the domain are unreachable, see roadCost and tunnelCost
+	@Override
+	public Point2Di getGridLowerBound() {
+		return gridLowerBound;
+	}
+	
+	@Override
+	public Point2Di getGridUpperBound() {
+		return gridUpperBound;
+	}
 
 	@Override
 	public Point2Di getInitialState() {
-		return realToGrid(origin);
+		return start;
 	}
 
 	@Override
 	public boolean isGoal(Point2Di state) {
 		return state.equals(goal);
 	}
+	
+	@Override
+	public Optional<Point2Di> getGoalState() {
+		return Optional.of(goal);
+	}
+	
+	@Override
+	public boolean allowsTunnels() {
+		return allowTunnels;
+	}
 
 	@Override
 	public Iterable<Point2Di> getSuccessors(Point2Di p) {
-		List<Point2Di> candidates = generateRoadCandidates(p);
+		List<Point2Di> candidates = new ArrayList<>();
+		getSuccessors(p, candidates);
+		return candidates;
+	}
+	
+	@Override
+	public void getSuccessors(Point2Di p, List<Point2Di> buffer) {
+		buffer.clear();
+		roadOffsets.addAll(p, buffer);
 		
 		if(allowTunnels) {
-			List<Point2Di> tunnelCandidatePoints = generateTunnelCandidates(p, cellSize,
-					tunnelInnerRadius, tunnelOuterRadius, tunnelCandidates, random);
-			candidates.addAll(tunnelCandidatePoints);
+			int roadCandidates = buffer.size();
+			tunnelOffsets.addAll(p, buffer);
+			if(limitTunnelCandidates) selectTunnelCandidates(buffer, roadCandidates, p);
 		}
 		
-		return candidates;
+		SlopeFeasibilityMap slopes = getSlopeFeasibility();
+		int feasible = 0;
+		for(int i = 0; i < buffer.size(); i++) {
+			Point2Di candidate = buffer.get(i);
+			if(!slopes.isInfeasible(p, candidate.getX() - p.getX(), candidate.getZ() - p.getZ())) {
+				buffer.set(feasible++, candidate);
+			}
+		}
+		buffer.subList(feasible, buffer.size()).clear();
 	}
 	
+	/**
+	 * Same successors as the point version, read straight from the offset tables.
+	 */
 	@Override
-	public double getMaximumCost() {
-		return Double.POSITIVE_INFINITY;
+	public void getSuccessors(int index, GridIndexer indexer, IntList buffer) {
+		int x = indexer.x(index);
+		int z = indexer.z(index);
+		SlopeFeasibilityMap slopes = getSlopeFeasibility();
+		
+		buffer.clear();
+		for(int i = 0; i < roadOffsets.size(); i++) {
+			addFeasible(x, z, roadOffsets.getX(i), roadOffsets.getZ(i), indexer, slopes, buffer);
+		}
+		
+		if(!allowTunnels) return;
+		
+		if(!limitTunnelCandidates) {
+			for(int i = 0; i < tunnelOffsets.size(); i++) {
+				addFeasible(x, z, tunnelOffsets.getX(i), tunnelOffsets.getZ(i), indexer, slopes, buffer);
+			}
+			return;
+		}
+		
+		// candidates are selected from all tunnel offsets, then filtered in place
+		int roadSuccessors = buffer.size();
+		for(int i = 0; i < tunnelOffsets.size(); i++) {
+			buffer.add(i);
+		}
+		selectTunnelCandidates(buffer, roadSuccessors, x, z);
+		
+		int feasible = roadSuccessors;
+		for(int i = roadSuccessors; i < buffer.size(); i++) {
+			int offset = buffer.get(i);
+			int dx = tunnelOffsets.getX(offset);
+			int dz = tunnelOffsets.getZ(offset);
+			if(isFeasible(x, z, dx, dz, indexer, slopes)) buffer.set(feasible++, indexer.index(x + dx, z + dz));
+		}
+		buffer.truncate(feasible);
 	}
 	
-	private List<Point2Di> generateRoadCandidates(Point2Di p) {
-		return SamplerUtility.sampleSquare(p, roadRange, roadSamplingType, true);
+	private static void addFeasible(int x, int z, int dx, int dz, GridIndexer indexer, SlopeFeasibilityMap slopes,
+			IntList buffer) {
+		if(isFeasible(x, z, dx, dz, indexer, slopes)) buffer.add(indexer.index(x + dx, z + dz));
 	}
 	
-	private List<Point2Di> generateTunnelCandidates(Point2Di p, float cellSize, float innerRadius,
-			float outerRadius, int tunnelCandidates, Random random) {
-		return limitTunnelCandidates ?
-				SamplerUtility.sampleCircularCrown(p, innerRadius, outerRadius, cellSize, true, tunnelCandidates, random) :
-				SamplerUtility.sampleCircularCrown(p, innerRadius, outerRadius, cellSize, true);
+	private static boolean isFeasible(int x, int z, int dx, int dz, GridIndexer indexer, SlopeFeasibilityMap slopes) {
+		return indexer.contains(x + dx, z + dz) && !slopes.isInfeasible(x, z, dx, dz);
 	}
-
-	@Override
-	public double getTransitionCost(Point2Di current, Point2Di candidate, Optional<Point2Di> previous) {
-		if(Point2Df.distance(gridToReal(current), gridToReal(candidate)) <= getMax2DRoadSize() + 1e-6) {
-			return roadCost(current, candidate, previous);
+	
+	private SlopeFeasibilityMap getSlopeFeasibility() {
+		SlopeFeasibilityMap slopes = slopeFeasibility.get();
+		if(slopes != null) return slopes;
+		
+		if(cellHeights == null) {
+			slopes = SlopeFeasibilityMap.EMPTY;
 		} else {
-			return tunnelCost(current, candidate, previous);
+			// a cell with limited candidates tries only a few tunnels, cheaper to test by their costs
+			boolean tunnelSlopes = allowTunnels && !limitTunnelCandidates;
+			List<Object> parameters = Arrays.asList(origin, gridLowerBound, gridUpperBound, cellSize, roadRange,
+					roadSamplingType, tunnelSlopes, tunnelInnerRadius, tunnelOuterRadius, costModel);
+			List<OffsetTable> offsets = tunnelSlopes ?
+					Arrays.asList(roadOffsets, tunnelOffsets) :
+					Collections.singletonList(roadOffsets);
+			slopes = SlopeFeasibilityMap.get(heightGenerator, parameters, indexer, offsets, this::exceedsSlopeLimit);
 		}
+		
+		slopeFeasibility.set(slopes);
+		return slopes;
 	}
 	
-	private double roadCost(Point2Di currentGP, Point2Di candidateGP, Optional<Point2Di> previousGP) {		
+	// same cost as in roadEdgeCost and tunnelEdgeCost, tunnel depth aside
+	private boolean exceedsSlopeLimit(Point2Di currentGP, int dx, int dz) {
+		Point2Di candidateGP = new Point2Di(currentGP.getX() + dx, currentGP.getZ() + dz);
+		if(!indexer.contains(candidateGP)) return false;
+		
 		Point2Df current = gridToReal(currentGP);
 		Point2Df candidate = gridToReal(candidateGP);
-		Optional<Point2Df> previous = previousGP.map(prevGP -> gridToReal(prevGP));
+		double length = Point2Df.distance(current, candidate);
+		double heightDifference = cellHeight(candidateGP, candidate) - cellHeight(currentGP, current);
 		
-		if(candidate.getX() < domainLowerLeftLimit.getX() ||
-				candidate.getX() > domainUpperRightLimit.getX() ||
-				candidate.getZ() > domainLowerLeftLimit.getZ() || 
-				candidate.getZ() < domainUpperRightLimit.getZ()) {
-			return Double.POSITIVE_INFINITY;
+		boolean road = dx * dx + dz * dz <= 2 * roadRange * roadRange;
+		double cost = road ?
+				costModel.getRoadCost(length, heightDifference) :
+				costModel.getTunnelCost(length, heightDifference);
+		return cost == Double.POSITIVE_INFINITY;
+	}
+	
+	// keeps a random subset of tunnel candidates, drawn from the coordinates of the cell
+	private void selectTunnelCandidates(List<Point2Di> candidates, int from, Point2Di cell) {
+		int candidatesLen = candidates.size() - from;
+		int selected = Math.min(tunnelCandidates, candidatesLen);
+		
+		for(int i = 0; i < selected; i++) {
+			int j = tunnelRandom.getInt(TUNNEL_STREAM, cell.getX(), cell.getZ(), i, candidatesLen - i);
+			Collections.swap(candidates, from + i, from + i + j);
 		}
-
-		double y1 = heightGenerator.getHeightApprox(current.getX(), current.getZ());
-		double y2 = heightGenerator.getHeightApprox(candidate.getX(), candidate.getZ());
-		
-		double distance = Math.sqrt(
-				Math.pow(current.getX() - candidate.getX(), 2.0) + 
-				Math.pow(y1 - y2, 2.0) + 
-				Math.pow(current.getZ() - candidate.getZ(), 2.0));
-		double distanceCost = distance * roadLengthMultiplier;
-
-		double slope = Math.asin(Math.abs(y2 - y1) / distance);
-		if(slope > percentageToAngle(maxRoadSlopePercent)) return Double.POSITIVE_INFINITY;
-		double slopeCost = distance * Math.pow(slope, roadSlopeExponent) * roadSlopeMultiplier;
-
-		double curvatureCost = 0.0;
-		if(previous.isPresent()) {
-			Point2Df direction1 = Point2Df.sub(current, previous.get());
-			Point2Df direction2 = Point2Df.sub(candidate, current);
-
-			double angle = Point2Df.angle(direction1, direction2);
-			if(angle > maxRoadCurvature) return Double.POSITIVE_INFINITY;
-			
-			curvatureCost = Math.pow(angle, roadCurvatureExponent) * roadCurvatureMultiplier;
+		
+		candidates.subList(from + selected, candidates.size()).clear();
+	}
+	
+	// same selection for offset numbers
+	private void selectTunnelCandidates(IntList candidates, int from, int x, int z) {
+		int candidatesLen = candidates.size() - from;
+		int selected = Math.min(tunnelCandidates, candidatesLen);
+		
+		for(int i = 0; i < selected; i++) {
+			int j = tunnelRandom.getInt(TUNNEL_STREAM, x, z, i, candidatesLen - i);
+			int candidate = candidates.get(from + i);
+			candidates.set(from + i, candidates.get(from + i + j));
+			candidates.set(from + i + j, candidate);
 		}
-
-		double totalCost = distanceCost + slopeCost + curvatureCost;
+		
+		candidates.truncate(from + selected);
+	}
+	
+	@Override
+	public double getMaximumCost() {
+		return Double.POSITIVE_INFINITY;
+	}
+	
+	@Override
+	public boolean supportsParallelEvaluation() {
+		return true;
+	}
+	
+	@Override
+	public double getTransitionCost(Point2Di current, Point2Di candidate, Optional<Point2Di> previous) {
+		int dx = candidate.getX() - current.getX();
+		int dz = candidate.getZ() - current.getZ();
+		boolean road = dx * dx + dz * dz <= 2 * roadRange * roadRange;
+		
+		double edgeCost = cachedEdgeCost(current, candidate, dx, dz, road);
+		if(edgeCost == Double.POSITIVE_INFINITY || !previous.isPresent()) return edgeCost;
+		
+		int fromX = current.getX() - previous.get().getX();
+		int fromZ = current.getZ() - previous.get().getZ();
+		double curvatureCost = road ?
+				costModel.getRoadCurvatureCost(fromX, fromZ, dx, dz) :
+				costModel.getTunnelCurvatureCost(fromX, fromZ, dx, dz);
+		
+		double totalCost = edgeCost + curvatureCost;
 		if(Double.isNaN(totalCost)) LOGGER.severe("Cost is NaN.");
 		
 		return totalCost;
 	}
 	
-	private double percentageToAngle(double p) {
-		return p / Math.sqrt(1 + p * p);
+	@Override
+	public double getSegmentCost(Point2Di first, Point2Di second, Optional<Point2Di> firstsPredecessor) {
+		int dx = second.getX() - first.getX();
+		int dz = second.getZ() - first.getZ();
+		if(Math.abs(dx) <= roadRange && Math.abs(dz) <= roadRange) {
+			return getTransitionCost(first, second, firstsPredecessor);
+		}
+		
+		if(cellSize * Math.sqrt(dx * dx + dz * dz) > getMaxSegmentLength()) return Double.POSITIVE_INFINITY;
+		
+		double edgeCost = straightRoadCost(first, second, Math.max(Math.abs(dx), Math.abs(dz)));
+		if(edgeCost == Double.POSITIVE_INFINITY || !firstsPredecessor.isPresent()) return edgeCost;
+		
+		int fromX = first.getX() - firstsPredecessor.get().getX();
+		int fromZ = first.getZ() - firstsPredecessor.get().getZ();
+		
+		return edgeCost + costModel.getRoadCurvatureCost(fromX, fromZ, dx, dz);
 	}
 	
-	private double tunnelCost(Point2Di currentGP, Point2Di candidateGP, Optional<Point2Di> previousGP) {
+	@Override
+	public double getTransitionCostLowerBound(Point2Di first, Point2Di second) {
+		int dx = second.getX() - first.getX();
+		int dz = second.getZ() - first.getZ();
+		return cellSize * Math.sqrt(dx * dx + dz * dz) * costModel.getMinimalCostPerLength();
+	}
+	
+	// road cost summed over pieces of about one cell, each of them must be feasible
+	private double straightRoadCost(Point2Di firstGP, Point2Di secondGP, int pieces) {
+		Point2Df first = gridToReal(firstGP);
+		Point2Df second = gridToReal(secondGP);
+		
+		if(isOutsideDomain(second)) return Double.POSITIVE_INFINITY;
+		
+		float stepX = (second.getX() - first.getX()) / pieces;
+		float stepZ = (second.getZ() - first.getZ()) / pieces;
+		double stepLength = Math.sqrt(stepX * stepX + stepZ * stepZ);
+		
+		double cost = 0.0;
+		double y1 = cellHeight(firstGP, first);
+		for(int i = 1; i <= pieces; i++) {
+			double y2 = i == pieces ?
+					cellHeight(secondGP, second) :
+					heightGenerator.getHeightApprox(first.getX() + stepX * i, first.getZ() + stepZ * i);
+			
+			cost += costModel.getRoadCost(stepLength, y2 - y1);
+			if(cost == Double.POSITIVE_INFINITY) return cost;
+			y1 = y2;
+		}
+		
+		return cost;
+	}
+	
+	// offsets are packed into 16 bits each, longer edges are not cached
+	private double cachedEdgeCost(Point2Di current, Point2Di candidate, int dx, int dz, boolean road) {
+		if(!indexer.contains(current) || dx != (short) dx || dz != (short) dz) {
+			return road ? roadEdgeCost(current, candidate) : tunnelEdgeCost(current, candidate);
+		}
+		
+		long key = (long) indexer.index(current) << 32 | (dx & 0xFFFFL) << 16 | (dz & 0xFFFFL);
+		double cost = costCache.get(key);
+		if(Double.isNaN(cost)) {
+			cost = road ? roadEdgeCost(current, candidate) : tunnelEdgeCost(current, candidate);
+			costCache.put(key, cost);
+		}
+		
+		return cost;
+	}
+	
+	// concurrent writes store the same value, so no synchronization is needed
+	private float cellHeight(Point2Di gridPoint, Point2Df point) {
+		if(cellHeights == null || !indexer.contains(gridPoint)) return heightGenerator.getHeightApprox(point.getX(), point.getZ());
+		
+		int index = indexer.index(gridPoint);
+		float height = cellHeights[index];
+		if(Float.isNaN(height)) {
+			height = heightGenerator.getHeightApprox(point.getX(), point.getZ());
+			cellHeights[index] = height;
+		}
+		
+		return height;
+	}
+	
+	private static float[] createCellHeights(GridIndexer indexer) {
+		if(indexer.size() > MAX_HEIGHT_CACHE_CELLS) return null;
+		
+		float[] heights = new float[indexer.size()];
+		Arrays.fill(heights, Float.NaN);
+		return heights;
+	}
+	
+	private boolean isOutsideDomain(Point2Df point) {
+		return point.getX() < domainLowerLeftLimit.getX() ||
+				point.getX() > domainUpperRightLimit.getX() ||
+				point.getZ() > domainLowerLeftLimit.getZ() || 
+				point.getZ() < domainUpperRightLimit.getZ();
+	}
+	
+	// cost of a road given by the cost model, independent of the heading
+	private double roadEdgeCost(Point2Di currentGP, Point2Di candidateGP) {
 		Point2Df current = gridToReal(currentGP);
 		Point2Df candidate = gridToReal(candidateGP);
-		Optional<Point2Df> previous = previousGP.map(prevGP -> gridToReal(prevGP));
 		
-		if(candidate.getX() < domainLowerLeftLimit.getX() ||
-				candidate.getX() > domainUpperRightLimit.getX() ||
-				candidate.getZ() > domainLowerLeftLimit.getZ() || 
-				candidate.getZ() < domainUpperRightLimit.getZ()) {
-			return Double.POSITIVE_INFINITY;
-		}
+		if(isOutsideDomain(candidate)) return Double.POSITIVE_INFINITY;
 
-		double y1 = heightGenerator.getHeightApprox(current.getX(), current.getZ());
-		double y2 = heightGenerator.getHeightApprox(candidate.getX(), candidate.getZ());
+		double y1 = cellHeight(currentGP, current);
+		double y2 = cellHeight(candidateGP, candidate);
+		
+		double cost = costModel.getRoadCost(Point2Df.distance(current, candidate), y2 - y1);
+		if(Double.isNaN(cost)) LOGGER.severe("Cost is NaN.");
+		
+		return cost;
+	}
+	
+	// cost of a tunnel given by the cost model, independent of the heading
+	private double tunnelEdgeCost(Point2Di currentGP, Point2Di candidateGP) {
+		Point2Df current = gridToReal(currentGP);
+		Point2Df candidate = gridToReal(candidateGP);
+		
+		if(isOutsideDomain(candidate)) return Double.POSITIVE_INFINITY;
+
+		double y1 = cellHeight(currentGP, current);
+		double y2 = cellHeight(candidateGP, candidate);
+		
+		// cost is checked first, it is much cheaper than the depth
+		double cost = costModel.getTunnelCost(Point2Df.distance(current, candidate), y2 - y1);
+		if(cost == Double.POSITIVE_INFINITY) return cost;
 		
 		if(!goesThroughMountain(current, candidate, (float)y1, (float)y2, samplingDist,
 				heightGenerator, minimalTunnelDepth)) {
 			return Double.POSITIVE_INFINITY;
 		}
-		
-		double distance = Math.sqrt(
-				Math.pow(current.getX() - candidate.getX(), 2.0) + 
-				Math.pow(y1 - y2, 2.0) + 
-				Math.pow(current.getZ() - candidate.getZ(), 2.0));
-		double distanceCost = distance * tunnelLengthMultiplier;
-
-		double slope = Math.asin(Math.abs(y2 - y1) / distance);
-		if(slope > percentageToAngle(maxTunnelSlopePercent)) return Double.POSITIVE_INFINITY;
-		double slopeCost = distance * Math.pow(slope, tunnelSlopeExponent) * tunnelSlopeMultiplier;
-
-		double curvatureCost = 0.0;
-		if(previous.isPresent()) {
-			Point2Df direction1 = Point2Df.sub(current, previous.get());
-			Point2Df direction2 = Point2Df.sub(candidate, current);
-
-			double angle = Point2Df.angle(direction1, direction2);
-			if(angle > maxTunnelCurvature) return Double.POSITIVE_INFINITY;
-			
-			curvatureCost = Math.pow(angle, tunnelCurvatureExponent) * tunnelCurvatureMultiplier;
-		}
 
-		double totalCost = distanceCost + slopeCost + curvatureCost;
-		return totalCost;
+		return cost;
 	}
 
+	/**
+	 * Tunnels on raster height maps are decided from bounds of heights over
+	 * stretches of samples, split in halves until they are decided, and only
+	 * samples which the bounds around them do not decide are evaluated. Other
+	 * maps are sampled coarse to fine, every 2^k-th sample before those in
+	 * between, so tunnels which surface anywhere along a longer stretch are
+	 * rejected after a few height map evaluations. Either way, the result is the
+	 * same as checking the samples along the tunnel in order.
+	 */
 	private boolean goesThroughMountain(Point2Df p1, Point2Df p2, float y1, float y2,
 			float samplingDist, IHeightMap heightMap, float minimalTunnelDepth) {
-		Point2Df direction = Point2Df.sub(p2, p1);
-		direction = Point2Df.normalize(direction);
-		
-		final float eps = 1e-3f;
-		
 		float dist = Point2Df.distance(p1, p2);
 		float d = dist / samplingDist;
 		int samples = (int)d;
-		if(d - (int)d < eps) samples--;
+		if(d - (int)d < 1e-3f) samples--;
 		
 		if(samples <= 0) {
 			LOGGER.severe("Number of tunnel samples is invalid: " + samples);
 			return false;
 		}
 		
-		final float lowerY = y1 < y2 ? y1 : y2;
-		final float higherY = y1 < y2 ? y2 : y1;
+		if(Math.abs(p2.getX() - p1.getX()) <= 1e-6 && Math.abs(p2.getZ() - p1.getZ()) <= 1e-6) {
+			LOGGER.severe("Tried to check if two same points were going through mountain.");
+			return false;
+		}
 		
-		final Point2Df lowerP = y1 < y2 ? p1 : p2;
+		TunnelSamples tunnel = new TunnelSamples(p1, p2, y1, y2, samplingDist, samples, heightMap, minimalTunnelDepth);
+		Optional<HeightBounds> bounds = getHeightBounds();
+		return bounds.isPresent() ? tunnel.check(bounds.get()) : tunnel.check();
+	}
+	
+	private Optional<HeightBounds> getHeightBounds() {
+		Optional<HeightBounds> bounds = heightBounds.get();
+		if(bounds != null) return bounds;
 		
-		final float deltaX = Math.abs(p2.getX() - p1.getX());
-		final float deltaZ = Math.abs(p2.getZ() - p1.getZ());
+		// bounds of large rasters take a while, so they are computed only once
+		synchronized(heightBounds) {
+			bounds = heightBounds.get();
+			if(bounds == null) {
+				bounds = HeightBounds.of(heightGenerator, domainLowerLeftLimit.getX(), domainUpperRightLimit.getZ(),
+						domainUpperRightLimit.getX(), domainLowerLeftLimit.getZ());
+				heightBounds.set(bounds);
+			}
+		}
 		
-		boolean atLeastOnePointWithSufficientDepth = false;
-
-		for(int i = 0; i < samples; i++) {
-			float x = p1.getX() + direction.getX() * samplingDist * (i + 1);
-			float z = p1.getZ() + direction.getZ() * samplingDist * (i + 1);
-
-			float fraction;
-			if(Math.abs(deltaX) > 1e-6) {
-				fraction = Math.abs(x - lowerP.getX()) / deltaX;
-			} else if(Math.abs(deltaZ) > 1e-6) {
-				fraction = Math.abs(z - lowerP.getZ()) / deltaZ;
-			} else {
-				LOGGER.severe("Tried to check if two same points were going through mountain.");
-				return false;
+		return bounds;
+	}
+	
+	/**
+	 * Samples along a tunnel, samplingDist apart without its ends, which all have
+	 * to lie above its floor and at least one of them minimalTunnelDepth above it.
+	 * Floor rises linearly from the lower end to the higher one.
+	 */
+	private static class TunnelSamples {
+		
+		private static final float EPS = 1e-3f; // rounding of positions and floor heights
+		
+		private final Point2Df p1;
+		private final Point2Df direction;
+		private final float samplingDist;
+		private final int samples;
+		private final float lowerY;
+		private final float higherY;
+		private final Point2Df lowerP;
+		private final float deltaX;
+		private final float deltaZ;
+		private final IHeightMap heightMap;
+		private final float minimalTunnelDepth;
+		
+		private final float[] bounds = new float[2];
+		private boolean deep; // a sample deep enough was found
+		private int[] undecided = new int[8]; // first and last sample of stretches which can be deep enough
+		private int undecidedCount;
+		
+		TunnelSamples(Point2Df p1, Point2Df p2, float y1, float y2, float samplingDist, int samples,
+				IHeightMap heightMap, float minimalTunnelDepth) {
+			this.p1 = p1;
+			this.direction = Point2Df.normalize(Point2Df.sub(p2, p1));
+			this.samplingDist = samplingDist;
+			this.samples = samples;
+			this.lowerY = y1 < y2 ? y1 : y2;
+			this.higherY = y1 < y2 ? y2 : y1;
+			this.lowerP = y1 < y2 ? p1 : p2;
+			this.deltaX = Math.abs(p2.getX() - p1.getX());
+			this.deltaZ = Math.abs(p2.getZ() - p1.getZ());
+			this.heightMap = heightMap;
+			this.minimalTunnelDepth = minimalTunnelDepth;
+		}
+		
+		float x(int i) {
+			return p1.getX() + direction.getX() * samplingDist * (i + 1);
+		}
+		
+		float z(int i) {
+			return p1.getZ() + direction.getZ() * samplingDist * (i + 1);
+		}
+		
+		float floor(int i) {
+			float fraction = deltaX > 1e-6 ?
+					Math.abs(x(i) - lowerP.getX()) / deltaX :
+					Math.abs(z(i) - lowerP.getZ()) / deltaZ;
+			
+			return lowerY + (higherY - lowerY) * fraction;
+		}
+		
+		boolean check() {
+			int firstStep = Integer.highestOneBit(samples);
+			for(int step = firstStep; step > 0; step >>= 1) {
+				for(int i = step - 1; i < samples; i += step) {
+					// already checked with a coarser step
+					if(step < firstStep && (i + 1) % (2 * step) == 0) continue;
+					
+					if(!sample(i)) return false;
+				}
 			}
-
-			float minAllowedHeight = lowerY + (higherY - lowerY) * fraction;
 			
-			float sampleHeight = heightMap.getHeightApprox(x, z);
-			float depth = sampleHeight - minAllowedHeight;
+			return deep;
+		}
+		
+		boolean check(HeightBounds heightBounds) {
+			if(!above(0, samples - 1, heightBounds)) return false;
+			
+			for(int i = 0; i < undecidedCount && !deep; i++) {
+				findDeep(undecided[2 * i], undecided[2 * i + 1], heightBounds);
+			}
 			
+			return deep;
+		}
+		
+		// false if the sample lies on or below the floor
+		private boolean sample(int i) {
+			float x = x(i);
+			float z = z(i);
+			float minAllowedHeight = floor(i);
+			
+			float sampleHeight = heightMap.getHeightApprox(x, z);
 			if(sampleHeight <= minAllowedHeight) return false;
-			atLeastOnePointWithSufficientDepth |= depth + 1e-6 >= minimalTunnelDepth;
+			
+			deep |= sampleHeight - minAllowedHeight + 1e-6 >= minimalTunnelDepth;
+			return true;
+		}
+		
+		// false if a sample of the stretch lies on or below the floor, stretches above it are only noted
+		private boolean above(int first, int last, HeightBounds heightBounds) {
+			float lowFloor = stretchBounds(first, last, heightBounds);
+			float highFloor = Math.max(floor(first), floor(last)) + EPS;
+			
+			if(bounds[1] <= lowFloor) return false;
+			
+			if(bounds[0] > highFloor) {
+				if(bounds[0] - highFloor >= minimalTunnelDepth) {
+					deep = true;
+				} else if(!deep && bounds[1] - lowFloor + 1e-6 >= minimalTunnelDepth) {
+					addUndecided(first, last);
+				}
+				return true;
+			}
+			
+			// bounds of a single sample come from the samples of the map around it
+			if(first == last) return sample(first);
+			
+			int middle = (first + last) >>> 1;
+			return above(first, middle, heightBounds) && above(middle + 1, last, heightBounds);
+		}
+		
+		// samples of the stretch are known to lie above the floor
+		private void findDeep(int first, int last, HeightBounds heightBounds) {
+			float lowFloor = stretchBounds(first, last, heightBounds);
+			float highFloor = Math.max(floor(first), floor(last)) + EPS;
+			
+			if(bounds[0] - highFloor >= minimalTunnelDepth) {
+				deep = true;
+			} else if(bounds[1] - lowFloor + 1e-6 < minimalTunnelDepth) {
+				return;
+			} else if(first == last) {
+				sample(first);
+			} else {
+				int middle = (first + last) >>> 1;
+				findDeep(first, middle, heightBounds);
+				if(!deep) findDeep(middle + 1, last, heightBounds);
+			}
+		}
+		
+		// writes bounds of heights over the stretch and returns the lowest floor under it
+		private float stretchBounds(int first, int last, HeightBounds heightBounds) {
+			float firstX = x(first);
+			float firstZ = z(first);
+			float lastX = x(last);
+			float lastZ = z(last);
+			heightBounds.getBounds(Math.min(firstX, lastX) - EPS, Math.min(firstZ, lastZ) - EPS,
+					Math.max(firstX, lastX) + EPS, Math.max(firstZ, lastZ) + EPS, bounds);
+			
+			return Math.min(floor(first), floor(last)) - EPS;
+		}
+		
+		private void addUndecided(int first, int last) {
+			if(2 * undecidedCount == undecided.length) undecided = Arrays.copyOf(undecided, undecided.length * 2);
+			undecided[2 * undecidedCount] = first;
+			undecided[2 * undecidedCount + 1] = last;
+			undecidedCount++;
 		}
 		
-		return atLeastOnePointWithSufficientDepth;
 	}
 
 }
@@ -0,0 +1,250 @@
+package hr.fer.zemris.engine.road;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.logging.Logger;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import hr.fer.zemris.engine.search.DiscountedGridProblem;
+import hr.fer.zemris.engine.search.GridIndexer;
+import hr.fer.zemris.engine.search.IGridProblem;
+import hr.fer.zemris.engine.search.IHeuristics;
+import hr.fer.zemris.engine.search.IProblem;
+import hr.fer.zemris.engine.search.ISearchAlgorithm;
+import hr.fer.zemris.engine.util.AbstractSpline;
+import hr.fer.zemris.engine.util.GridLine;
+import hr.fer.zemris.engine.util.Point2Df;
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Connects settlements with a network of roads. Settlements are connected by a
+ * minimum spanning tree over their distances, with a number of the shortest
+ * remaining pairs added as extra roads. Roads are solved in parallel, in batches
+ * of the pool size, shortest first. All of them share the transition cost and
+ * height caches of the problem, and roads solved in later batches pay less for
+ * going along roads built in earlier ones.
+ */
+public class RoadNetworkBuilder {
+
+	private static final Logger LOGGER = Logger.getLogger(RoadNetworkBuilder.class.getName());
+
+	private final PathfindingProblem problem;
+	private final BiFunction<IProblem<Point2Di>, IHeuristics<Point2Di>, ISearchAlgorithm<Point2Di>> algorithmSupplier;
+	private final BiFunction<List<Vector3f>, Float, AbstractSpline<Vector3f>> splineSupplier;
+	private final int endpointOffset;
+	private final int maskOffset;
+	private final int extraRoads;
+	private final double builtRoadDiscount;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Endpoints of the problem are ignored; its terrain, domain and cost model are
+	 * used for all roads. Transitions between two cells of already built roads
+	 * cost builtRoadDiscount times their original cost.
+	 */
+	public RoadNetworkBuilder(PathfindingProblem problem,
+			BiFunction<IProblem<Point2Di>, IHeuristics<Point2Di>, ISearchAlgorithm<Point2Di>> algorithmSupplier,
+			BiFunction<List<Vector3f>, Float, AbstractSpline<Vector3f>> splineSupplier,
+			int endpointOffset, int maskOffset, int extraRoads, double builtRoadDiscount, ForkJoinPool pool) {
+		if(extraRoads < 0) {
+			throw new IllegalArgumentException("Number of extra roads must be non-negative, got: " + extraRoads);
+		}
+		if(builtRoadDiscount <= 0.0 || builtRoadDiscount > 1.0) {
+			throw new IllegalArgumentException("Discount must be from interval (0, 1], got: " + builtRoadDiscount);
+		}
+
+		this.problem = problem;
+		this.algorithmSupplier = algorithmSupplier;
+		this.splineSupplier = splineSupplier;
+		this.endpointOffset = endpointOffset;
+		this.maskOffset = maskOffset;
+		this.extraRoads = extraRoads;
+		this.builtRoadDiscount = builtRoadDiscount;
+		this.pool = pool;
+	}
+
+	/**
+	 * Returns a route for every connected pair of settlements; its pathfinder
+	 * already has waypoints, so trajectories are generated without searching.
+	 * Routes whose pathfinders found no road are included as well.
+	 */
+	public List<Route> build(List<Point2Df> settlements) {
+		long start = System.nanoTime();
+
+		List<Route> routes = selectRoutes(settlements);
+		LOGGER.info("Building " + routes.size() + " roads between " + settlements.size() + " settlements.");
+
+		GridIndexer indexer = new GridIndexer(problem);
+		BitSet builtCells = new BitSet(indexer.size());
+		int batchSize = pool.getParallelism();
+
+		for(int from = 0; from < routes.size(); from += batchSize) {
+			List<Route> batch = routes.subList(from, Math.min(from + batchSize, routes.size()));
+			BitSet batchBuiltCells = (BitSet) builtCells.clone();
+
+			List<Callable<Optional<List<PathPoint3D>>>> tasks = new ArrayList<>();
+			for(Route route : batch) {
+				route.pathfinder = createPathfinder(route, batchBuiltCells);
+				tasks.add(route.pathfinder::findPathPoints);
+			}
+
+			for(Future<Optional<List<PathPoint3D>>> points : pool.invokeAll(tasks)) {
+				getResult(points).ifPresent(p -> markRoadCells(p, indexer, builtCells));
+			}
+		}
+
+		LOGGER.info("Road network duration: " + (System.nanoTime() - start) * 1e-9 +
+				"; transition cost cache: " + problem.getCostCache());
+
+		return routes;
+	}
+
+	private Pathfinder createPathfinder(Route route, BitSet builtCells) {
+		return new Pathfinder((p, h) -> {
+			if(!(p instanceof IGridProblem)) {
+				throw new IllegalArgumentException("Built roads can only be discounted in grid problems.");
+			}
+			
+			// heuristics is discounted only if some transitions are, otherwise it would be needlessly loose
+			IGridProblem gridProblem = (IGridProblem) p;
+			if(builtCells.isEmpty() ||
+					!gridProblem.getGridLowerBound().equals(problem.getGridLowerBound()) ||
+					!gridProblem.getGridUpperBound().equals(problem.getGridUpperBound())) {
+				return algorithmSupplier.apply(p, h);
+			}
+
+			DiscountedGridProblem discounted = new DiscountedGridProblem(gridProblem, builtCells, builtRoadDiscount,
+					problem.getRoadRange());
+			return algorithmSupplier.apply(discounted, discounted.discountHeuristics(h));
+		}, splineSupplier, problem.withEndpoints(route.start, route.goal), endpointOffset, maskOffset);
+	}
+
+	/**
+	 * Marks the cells under every road segment between two waypoints; segments
+	 * which start at a tunnel entrance or inside a tunnel are skipped, as their
+	 * cells are not built on.
+	 */
+	private void markRoadCells(List<PathPoint3D> points, GridIndexer indexer, BitSet builtCells) {
+		Point2Df origin = problem.gridToReal(new Point2Di(0, 0));
+		
+		for(int i = 0; i < points.size() - 1; i++) {
+			if(points.get(i).isEntrance() || points.get(i).isBody()) continue;
+			
+			Vector3f first = points.get(i).getLocation();
+			Vector3f second = points.get(i + 1).getLocation();
+			int firstX = Math.round((first.x - origin.getX()) / problem.getCellSize());
+			int firstZ = Math.round((first.z - origin.getZ()) / problem.getCellSize());
+			int dx = Math.round((second.x - origin.getX()) / problem.getCellSize()) - firstX;
+			int dz = Math.round((second.z - origin.getZ()) / problem.getCellSize()) - firstZ;
+			
+			int steps = GridLine.steps(dx, dz);
+			for(int step = 0; step <= steps; step++) {
+				int x = firstX + GridLine.offset(dx, step, steps);
+				int z = firstZ + GridLine.offset(dz, step, steps);
+				if(indexer.contains(x, z)) builtCells.set(indexer.index(x, z));
+			}
+		}
+	}
+
+	private static Optional<List<PathPoint3D>> getResult(Future<Optional<List<PathPoint3D>>> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Road network building was interrupted.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Road could not be built.", e.getCause());
+		}
+	}
+
+	// minimum spanning tree by Prim's algorithm, then the shortest remaining pairs
+	private List<Route> selectRoutes(List<Point2Df> settlements) {
+		int n = settlements.size();
+		List<Route> routes = new ArrayList<>();
+		if(n < 2) return routes;
+
+		boolean[] inTree = new boolean[n];
+		boolean[][] connected = new boolean[n][n];
+		float[] distances = new float[n];
+		int[] closest = new int[n];
+		Arrays.fill(distances, Float.POSITIVE_INFINITY);
+		distances[0] = 0f;
+
+		for(int step = 0; step < n; step++) {
+			int next = -1;
+			for(int i = 0; i < n; i++) {
+				if(!inTree[i] && (next == -1 || distances[i] < distances[next])) next = i;
+			}
+
+			inTree[next] = true;
+			if(step > 0) {
+				routes.add(new Route(closest[next], next, settlements));
+				connected[next][closest[next]] = connected[closest[next]][next] = true;
+			}
+
+			for(int i = 0; i < n; i++) {
+				float distance = Point2Df.distance(settlements.get(next), settlements.get(i));
+				if(!inTree[i] && distance < distances[i]) {
+					distances[i] = distance;
+					closest[i] = next;
+				}
+			}
+		}
+
+		List<Route> extra = new ArrayList<>();
+		for(int i = 0; i < n; i++) {
+			for(int j = i + 1; j < n; j++) {
+				if(!connected[i][j]) extra.add(new Route(i, j, settlements));
+			}
+		}
+		extra.sort(Comparator.comparingDouble(Route::getDistance));
+		routes.addAll(extra.subList(0, Math.min(extraRoads, extra.size())));
+
+		routes.sort(Comparator.comparingDouble(Route::getDistance));
+		return routes;
+	}
+
+	public static class Route {
+
+		private final int startSettlement;
+		private final int goalSettlement;
+		private final Point2Df start;
+		private final Point2Df goal;
+		private Pathfinder pathfinder;
+
+		private Route(int startSettlement, int goalSettlement, List<Point2Df> settlements) {
+			this.startSettlement = startSettlement;
+			this.goalSettlement = goalSettlement;
+			this.start = settlements.get(startSettlement);
+			this.goal = settlements.get(goalSettlement);
+		}
+
+		public int getStartSettlement() {
+			return startSettlement;
+		}
+
+		public int getGoalSettlement() {
+			return goalSettlement;
+		}
+
+		public Pathfinder getPathfinder() {
+			return pathfinder;
+		}
+
+		private double getDistance() {
+			return Point2Df.distance(start, goal);
+		}
+
+	}
+
+}
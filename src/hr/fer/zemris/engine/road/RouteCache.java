@@ -0,0 +1,271 @@
+package hr.fer.zemris.engine.road;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * Stores routes found by pathfinders in a directory, so roads do not have to be
+ * searched again after a restart. Waypoints are stored under a key of the
+ * terrain, the problem and the search parameters, trajectories with their
+ * tunnel data and modifiers under a key which also includes the trajectory
+ * parameters. Only found routes are stored.
+ *
+ * Search algorithms are identified by their fingerprints, and routes of those
+ * without one are not cached. Splines are not identified, so pathfinders which
+ * differ in the spline must not share a directory. Entries are written to
+ * temporary files and moved into place; entries which cannot be read, including
+ * those with counts larger than the file could hold, are treated as missing.
+ */
+public class RouteCache {
+
+	private static final Logger LOGGER = Logger.getLogger(RouteCache.class.getName());
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int ENTRANCE = 1;
+	private static final int EXIT = 2;
+	private static final int BODY = 4;
+
+	// smallest sizes of stored records in bytes, counts larger than the file allows are corrupted
+	private static final int WAYPOINT_BYTES = 13;
+	private static final int VECTOR_BYTES = 12;
+	private static final int TUNNEL_BYTES = 6;
+	private static final int LIST_BYTES = 4;
+
+	private final Path directory;
+
+	public RouteCache(Path directory) {
+		try {
+			this.directory = Files.createDirectories(directory);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot create route cache in " + directory, e);
+		}
+	}
+
+	Optional<List<PathPoint3D>> loadWaypoints(long key) {
+		try(DataInputStream in = open(waypointsFile(key), key)) {
+			int count = readCount(in, waypointsFile(key), WAYPOINT_BYTES);
+			List<PathPoint3D> waypoints = new ArrayList<>(count);
+			for(int i = 0; i < count; i++) {
+				Vector3f location = readVector(in);
+				int flags = in.readByte();
+				waypoints.add(new PathPoint3D(location,
+						(flags & ENTRANCE) != 0, (flags & EXIT) != 0, (flags & BODY) != 0));
+			}
+
+			return Optional.of(waypoints);
+		} catch (NoSuchFileException e) {
+			return Optional.empty();
+		} catch (IOException e) {
+			LOGGER.warning("Cannot read cached waypoints " + waypointsFile(key) + ": " + e);
+			return Optional.empty();
+		}
+	}
+
+	void saveWaypoints(long key, List<PathPoint3D> waypoints) {
+		save(waypointsFile(key), key, out -> {
+			out.writeInt(waypoints.size());
+			for(PathPoint3D waypoint : waypoints) {
+				writeVector(out, waypoint.getLocation());
+				out.writeByte((waypoint.isEntrance() ? ENTRANCE : 0) | (waypoint.isExit() ? EXIT : 0) |
+						(waypoint.isBody() ? BODY : 0));
+			}
+		});
+	}
+
+	Optional<CachedTrajectory> loadTrajectory(long key) {
+		Path file = trajectoryFile(key);
+		try(DataInputStream in = open(file, key)) {
+			List<Vector3f> trajectory = readVectors(in, file);
+
+			int tunnelCount = readCount(in, file, TUNNEL_BYTES);
+			List<TunnelData> tunnelsData = new ArrayList<>(tunnelCount);
+			for(int i = 0; i < tunnelCount; i++) {
+				tunnelsData.add(new TunnelData(readOptionalVector(in), readOptionalVector(in),
+						readOptionalVector(in), readOptionalVector(in),
+						readOptionalVector(in), readOptionalVector(in)));
+			}
+
+			int modifierCount = readCount(in, file, LIST_BYTES);
+			List<List<Vector3f>> modifierTrajectories = new ArrayList<>(modifierCount);
+			for(int i = 0; i < modifierCount; i++) {
+				modifierTrajectories.add(readVectors(in, file));
+			}
+
+			return Optional.of(new CachedTrajectory(trajectory, tunnelsData, modifierTrajectories));
+		} catch (NoSuchFileException e) {
+			return Optional.empty();
+		} catch (IOException e) {
+			LOGGER.warning("Cannot read cached trajectory " + file + ": " + e);
+			return Optional.empty();
+		}
+	}
+
+	void saveTrajectory(long key, CachedTrajectory trajectory) {
+		save(trajectoryFile(key), key, out -> {
+			writeVectors(out, trajectory.getTrajectory());
+
+			out.writeInt(trajectory.getTunnelsData().size());
+			for(TunnelData tunnelData : trajectory.getTunnelsData()) {
+				writeOptionalVector(out, tunnelData.getFirstEndpointLocation());
+				writeOptionalVector(out, tunnelData.getFirstEndpointOrientation());
+				writeOptionalVector(out, tunnelData.getSecondEndpointLocation());
+				writeOptionalVector(out, tunnelData.getSecondEndpointOrientation());
+				writeOptionalVector(out, tunnelData.getFirstEndpointMask());
+				writeOptionalVector(out, tunnelData.getSecondEndpointMask());
+			}
+
+			out.writeInt(trajectory.getModifierTrajectories().size());
+			for(List<Vector3f> modifier : trajectory.getModifierTrajectories()) {
+				writeVectors(out, modifier);
+			}
+		});
+	}
+
+	private Path waypointsFile(long key) {
+		return directory.resolve(String.format("waypoints-%016x.bin", key));
+	}
+
+	private Path trajectoryFile(long key) {
+		return directory.resolve(String.format("trajectory-%016x.bin", key));
+	}
+
+	private static DataInputStream open(Path file, long key) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+
+		try {
+			int version = in.readInt();
+			if(version != FORMAT_VERSION) {
+				throw new IOException("Unsupported route cache version: " + version);
+			}
+			if(in.readLong() != key) {
+				throw new IOException("Entry belongs to another key.");
+			}
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+
+		return in;
+	}
+
+	// a failed write leaves the route uncached, the road itself is not affected
+	private void save(Path file, long key, EntryWriter writer) {
+		Path temporary = null;
+
+		try {
+			temporary = Files.createTempFile(directory, "route", ".tmp");
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					Files.newOutputStream(temporary)))) {
+				out.writeInt(FORMAT_VERSION);
+				out.writeLong(key);
+				writer.write(out);
+			}
+
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOGGER.warning("Cannot write route cache entry " + file + ": " + e);
+			try {
+				if(temporary != null) Files.deleteIfExists(temporary);
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+		}
+	}
+
+	private static Vector3f readVector(DataInputStream in) throws IOException {
+		return new Vector3f(in.readFloat(), in.readFloat(), in.readFloat());
+	}
+
+	private static void writeVector(DataOutputStream out, Vector3f vector) throws IOException {
+		out.writeFloat(vector.x);
+		out.writeFloat(vector.y);
+		out.writeFloat(vector.z);
+	}
+
+	private static Vector3f readOptionalVector(DataInputStream in) throws IOException {
+		return in.readBoolean() ? readVector(in) : null;
+	}
+
+	private static void writeOptionalVector(DataOutputStream out, Vector3f vector) throws IOException {
+		out.writeBoolean(vector != null);
+		if(vector != null) writeVector(out, vector);
+	}
+
+	private static List<Vector3f> readVectors(DataInputStream in, Path file) throws IOException {
+		int count = readCount(in, file, VECTOR_BYTES);
+		List<Vector3f> vectors = new ArrayList<>(count);
+		for(int i = 0; i < count; i++) {
+			vectors.add(readVector(in));
+		}
+
+		return vectors;
+	}
+
+	private static int readCount(DataInputStream in, Path file, int recordBytes) throws IOException {
+		int count = in.readInt();
+		if(count < 0 || (long) count * recordBytes > Files.size(file)) {
+			throw new IOException("Entry is corrupted, it cannot hold " + count + " records.");
+		}
+
+		return count;
+	}
+
+	private static void writeVectors(DataOutputStream out, List<Vector3f> vectors) throws IOException {
+		out.writeInt(vectors.size());
+		for(Vector3f vector : vectors) {
+			writeVector(out, vector);
+		}
+	}
+
+	private interface EntryWriter {
+
+		void write(DataOutputStream out) throws IOException;
+
+	}
+
+	/**
+	 * Corrected trajectory of a road with its tunnel data and modifier
+	 * trajectories, as created by the trajectory postprocessor.
+	 */
+	static class CachedTrajectory {
+
+		private final List<Vector3f> trajectory;
+		private final List<TunnelData> tunnelsData;
+		private final List<List<Vector3f>> modifierTrajectories;
+
+		CachedTrajectory(List<Vector3f> trajectory, List<TunnelData> tunnelsData,
+				List<List<Vector3f>> modifierTrajectories) {
+			this.trajectory = trajectory;
+			this.tunnelsData = tunnelsData;
+			this.modifierTrajectories = modifierTrajectories;
+		}
+
+		List<Vector3f> getTrajectory() {
+			return trajectory;
+		}
+
+		List<TunnelData> getTunnelsData() {
+			return tunnelsData;
+		}
+
+		List<List<Vector3f>> getModifierTrajectories() {
+			return modifierTrajectories;
+		}
+
+	}
+
+}
@@ -0,0 +1,164 @@
+package hr.fer.zemris.engine.road;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.stream.IntStream;
+
+import hr.fer.zemris.engine.search.GridIndexer;
+import hr.fer.zemris.engine.terrain.IHeightMap;
+import hr.fer.zemris.engine.util.OffsetTable;
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Marks transitions which are steeper than allowed, for every cell of a grid and
+ * every successor offset, so they can be pruned before their costs are computed.
+ * Maps are computed in parallel and shared by all problems with the same height
+ * map and parameters until the height map is invalidated. A map is computed
+ * once, by the first thread which needs it, while others wait only for maps
+ * with the same key.
+ */
+class SlopeFeasibilityMap {
+	
+	// larger maps are not computed, transitions are then only checked by their costs
+	private static final long MAX_BITS = 1L << 30;
+	private static final Map<IHeightMap, Map<List<Object>, FutureTask<SlopeFeasibilityMap>>> maps =
+			new WeakHashMap<>();
+	
+	static final SlopeFeasibilityMap EMPTY = new SlopeFeasibilityMap();
+	
+	private final GridIndexer indexer;
+	private final int window; // offsets are looked up in a square of this radius
+	private final int[] offsetIndices;
+	private final int wordsPerCell; // every cell has its own words, so cells are computed independently
+	private final long[] infeasible;
+	
+	@FunctionalInterface
+	interface SlopeTest {
+		boolean exceedsSlopeLimit(Point2Di cell, int dx, int dz);
+	}
+	
+	private SlopeFeasibilityMap() {
+		this.indexer = null;
+		this.window = 0;
+		this.offsetIndices = null;
+		this.wordsPerCell = 0;
+		this.infeasible = null;
+	}
+	
+	private SlopeFeasibilityMap(GridIndexer indexer, List<OffsetTable> offsetTables, SlopeTest test) {
+		int window = 0;
+		for(OffsetTable offsets : offsetTables) {
+			for(int i = 0; i < offsets.size(); i++) {
+				window = Math.max(window, Math.max(Math.abs(offsets.getX(i)), Math.abs(offsets.getZ(i))));
+			}
+		}
+		
+		int side = 2 * window + 1;
+		int[] offsetIndices = new int[side * side];
+		Arrays.fill(offsetIndices, -1);
+		int offsetCount = 0;
+		for(OffsetTable offsets : offsetTables) {
+			for(int i = 0; i < offsets.size(); i++) {
+				int position = (offsets.getZ(i) + window) * side + offsets.getX(i) + window;
+				if(offsetIndices[position] == -1) offsetIndices[position] = offsetCount++;
+			}
+		}
+		
+		this.indexer = indexer;
+		this.window = window;
+		this.offsetIndices = offsetIndices;
+		this.wordsPerCell = (offsetCount + 63) / 64;
+		this.infeasible = new long[indexer.size() * wordsPerCell];
+		
+		IntStream.range(0, indexer.size()).parallel().forEach(cell -> {
+			Point2Di point = indexer.point(cell);
+			for(int position = 0; position < offsetIndices.length; position++) {
+				int offset = offsetIndices[position];
+				if(offset == -1) continue;
+				
+				if(test.exceedsSlopeLimit(point, position % side - this.window, position / side - this.window)) {
+					infeasible[cell * wordsPerCell + offset / 64] |= 1L << offset;
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Returns the map of the height map with given parameters, computing it if
+	 * it does not exist yet.
+	 */
+	static SlopeFeasibilityMap get(IHeightMap heightMap, List<Object> parameters, GridIndexer indexer,
+			List<OffsetTable> offsetTables, SlopeTest test) {
+		FutureTask<SlopeFeasibilityMap> task = new FutureTask<>(() -> compute(indexer, offsetTables, test));
+		FutureTask<SlopeFeasibilityMap> existing = register(heightMap, parameters, task);
+		
+		// only the lookup is locked, the map is computed by the thread which registered it
+		if(existing == null) {
+			task.run();
+		} else {
+			task = existing;
+		}
+		
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Slope feasibility computation was interrupted.", e);
+		} catch (ExecutionException e) {
+			unregister(heightMap, parameters, task);
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IllegalStateException("Slope feasibility could not be computed.", e.getCause());
+		}
+	}
+	
+	// returns the task already registered for the key, null if the given one was registered
+	private static synchronized FutureTask<SlopeFeasibilityMap> register(IHeightMap heightMap,
+			List<Object> parameters, FutureTask<SlopeFeasibilityMap> task) {
+		return maps.computeIfAbsent(heightMap, h -> new HashMap<>()).putIfAbsent(parameters, task);
+	}
+	
+	// failed computations are forgotten, so they are retried
+	private static synchronized void unregister(IHeightMap heightMap, List<Object> parameters,
+			FutureTask<SlopeFeasibilityMap> task) {
+		Map<List<Object>, FutureTask<SlopeFeasibilityMap>> heightMapTasks = maps.get(heightMap);
+		if(heightMapTasks != null) heightMapTasks.remove(parameters, task);
+	}
+	
+	private static SlopeFeasibilityMap compute(GridIndexer indexer, List<OffsetTable> offsetTables, SlopeTest test) {
+		long offsetCount = offsetTables.stream().mapToInt(OffsetTable::size).sum();
+		if((long) indexer.size() * ((offsetCount + 63) / 64) * 64 > MAX_BITS) return EMPTY;
+		
+		return new SlopeFeasibilityMap(indexer, offsetTables, test);
+	}
+	
+	/**
+	 * Discards all maps of the height map, must be called when it changes.
+	 */
+	static synchronized void invalidate(IHeightMap heightMap) {
+		maps.remove(heightMap);
+	}
+	
+	/**
+	 * Returns true only for transitions known to be too steep; transitions from
+	 * cells out of the grid and with unknown offsets are never marked.
+	 */
+	boolean isInfeasible(Point2Di cell, int dx, int dz) {
+		return isInfeasible(cell.getX(), cell.getZ(), dx, dz);
+	}
+	
+	boolean isInfeasible(int x, int z, int dx, int dz) {
+		if(infeasible == null || !indexer.contains(x, z)) return false;
+		if(Math.abs(dx) > window || Math.abs(dz) > window) return false;
+		
+		int offset = offsetIndices[(dz + window) * (2 * window + 1) + dx + window];
+		if(offset == -1) return false;
+		
+		return (infeasible[indexer.index(x, z) * wordsPerCell + offset / 64] & 1L << offset) != 0;
+	}
+
+}
@@ -1,23 +1,71 @@
 package hr.fer.zemris.engine.search;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.PriorityQueue;
 import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import hr.fer.zemris.engine.util.Fingerprint;
 
 public class AStar<S> implements ISearchAlgorithm<S> {
 	
 	private final IProblem<S> problem;
 	private final IHeuristics<S> heuristics;
+	private final TransitionCostEvaluator<S> costEvaluator;
+	
+	private SearchStatistics statistics = new SearchStatistics();
+	private Optional<Consumer<SearchStatistics>> progressListener = Optional.empty();
+	private long progressPeriod;
 	
 	public AStar(IProblem<S> problem, IHeuristics<S> heuristics) {
+		this(problem, heuristics, Optional.empty());
+	}
+	
+	/**
+	 * Transition costs to successors of each expanded state are computed in
+	 * parallel on the pool. Problem must support parallel evaluation.
+	 */
+	public AStar(IProblem<S> problem, IHeuristics<S> heuristics, ForkJoinPool pool) {
+		this(problem, heuristics, Optional.of(pool));
+	}
+	
+	private AStar(IProblem<S> problem, IHeuristics<S> heuristics, Optional<ForkJoinPool> pool) {
 		this.problem = problem;
 		this.heuristics = heuristics;
+		this.costEvaluator = new TransitionCostEvaluator<>(problem, pool);
+	}
+	
+	/**
+	 * Listener is called from the searching thread with the statistics of the
+	 * running search, at most once per period given in milliseconds.
+	 */
+	public void setProgressListener(Consumer<SearchStatistics> listener, long period) {
+		this.progressListener = Optional.of(listener);
+		this.progressPeriod = TimeUnit.MILLISECONDS.toNanos(period);
+	}
+	
+	@Override
+	public Optional<SearchStatistics> getStatistics() {
+		return Optional.of(statistics);
 	}
 
 	@Override
 	public Optional<Node<S>> search() {
+		statistics = new SearchStatistics(progressListener, progressPeriod);
+		Optional<Node<S>> goal = searchGoal();
+		statistics.finish();
+		
+		return goal;
+	}
+	
+	private Optional<Node<S>> searchGoal() {
 		S initialState = problem.getInitialState();
 		
 		Map<S, HeuristicsNode<S>> openMap = new HashMap<>();
@@ -26,15 +74,20 @@ public class AStar<S> implements ISearchAlgorithm<S> {
 			(a, b) -> Double.compare(a.getEstimatedTotalCost(), b.getEstimatedTotalCost()));
 
 		HeuristicsNode<S> startNode = new HeuristicsNode<>(
-				initialState, Optional.empty(), 0.0, heuristics.getEstimatedCost(initialState));
+				initialState, Optional.empty(), 0.0, estimate(initialState));
 		
 		openMap.put(initialState, startNode);
 		openQueue.add(startNode);
+		
+		List<S> successors = new ArrayList<>();
 
 		while(!openMap.isEmpty()) {
+			long queueStart = System.nanoTime();
 			HeuristicsNode<S> current = openQueue.remove();
+			statistics.queueOperation(System.nanoTime() - queueStart);
 			openMap.remove(current.getState());
 			closedMap.put(current.getState(), current);
+			statistics.updateClosedSize(closedMap.size());
 			
 			if(problem.isGoal(current.getState())) {
 				return Optional.of(current);
@@ -44,28 +97,44 @@ public class AStar<S> implements ISearchAlgorithm<S> {
 				return Optional.empty();
 			}
 			
-			for(S succState : problem.getSuccessors(current.getState())) {
-				double transitionCost = problem.getTransitionCost(
-						current.getState(),
-						succState,
-						current.getPredecessor().map(node -> node.getState()));
+			statistics.nodeExpanded();
+			
+			problem.getSuccessors(current.getState(), successors);
+			long costStart = System.nanoTime();
+			double[] transitionCosts = costEvaluator.evaluate(
+					current.getState(),
+					successors,
+					current.getPredecessor().map(node -> node.getState()));
+			statistics.transitionCostsComputed(successors.size(), System.nanoTime() - costStart);
+			statistics.nodesGenerated(successors.size());
+			
+			for(int i = 0; i < successors.size(); i++) {
+				S succState = successors.get(i);
+				double transitionCost = transitionCosts[i];
 				
 				HeuristicsNode<S> candidateSucc = new HeuristicsNode<>(
 					succState,
 					Optional.of(current),
 					current.getCost() + transitionCost,
-					current.getCost() + transitionCost + heuristics.getEstimatedCost(succState));
+					current.getCost() + transitionCost + estimate(succState));
 				
 				HeuristicsNode<S> existingSuccInOpen = openMap.get(succState);
 				if(existingSuccInOpen != null && existingSuccInOpen.getCost() < candidateSucc.getCost()) {
+					statistics.nodePruned();
 					continue;
 				}
 				
 				HeuristicsNode<S> existingSuccInClosed = closedMap.get(succState);
 				if(existingSuccInClosed != null && existingSuccInClosed.getCost() < candidateSucc.getCost()) {
+					statistics.nodePruned();
 					continue;
 				}
 				
+				if(existingSuccInClosed != null) {
+					statistics.nodeReopened();
+				}
+				
+				queueStart = System.nanoTime();
 				if(existingSuccInOpen != null) {
 					openMap.remove(succState);
 					openQueue.remove(existingSuccInOpen);
@@ -73,12 +142,27 @@ public class AStar<S> implements ISearchAlgorithm<S> {
 				
 				openMap.put(succState, candidateSucc);
 				openQueue.add(candidateSucc);
+				statistics.queueOperation(System.nanoTime() - queueStart);
+				statistics.updateOpenSize(openMap.size());
 			}
 		}
 		
 		return Optional.empty();
 	}
+	
+	private double estimate(S state) {
+		long start = System.nanoTime();
+		double estimate = heuristics.getEstimatedCost(state);
+		statistics.heuristicsComputed(System.nanoTime() - start);
+		
+		return estimate;
+	}
 
+	@Override
+	public OptionalLong getFingerprint() {
+		return OptionalLong.of(new Fingerprint(AStar.class.getName()).get());
+	}
+	
 	@Override
 	public String getName() {
 		return "A Star";
@@ -0,0 +1,255 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import hr.fer.zemris.engine.util.Fingerprint;
+
+/**
+ * Anytime repairing A* (ARA*). The first solution is found with a heuristic
+ * inflated by the initial weight, and is then improved by repeated searches with
+ * smaller weights, reusing previous search effort, until the weight reaches 1 or
+ * the time or expansion budget runs out.
+ *
+ * Best solution found so far and its suboptimality bound can be read while the
+ * search is running, e.g. from an interactive thread.
+ */
+public class AnytimeAStar<S> implements ISearchAlgorithm<S> {
+
+	private static final Logger LOGGER = Logger.getLogger(AnytimeAStar.class.getName());
+
+	public static final double DEFAULT_INITIAL_WEIGHT = 3.0;
+	public static final double DEFAULT_WEIGHT_DECREMENT = 0.5;
+
+	private final IProblem<S> problem;
+	private final IHeuristics<S> heuristics;
+	private final double initialWeight;
+	private final double weightDecrement;
+	private final long timeLimitNanos;
+	private final long expansionLimit;
+
+	private volatile Optional<Node<S>> bestNode = Optional.empty();
+	private volatile double suboptimalityBound = Double.POSITIVE_INFINITY;
+
+	// state of the current search
+	private Map<S, HeuristicsNode<S>> nodes;
+	private Map<S, Double> estimates;
+	private Set<S> closedStates;
+	private Map<S, HeuristicsNode<S>> inconsistentNodes;
+	private PriorityQueue<HeuristicsNode<S>> openQueue;
+	private double weight;
+	private long expansions;
+	private long deadline;
+
+	/**
+	 * Time limit is in milliseconds; non-positive limits mean no limit.
+	 */
+	public AnytimeAStar(IProblem<S> problem, IHeuristics<S> heuristics, double initialWeight,
+			double weightDecrement, long timeLimit, long expansionLimit) {
+		if(initialWeight < 1.0) {
+			throw new IllegalArgumentException("Initial weight must be at least 1, got: " + initialWeight);
+		}
+		if(weightDecrement <= 0.0) {
+			throw new IllegalArgumentException("Weight decrement must be positive, got: " + weightDecrement);
+		}
+
+		this.problem = problem;
+		this.heuristics = heuristics;
+		this.initialWeight = initialWeight;
+		this.weightDecrement = weightDecrement;
+		this.timeLimitNanos = timeLimit > 0 ? timeLimit * 1_000_000L : Long.MAX_VALUE;
+		this.expansionLimit = expansionLimit > 0 ? expansionLimit : Long.MAX_VALUE;
+	}
+
+	public AnytimeAStar(IProblem<S> problem, IHeuristics<S> heuristics, long timeLimit) {
+		this(problem, heuristics, DEFAULT_INITIAL_WEIGHT, DEFAULT_WEIGHT_DECREMENT, timeLimit, 0);
+	}
+
+	public AnytimeAStar(IProblem<S> problem, IHeuristics<S> heuristics) {
+		this(problem, heuristics, 0);
+	}
+
+	/**
+	 * Returns the best solution found so far by the current or last search.
+	 */
+	public Optional<Node<S>> getBestNode() {
+		return bestNode;
+	}
+
+	/**
+	 * Returns the factor by which the cost of the best solution can exceed the
+	 * optimal cost, or infinity if no solution has been found.
+	 */
+	public double getSuboptimalityBound() {
+		return suboptimalityBound;
+	}
+
+	@Override
+	public Optional<Node<S>> search() {
+		S initialState = problem.getInitialState();
+
+		nodes = new HashMap<>();
+		estimates = new HashMap<>();
+		closedStates = new HashSet<>();
+		inconsistentNodes = new HashMap<>();
+		openQueue = new PriorityQueue<>(
+			(a, b) -> Double.compare(a.getEstimatedTotalCost(), b.getEstimatedTotalCost()));
+		expansions = 0;
+		long start = System.nanoTime();
+		deadline = timeLimitNanos == Long.MAX_VALUE ? Long.MAX_VALUE : start + timeLimitNanos;
+		bestNode = Optional.empty();
+		suboptimalityBound = Double.POSITIVE_INFINITY;
+
+		weight = initialWeight;
+		HeuristicsNode<S> startNode = new HeuristicsNode<>(
+				initialState, Optional.empty(), 0.0, weight * estimate(initialState));
+		nodes.put(initialState, startNode);
+		openQueue.add(startNode);
+
+		if(problem.isGoal(initialState)) {
+			bestNode = Optional.of(startNode);
+			suboptimalityBound = 1.0;
+			return bestNode;
+		}
+
+		while(true) {
+			boolean completed = improvePath();
+			updateBound(completed ? weight : Double.POSITIVE_INFINITY);
+
+			LOGGER.fine(getName() + " weight: " + weight + ", cost: " + bestNode.map(Node::getCost).orElse(null) +
+					", bound: " + suboptimalityBound + ", expansions: " + expansions +
+					", duration: " + (System.nanoTime() - start) * 1e-9);
+
+			if(!completed || weight <= 1.0 || suboptimalityBound <= 1.0) break;
+
+			weight = Math.max(1.0, weight - weightDecrement);
+			reorderOpen();
+		}
+
+		return bestNode;
+	}
+
+	// returns false if the budget ran out before the weight-suboptimal solution was found
+	private boolean improvePath() {
+		while(true) {
+			HeuristicsNode<S> current = peekOpen();
+			if(current == null) return true;
+
+			double bestCost = bestNode.map(Node::getCost).orElse(Double.POSITIVE_INFINITY);
+			if(bestCost <= current.getEstimatedTotalCost()) return true;
+			if(expansions >= expansionLimit || System.nanoTime() >= deadline) return false;
+
+			openQueue.remove();
+			closedStates.add(current.getState());
+			expansions++;
+
+			if(current.getCost() >= problem.getMaximumCost()) continue;
+
+			for(S succState : problem.getSuccessors(current.getState())) {
+				double transitionCost = problem.getTransitionCost(
+						current.getState(),
+						succState,
+						current.getPredecessor().map(node -> node.getState()));
+				double cost = current.getCost() + transitionCost;
+
+				HeuristicsNode<S> existing = nodes.get(succState);
+				if(existing != null && existing.getCost() <= cost) continue;
+
+				HeuristicsNode<S> candidateSucc = new HeuristicsNode<>(
+						succState,
+						Optional.of(current),
+						cost,
+						cost + weight * estimate(succState));
+				nodes.put(succState, candidateSucc);
+
+				if(problem.isGoal(succState)) {
+					if(cost < bestNode.map(Node::getCost).orElse(Double.POSITIVE_INFINITY)) {
+						bestNode = Optional.of(candidateSucc);
+					}
+					continue;
+				}
+
+				if(closedStates.contains(succState)) {
+					inconsistentNodes.put(succState, candidateSucc);
+				} else {
+					openQueue.add(candidateSucc);
+				}
+			}
+		}
+	}
+
+	// removes outdated entries from the top of the queue
+	private HeuristicsNode<S> peekOpen() {
+		while(!openQueue.isEmpty()) {
+			HeuristicsNode<S> node = openQueue.peek();
+			if(nodes.get(node.getState()) == node && !closedStates.contains(node.getState())) return node;
+			openQueue.remove();
+		}
+
+		return null;
+	}
+
+	private void updateBound(double maximalBound) {
+		if(!bestNode.isPresent()) return;
+
+		double lowerBound = Double.POSITIVE_INFINITY;
+		for(HeuristicsNode<S> node : openAndInconsistentNodes()) {
+			lowerBound = Math.min(lowerBound, node.getCost() + estimate(node.getState()));
+		}
+
+		double bound = Math.min(maximalBound, bestNode.get().getCost() / lowerBound);
+		suboptimalityBound = Math.max(1.0, Math.min(suboptimalityBound, bound));
+	}
+
+	private void reorderOpen() {
+		List<HeuristicsNode<S>> open = openAndInconsistentNodes();
+
+		openQueue.clear();
+		inconsistentNodes.clear();
+		closedStates.clear();
+
+		for(HeuristicsNode<S> node : open) {
+			HeuristicsNode<S> reweighted = new HeuristicsNode<>(node.getState(), node.getPredecessor(),
+					node.getCost(), node.getCost() + weight * estimate(node.getState()));
+			nodes.put(node.getState(), reweighted);
+			openQueue.add(reweighted);
+		}
+	}
+
+	private List<HeuristicsNode<S>> openAndInconsistentNodes() {
+		List<HeuristicsNode<S>> open = new ArrayList<>(inconsistentNodes.values());
+
+		for(HeuristicsNode<S> node : openQueue) {
+			if(nodes.get(node.getState()) == node && !closedStates.contains(node.getState())) open.add(node);
+		}
+
+		return open;
+	}
+
+	private double estimate(S state) {
+		return estimates.computeIfAbsent(state, heuristics::getEstimatedCost);
+	}
+
+	// with a time limit, found paths depend on the speed of the machine
+	@Override
+	public OptionalLong getFingerprint() {
+		if(timeLimitNanos != Long.MAX_VALUE) return OptionalLong.empty();
+		
+		return OptionalLong.of(new Fingerprint(AnytimeAStar.class.getName())
+				.add(initialWeight).add(weightDecrement).add(expansionLimit).get());
+	}
+
+	@Override
+	public String getName() {
+		return "Anytime Repairing A Star";
+	}
+
+}
@@ -0,0 +1,433 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import hr.fer.zemris.engine.util.Fingerprint;
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Abstract graph of a bounded grid problem used for hierarchical search. The grid
+ * is split into square clusters which share their border cells with neighboring
+ * clusters. Every shared border is split into segments which are the entrances
+ * of the graph. An entrance covers a band of cells on both sides of its segment;
+ * the band has to be at least as wide as the longest move of the problem, so
+ * that every path crossing the border starts and ends its crossing move in it.
+ * Costs between every two entrances of a cluster are precomputed by a search
+ * restricted to that cluster using the transition costs of the problem.
+ * 
+ * The graph depends only on the grid and the cost model of the problem, so it can
+ * be reused for all problems that differ from it only in endpoints.
+ */
+public class ClusterGraph {
+	
+	private static final Logger LOGGER = Logger.getLogger(ClusterGraph.class.getName());
+	
+	private final IGridProblem problem;
+	private final OptionalLong gridFingerprint;
+	private final GridIndexer indexer;
+	private final int clusterSize;
+	private final int entrancesPerBorder;
+	private final int clustersX;
+	private final int clustersZ;
+	
+	private final int borderWidth;
+	
+	private final List<Point2Di> entrances; // middle of the segment of every entrance
+	private final List<int[]> clusterEntrances; // entrance ids for every cluster
+	private final List<int[][]> clusterEntranceCells; // cluster cells in the band of every entrance of a cluster
+	private final List<float[][]> clusterFields; // costs from every entrance of a cluster to cluster cells
+	private final List<List<Edge>> edges; // outgoing edges for every entrance
+	
+	public ClusterGraph(IGridProblem problem, int clusterSize, int entrancesPerBorder, int borderWidth,
+			Optional<ExecutorService> pool) {
+		if(clusterSize < 2) {
+			throw new IllegalArgumentException("Cluster size must be at least 2.");
+		}
+		
+		if(entrancesPerBorder < 1) {
+			throw new IllegalArgumentException("There has to be at least one entrance per cluster border.");
+		}
+		
+		if(borderWidth < 1 || borderWidth > clusterSize) {
+			throw new IllegalArgumentException("Border width must be between 1 and cluster size.");
+		}
+		
+		this.problem = problem;
+		this.gridFingerprint = problem.getGridFingerprint();
+		this.indexer = new GridIndexer(problem);
+		this.clusterSize = clusterSize;
+		this.entrancesPerBorder = entrancesPerBorder;
+		this.borderWidth = borderWidth;
+		// remainder of the grid is merged into the last row and column of clusters
+		this.clustersX = Math.max(1, (indexer.getWidth() - 1) / clusterSize);
+		this.clustersZ = Math.max(1, (indexer.getDepth() - 1) / clusterSize);
+		this.entrances = new ArrayList<>();
+		this.clusterEntrances = new ArrayList<>();
+		this.clusterEntranceCells = new ArrayList<>();
+		this.clusterFields = new ArrayList<>();
+		this.edges = new ArrayList<>();
+		
+		long start = System.nanoTime();
+		
+		createEntrances(entrancesPerBorder);
+		computeClusterFields(pool);
+		
+		LOGGER.info("Cluster graph with " + getClusterCount() + " clusters and " + entrances.size() +
+				" entrances created in: " + (System.nanoTime() - start) * 1e-9);
+	}
+	
+	public ClusterGraph(IGridProblem problem, int clusterSize, int entrancesPerBorder, int borderWidth) {
+		this(problem, clusterSize, entrancesPerBorder, borderWidth, Optional.empty());
+	}
+	
+	public IGridProblem getProblem() {
+		return problem;
+	}
+	
+	public GridIndexer getIndexer() {
+		return indexer;
+	}
+	
+	public int getClusterCount() {
+		return clustersX * clustersZ;
+	}
+	
+	public int getEntranceCount() {
+		return entrances.size();
+	}
+	
+	/**
+	 * Hash of the parameters which shape the graph; its grid and costs are those
+	 * of the problem.
+	 */
+	public long getFingerprint() {
+		return new Fingerprint(ClusterGraph.class.getName())
+				.add(clusterSize).add(entrancesPerBorder).add(borderWidth).get();
+	}
+	
+	public Point2Di getEntrance(int entrance) {
+		return entrances.get(entrance);
+	}
+	
+	public int[] getClusterEntrances(int cluster) {
+		return clusterEntrances.get(cluster);
+	}
+	
+	public List<Edge> getEdges(int entrance) {
+		return edges.get(entrance);
+	}
+	
+	/**
+	 * Whether the problem has the grid and transition costs of the graph, known
+	 * from equal grid fingerprints. Graphs of problems which cannot be identified
+	 * are compatible only with their own problem.
+	 */
+	public boolean isCompatible(IGridProblem other) {
+		if(!problem.getGridLowerBound().equals(other.getGridLowerBound()) ||
+				!problem.getGridUpperBound().equals(other.getGridUpperBound())) {
+			return false;
+		}
+		
+		return other == problem || gridFingerprint.isPresent() && gridFingerprint.equals(other.getGridFingerprint());
+	}
+	
+	public int clusterOf(Point2Di cell) {
+		int cx = Math.min((cell.getX() - lowerX()) / clusterSize, clustersX - 1);
+		int cz = Math.min((cell.getZ() - lowerZ()) / clusterSize, clustersZ - 1);
+		return cz * clustersX + cx;
+	}
+	
+	public Point2Di getClusterLowerBound(int cluster) {
+		int cx = cluster % clustersX;
+		int cz = cluster / clustersX;
+		return new Point2Di(lowerX() + cx * clusterSize, lowerZ() + cz * clusterSize);
+	}
+	
+	public Point2Di getClusterUpperBound(int cluster) {
+		int cx = cluster % clustersX;
+		int cz = cluster / clustersX;
+		Point2Di upper = problem.getGridUpperBound();
+		return new Point2Di(
+				cx == clustersX - 1 ? upper.getX() : lowerX() + (cx + 1) * clusterSize,
+				cz == clustersZ - 1 ? upper.getZ() : lowerZ() + (cz + 1) * clusterSize);
+	}
+	
+	/**
+	 * Cost from an entrance of the cluster to a cell of the same cluster, positive
+	 * infinity if the cell cannot be reached within the cluster.
+	 */
+	public double getCostInCluster(int cluster, int entrance, Point2Di cell) {
+		GridIndexer clusterIndexer = getClusterIndexer(cluster);
+		if(!clusterIndexer.contains(cell)) return Double.POSITIVE_INFINITY;
+		
+		return clusterFields.get(cluster)[entrancePosition(cluster, entrance)][clusterIndexer.index(cell)];
+	}
+	
+	/**
+	 * Lowest cost in the band of an entrance of the cluster; the cost field has to
+	 * be computed over the bounds of the cluster.
+	 */
+	public double getCostToEntrance(int cluster, int entrance, GridCostField field) {
+		GridIndexer clusterIndexer = getClusterIndexer(cluster);
+		double minCost = Double.POSITIVE_INFINITY;
+		
+		for(int cell : clusterEntranceCells.get(cluster)[entrancePosition(cluster, entrance)]) {
+			minCost = Math.min(minCost, field.getCost(clusterIndexer.point(cell)));
+		}
+		
+		return minCost;
+	}
+	
+	public GridIndexer getClusterIndexer(int cluster) {
+		return new GridIndexer(getClusterLowerBound(cluster), getClusterUpperBound(cluster));
+	}
+	
+	private int entrancePosition(int cluster, int entrance) {
+		int[] ids = clusterEntrances.get(cluster);
+		
+		for(int i = 0; i < ids.length; i++) {
+			if(ids[i] == entrance) return i;
+		}
+		
+		throw new IllegalArgumentException("Entrance " + entrance + " is not in cluster " + cluster + ".");
+	}
+	
+	/**
+	 * Sets all cells of the cluster in the mask indexed by the indexer of this graph.
+	 */
+	public void markCluster(int cluster, BitSet mask) {
+		Point2Di lower = getClusterLowerBound(cluster);
+		Point2Di upper = getClusterUpperBound(cluster);
+		
+		for(int z = lower.getZ(); z <= upper.getZ(); z++) {
+			mask.set(indexer.index(lower.getX(), z), indexer.index(upper.getX(), z) + 1);
+		}
+	}
+	
+	public List<Integer> getNeighborClusters(int cluster) {
+		int cx = cluster % clustersX;
+		int cz = cluster / clustersX;
+		List<Integer> neighbors = new ArrayList<>();
+		
+		for(int z = Math.max(0, cz - 1); z <= Math.min(clustersZ - 1, cz + 1); z++) {
+			for(int x = Math.max(0, cx - 1); x <= Math.min(clustersX - 1, cx + 1); x++) {
+				if(x == cx && z == cz) continue;
+				neighbors.add(z * clustersX + x);
+			}
+		}
+		
+		return neighbors;
+	}
+	
+	private int lowerX() {
+		return problem.getGridLowerBound().getX();
+	}
+	
+	private int lowerZ() {
+		return problem.getGridLowerBound().getZ();
+	}
+	
+	private void createEntrances(int entrancesPerBorder) {
+		List<List<Integer>> entrancesPerCluster = new ArrayList<>();
+		List<List<int[]>> cellsPerCluster = new ArrayList<>();
+		for(int i = 0; i < getClusterCount(); i++) {
+			entrancesPerCluster.add(new ArrayList<>());
+			cellsPerCluster.add(new ArrayList<>());
+		}
+		
+		for(int cz = 0; cz < clustersZ; cz++) {
+			for(int cx = 0; cx < clustersX; cx++) {
+				int cluster = cz * clustersX + cx;
+				Point2Di lower = getClusterLowerBound(cluster);
+				Point2Di upper = getClusterUpperBound(cluster);
+				
+				// border shared with the neighbor with larger x
+				if(cx < clustersX - 1) {
+					int neighbor = cluster + 1;
+					int border = upper.getX();
+					int neighborUpper = getClusterUpperBound(neighbor).getX();
+					
+					for(int[] segment : segments(lower.getZ(), upper.getZ(), entrancesPerBorder)) {
+						int entrance = entrances.size();
+						entrances.add(new Point2Di(border, (segment[0] + segment[1]) / 2));
+						
+						entrancesPerCluster.get(cluster).add(entrance);
+						cellsPerCluster.get(cluster).add(bandCells(cluster, Math.max(lower.getX(), border - borderWidth + 1),
+								border, segment[0], segment[1]));
+						
+						entrancesPerCluster.get(neighbor).add(entrance);
+						cellsPerCluster.get(neighbor).add(bandCells(neighbor, border,
+								Math.min(neighborUpper, border + borderWidth - 1), segment[0], segment[1]));
+					}
+				}
+				
+				// border shared with the neighbor with larger z
+				if(cz < clustersZ - 1) {
+					int neighbor = cluster + clustersX;
+					int border = upper.getZ();
+					int neighborUpper = getClusterUpperBound(neighbor).getZ();
+					
+					for(int[] segment : segments(lower.getX(), upper.getX(), entrancesPerBorder)) {
+						int entrance = entrances.size();
+						entrances.add(new Point2Di((segment[0] + segment[1]) / 2, border));
+						
+						entrancesPerCluster.get(cluster).add(entrance);
+						cellsPerCluster.get(cluster).add(bandCells(cluster, segment[0], segment[1],
+								Math.max(lower.getZ(), border - borderWidth + 1), border));
+						
+						entrancesPerCluster.get(neighbor).add(entrance);
+						cellsPerCluster.get(neighbor).add(bandCells(neighbor, segment[0], segment[1],
+								border, Math.min(neighborUpper, border + borderWidth - 1)));
+					}
+				}
+			}
+		}
+		
+		for(int cluster = 0; cluster < getClusterCount(); cluster++) {
+			clusterEntrances.add(entrancesPerCluster.get(cluster).stream().mapToInt(Integer::intValue).toArray());
+			clusterEntranceCells.add(cellsPerCluster.get(cluster).toArray(new int[0][]));
+		}
+		
+		for(int i = 0; i < entrances.size(); i++) {
+			edges.add(new ArrayList<>());
+		}
+	}
+	
+	// cluster indices of cells in the rectangle (inclusive)
+	private int[] bandCells(int cluster, int fromX, int toX, int fromZ, int toZ) {
+		GridIndexer clusterIndexer = getClusterIndexer(cluster);
+		int[] cells = new int[(toX - fromX + 1) * (toZ - fromZ + 1)];
+		int i = 0;
+		
+		for(int z = fromZ; z <= toZ; z++) {
+			for(int x = fromX; x <= toX; x++) {
+				cells[i++] = clusterIndexer.index(x, z);
+			}
+		}
+		
+		return cells;
+	}
+	
+	// splits the range (inclusive) into consecutive segments
+	private static List<int[]> segments(int from, int to, int count) {
+		List<int[]> segments = new ArrayList<>();
+		int length = to - from + 1;
+		count = Math.min(count, length);
+		
+		for(int i = 0; i < count; i++) {
+			int segmentFrom = from + (int) ((long) i * length / count);
+			int segmentTo = from + (int) ((long) (i + 1) * length / count) - 1;
+			segments.add(new int[] {segmentFrom, segmentTo});
+		}
+		
+		return segments;
+	}
+	
+	private void computeClusterFields(Optional<ExecutorService> pool) {
+		List<float[][]> fields = new ArrayList<>();
+		
+		if(pool.isPresent()) {
+			List<Future<float[][]>> futures = new ArrayList<>();
+			for(int cluster = 0; cluster < getClusterCount(); cluster++) {
+				final int c = cluster;
+				futures.add(pool.get().submit(() -> computeClusterField(c)));
+			}
+			
+			try {
+				for(Future<float[][]> future : futures) {
+					fields.add(future.get());
+				}
+			} catch (InterruptedException | ExecutionException ex) {
+				throw new IllegalStateException("Cluster graph could not be computed.", ex);
+			}
+		} else {
+			for(int cluster = 0; cluster < getClusterCount(); cluster++) {
+				fields.add(computeClusterField(cluster));
+			}
+		}
+		
+		clusterFields.addAll(fields);
+		
+		for(int cluster = 0; cluster < getClusterCount(); cluster++) {
+			int[] ids = clusterEntrances.get(cluster);
+			int[][] cells = clusterEntranceCells.get(cluster);
+			float[][] field = clusterFields.get(cluster);
+			
+			for(int i = 0; i < ids.length; i++) {
+				for(int j = 0; j < ids.length; j++) {
+					if(i == j) continue;
+					
+					float cost = Float.POSITIVE_INFINITY;
+					for(int cell : cells[j]) {
+						cost = Math.min(cost, field[i][cell]);
+					}
+					if(cost == Float.POSITIVE_INFINITY) continue;
+					
+					edges.get(ids[i]).add(new Edge(ids[j], cost, cluster));
+				}
+			}
+		}
+	}
+	
+	private float[][] computeClusterField(int cluster) {
+		Point2Di lower = getClusterLowerBound(cluster);
+		Point2Di upper = getClusterUpperBound(cluster);
+		GridIndexer clusterIndexer = new GridIndexer(lower, upper);
+		int[][] cells = clusterEntranceCells.get(cluster);
+		float[][] field = new float[cells.length][];
+		
+		for(int i = 0; i < cells.length; i++) {
+			List<Point2Di> sources = new ArrayList<>();
+			for(int cell : cells[i]) {
+				sources.add(clusterIndexer.point(cell));
+			}
+			
+			IGridProblem clusterProblem = new RestrictedGridProblem(problem, sources.get(0),
+					Optional.empty(), lower, upper, Optional.empty());
+			GridCostField costs = new GridDijkstra(clusterProblem).search(sources, Collections.emptyList());
+			
+			field[i] = new float[clusterIndexer.size()];
+			for(int cell = 0; cell < clusterIndexer.size(); cell++) {
+				field[i][cell] = (float) costs.getCost(cell);
+			}
+		}
+		
+		return field;
+	}
+	
+	public static class Edge {
+		
+		private final int target;
+		private final double cost;
+		private final int cluster;
+		
+		public Edge(int target, double cost, int cluster) {
+			this.target = target;
+			this.cost = cost;
+			this.cluster = cluster;
+		}
+		
+		public int getTarget() {
+			return target;
+		}
+		
+		public double getCost() {
+			return cost;
+		}
+		
+		public int getCluster() {
+			return cluster;
+		}
+		
+	}
+
+}
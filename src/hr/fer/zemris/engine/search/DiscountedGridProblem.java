@@ -0,0 +1,146 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+import hr.fer.zemris.engine.util.Fingerprint;
+import hr.fer.zemris.engine.util.GridLine;
+import hr.fer.zemris.engine.util.IntList;
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * View of a grid problem in which transitions along cells set in a mask are
+ * cheaper, e.g. along roads that are already built. A transition is discounted
+ * only if all cells under it, walked like {@link GridLine}, are set and it is
+ * no longer than the longest discounted move, so tunnels and other long moves
+ * which merely start and end on a road keep their costs. Mask is indexed by an
+ * indexer over the grid bounds of the problem.
+ */
+public class DiscountedGridProblem implements IGridProblem {
+	
+	private final IGridProblem problem;
+	private final GridIndexer indexer;
+	private final BitSet mask;
+	private final double discount;
+	private final int maxMove;
+	
+	/**
+	 * Costs of discounted transitions are multiplied by the discount, which has
+	 * to be from the interval (0, 1]. Transitions longer than maxMove cells along
+	 * either axis are never discounted.
+	 */
+	public DiscountedGridProblem(IGridProblem problem, BitSet mask, double discount, int maxMove) {
+		if(discount <= 0.0 || discount > 1.0) {
+			throw new IllegalArgumentException("Discount must be from interval (0, 1], got: " + discount);
+		}
+		
+		if(maxMove < 0) {
+			throw new IllegalArgumentException("Longest discounted move must not be negative, got: " + maxMove);
+		}
+		
+		this.problem = problem;
+		this.indexer = new GridIndexer(problem);
+		this.mask = mask;
+		this.discount = discount;
+		this.maxMove = maxMove;
+	}
+	
+	/**
+	 * Scales the heuristics by the discount, so that it stays admissible if it was
+	 * admissible for the original problem.
+	 */
+	public IHeuristics<Point2Di> discountHeuristics(IHeuristics<Point2Di> heuristics) {
+		return state -> heuristics.getEstimatedCost(state) * discount;
+	}
+	
+	private boolean isDiscounted(Point2Di first, Point2Di second) {
+		int dx = second.getX() - first.getX();
+		int dz = second.getZ() - first.getZ();
+		int steps = GridLine.steps(dx, dz);
+		if(steps > maxMove) return false;
+		
+		for(int step = 0; step <= steps; step++) {
+			int x = first.getX() + GridLine.offset(dx, step, steps);
+			int z = first.getZ() + GridLine.offset(dz, step, steps);
+			if(!indexer.contains(x, z) || !mask.get(indexer.index(x, z))) return false;
+		}
+		
+		return true;
+	}
+
+	@Override
+	public Point2Di getInitialState() {
+		return problem.getInitialState();
+	}
+
+	@Override
+	public boolean isGoal(Point2Di state) {
+		return problem.isGoal(state);
+	}
+
+	@Override
+	public Iterable<Point2Di> getSuccessors(Point2Di state) {
+		return problem.getSuccessors(state);
+	}
+	
+	@Override
+	public void getSuccessors(Point2Di state, List<Point2Di> buffer) {
+		problem.getSuccessors(state, buffer);
+	}
+	
+	@Override
+	public void getSuccessors(int index, GridIndexer indexer, IntList buffer) {
+		problem.getSuccessors(index, indexer, buffer);
+	}
+
+	@Override
+	public double getTransitionCost(Point2Di first, Point2Di second, Optional<Point2Di> firstsPredecessor) {
+		double cost = problem.getTransitionCost(first, second, firstsPredecessor);
+		return isDiscounted(first, second) ? cost * discount : cost;
+	}
+
+	@Override
+	public double getMaximumCost() {
+		return problem.getMaximumCost();
+	}
+	
+	@Override
+	public boolean supportsParallelEvaluation() {
+		return problem.supportsParallelEvaluation();
+	}
+
+	@Override
+	public Point2Di getGridLowerBound() {
+		return problem.getGridLowerBound();
+	}
+
+	@Override
+	public Point2Di getGridUpperBound() {
+		return problem.getGridUpperBound();
+	}
+	
+	@Override
+	public Optional<Point2Di> getGoalState() {
+		return problem.getGoalState();
+	}
+	
+	@Override
+	public boolean allowsTunnels() {
+		return problem.allowsTunnels();
+	}
+	
+	/**
+	 * Mask is hashed as it is at the time of the call.
+	 */
+	@Override
+	public OptionalLong getGridFingerprint() {
+		OptionalLong grid = problem.getGridFingerprint();
+		if(!grid.isPresent()) return grid;
+		
+		return OptionalLong.of(new Fingerprint(DiscountedGridProblem.class.getName())
+				.add(grid.getAsLong()).add(mask).add(discount).add(maxMove).get());
+	}
+
+}
@@ -0,0 +1,189 @@
+package hr.fer.zemris.engine.search;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.logging.Logger;
+
+import hr.fer.zemris.engine.util.Fingerprint;
+import hr.fer.zemris.engine.util.IntList;
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Grid A* for domains too large to keep the search in the heap. Best costs of
+ * all cells and the append-only nodes of the search are kept in memory-mapped
+ * temporary files, and the open list keeps only as many records in memory as
+ * the budget allows, spilling records with the highest estimated costs to
+ * another temporary file. Like in GridAStar, a returned path is the chain of
+ * nodes its costs were computed for, even if its cells were reopened later.
+ *
+ * Records are grouped into buckets of the given width by estimated total cost
+ * and ordered exactly only within the lowest bucket, so the found path can be
+ * more expensive than the optimal one by at most the bucket width. Both files
+ * are deleted when the search ends.
+ */
+public class ExternalGridAStar implements ISearchAlgorithm<Point2Di> {
+
+	private static final Logger LOGGER = Logger.getLogger(ExternalGridAStar.class.getName());
+	private static final int RECORD_BYTES = 24;
+
+	private final IGridProblem problem;
+	private final IHeuristics<Point2Di> heuristics;
+	private final int memoryRecords;
+	private final double bucketWidth;
+	private final Path directory;
+
+	private SearchStatistics statistics = new SearchStatistics();
+
+	/**
+	 * Open list keeps its records, buckets and buffers within memoryBudget bytes
+	 * of the heap, spilling the rest to files in the directory.
+	 */
+	public ExternalGridAStar(IGridProblem problem, IHeuristics<Point2Di> heuristics, long memoryBudget,
+			double bucketWidth, Path directory) {
+		if(memoryBudget < RECORD_BYTES * 1024) {
+			throw new IllegalArgumentException("Memory budget is too small: " + memoryBudget + " B");
+		}
+		if(bucketWidth <= 0.0) {
+			throw new IllegalArgumentException("Bucket width must be positive, got: " + bucketWidth);
+		}
+
+		this.problem = problem;
+		this.heuristics = heuristics;
+		this.memoryRecords = (int) Math.min(memoryBudget / RECORD_BYTES, Integer.MAX_VALUE - 8);
+		this.bucketWidth = bucketWidth;
+		this.directory = directory;
+	}
+
+	public ExternalGridAStar(IGridProblem problem, IHeuristics<Point2Di> heuristics, long memoryBudget,
+			double bucketWidth) {
+		this(problem, heuristics, memoryBudget, bucketWidth, Paths.get(System.getProperty("java.io.tmpdir")));
+	}
+
+	public ExternalGridAStar(IProblem<Point2Di> problem, IHeuristics<Point2Di> heuristics, long memoryBudget,
+			double bucketWidth) {
+		this(GridAStar.asGridProblem(problem), heuristics, memoryBudget, bucketWidth);
+	}
+
+	@Override
+	public Optional<SearchStatistics> getStatistics() {
+		return Optional.of(statistics);
+	}
+
+	@Override
+	public Optional<Node<Point2Di>> search() {
+		statistics = new SearchStatistics();
+
+		GridIndexer indexer = new GridIndexer(problem);
+		try(MappedCellStore cells = new MappedCellStore(indexer.size(), directory);
+				MappedNodeStore nodes = new MappedNodeStore(directory);
+				SpillingOpenList openList = new SpillingOpenList(memoryRecords, bucketWidth, directory)) {
+			Optional<Node<Point2Di>> goal = searchGoal(indexer, cells, nodes, openList);
+
+			LOGGER.fine(getName() + " spilled " + openList.getSpilledRecords() + " open records.");
+			return goal;
+		} finally {
+			statistics.finish();
+		}
+	}
+
+	private Optional<Node<Point2Di>> searchGoal(GridIndexer indexer, MappedCellStore cells, MappedNodeStore nodes,
+			SpillingOpenList openList) {
+		Point2Di initialState = problem.getInitialState();
+		if(!indexer.contains(initialState)) {
+			throw new IllegalStateException("Initial state " + initialState + " is out of grid bounds.");
+		}
+
+		int initialIndex = indexer.index(initialState);
+		long initialNode = nodes.add(initialIndex, MappedNodeStore.NONE, 0.0);
+		cells.update(initialIndex, 0.0, initialNode);
+		openList.add(initialNode, 0.0, estimate(initialState));
+
+		Optional<Point2Di> noPredecessor = Optional.empty();
+		IntList successors = new IntList();
+		int closedCount = 0;
+
+		while(!openList.isEmpty()) {
+			long queueStart = System.nanoTime();
+			openList.poll();
+			statistics.queueOperation(System.nanoTime() - queueStart);
+
+			long currentNode = openList.getNode();
+			double currentCost = openList.getCost();
+			int currentIndex = nodes.getState(currentNode);
+
+			// skip records superseded by cheaper nodes, every node is added only once
+			if(cells.getNode(currentIndex) != currentNode) continue;
+
+			cells.close(currentIndex);
+			statistics.updateClosedSize(++closedCount);
+
+			Point2Di currentState = indexer.point(currentIndex);
+
+			if(problem.isGoal(currentState)) {
+				return Optional.of(nodes.toNode(currentNode, indexer));
+			}
+
+			if(currentCost >= problem.getMaximumCost()) {
+				return Optional.empty();
+			}
+
+			statistics.nodeExpanded();
+
+			long predecessorNode = nodes.getPredecessor(currentNode);
+			Optional<Point2Di> predecessor = predecessorNode == MappedNodeStore.NONE ?
+					noPredecessor :
+					Optional.of(indexer.point(nodes.getState(predecessorNode)));
+
+			// states out of bounds are unreachable by contract of grid problem
+			problem.getSuccessors(currentIndex, indexer, successors);
+			statistics.nodesGenerated(successors.size());
+
+			for(int i = 0; i < successors.size(); i++) {
+				int succIndex = successors.get(i);
+				Point2Di succState = indexer.point(succIndex);
+
+				long costStart = System.nanoTime();
+				double succCost = currentCost + problem.getTransitionCost(currentState, succState, predecessor);
+				statistics.transitionCostsComputed(1, System.nanoTime() - costStart);
+
+				if(succCost == Double.POSITIVE_INFINITY || cells.getCost(succIndex) <= succCost) {
+					statistics.nodePruned();
+					continue;
+				}
+
+				if(cells.isClosed(succIndex)) statistics.nodeReopened();
+
+				long succNode = nodes.add(succIndex, currentNode, succCost);
+				cells.update(succIndex, succCost, succNode);
+
+				queueStart = System.nanoTime();
+				openList.add(succNode, succCost, succCost + estimate(succState));
+				statistics.queueOperation(System.nanoTime() - queueStart);
+				statistics.updateOpenSize((int) Math.min(openList.size(), Integer.MAX_VALUE));
+			}
+		}
+
+		return Optional.empty();
+	}
+
+	private double estimate(Point2Di state) {
+		long start = System.nanoTime();
+		double estimate = heuristics.getEstimatedCost(state);
+		statistics.heuristicsComputed(System.nanoTime() - start);
+
+		return estimate;
+	}
+
+	@Override
+	public OptionalLong getFingerprint() {
+		return OptionalLong.of(new Fingerprint(ExternalGridAStar.class.getName()).add(memoryRecords).add(bucketWidth).get());
+	}
+	
+	@Override
+	public String getName() {
+		return "External Grid A Star";
+	}
+
+}
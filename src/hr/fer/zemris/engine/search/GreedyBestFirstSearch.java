@@ -1,73 +1,151 @@
 package hr.fer.zemris.engine.search;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import hr.fer.zemris.engine.util.Fingerprint;
 
 public class GreedyBestFirstSearch<S> implements ISearchAlgorithm<S> {
 	
 	private final IProblem<S> problem;
 	private final IHeuristics<S> heuristics;
 	
+	private SearchStatistics statistics = new SearchStatistics();
+	private Optional<Consumer<SearchStatistics>> progressListener = Optional.empty();
+	private long progressPeriod;
+	
 	public GreedyBestFirstSearch(IProblem<S> problem, IHeuristics<S> heuristics) {
 		this.problem = problem;
 		this.heuristics = heuristics;
 	}
+	
+	/**
+	 * Listener is called from the searching thread with the statistics of the
+	 * running search, at most once per period given in milliseconds.
+	 */
+	public void setProgressListener(Consumer<SearchStatistics> listener, long period) {
+		this.progressListener = Optional.of(listener);
+		this.progressPeriod = TimeUnit.MILLISECONDS.toNanos(period);
+	}
+	
+	@Override
+	public Optional<SearchStatistics> getStatistics() {
+		return Optional.of(statistics);
+	}
 
 	@Override
 	public Optional<Node<S>> search() {
-		PriorityQueue<Node<S>> openQueue = new PriorityQueue<>(
-				(n1, n2) -> Double.compare(
-						heuristics.getEstimatedCost(n1.getState()),
-						heuristics.getEstimatedCost(n2.getState())));
+		statistics = new SearchStatistics(progressListener, progressPeriod);
+		Optional<Node<S>> goal = searchGoal();
+		statistics.finish();
+		
+		return goal;
+	}
+	
+	private Optional<Node<S>> searchGoal() {
+		// estimates are kept in queue entries, so heuristics is computed once per node
+		PriorityQueue<QueueEntry<S>> openQueue = new PriorityQueue<>(
+				(e1, e2) -> Double.compare(e1.estimatedCost, e2.estimatedCost));
 		Set<S> closedStates = new HashSet<>();
+		List<S> successors = new ArrayList<>();
 		
 		S initialState = problem.getInitialState();
-		openQueue.add(new HeuristicsNode<>(
+		double initialEstimate = estimate(initialState);
+		addToQueue(openQueue, new HeuristicsNode<>(
 				initialState,
 				Optional.empty(),
 				0.0,
-				heuristics.getEstimatedCost(initialState)));
+				initialEstimate), initialEstimate);
 		
 		while(!openQueue.isEmpty()) {
-			Node<S> current = openQueue.remove();
+			long queueStart = System.nanoTime();
+			Node<S> current = openQueue.remove().node;
+			statistics.queueOperation(System.nanoTime() - queueStart);
 
 			if(problem.isGoal(current.getState())) {
 				return Optional.of(current);
 			}
 
 			closedStates.add(current.getState());
+			statistics.updateClosedSize(closedStates.size());
+			statistics.nodeExpanded();
 			
-			for(S successor : problem.getSuccessors(current.getState())) {
+			problem.getSuccessors(current.getState(), successors);
+			for(S successor : successors) {
+				statistics.nodesGenerated(1);
+				
 				if(closedStates.contains(successor)) {
+					statistics.nodePruned();
 					continue;
 				}
 				
+				long costStart = System.nanoTime();
 				double transitionCost = problem.getTransitionCost(
 						current.getState(),
 						successor,
 						current.getPredecessor().map(node -> node.getState()));
+				statistics.transitionCostsComputed(1, System.nanoTime() - costStart);
 				
 				if(transitionCost + 1e-6 >= problem.getMaximumCost()) {
+					statistics.nodePruned();
 					continue;
 				}
 				
+				double estimatedCost = estimate(successor);
 				Node<S> succNode = new HeuristicsNode<>(
 						successor,
 						Optional.of(current),
 						current.getCost() + transitionCost,
-						current.getCost() + transitionCost + heuristics.getEstimatedCost(successor));
+						current.getCost() + transitionCost + estimatedCost);
 				
-				openQueue.add(succNode);
+				addToQueue(openQueue, succNode, estimatedCost);
 			}
 		}
 		
 		return Optional.empty();
 	}
+	
+	private void addToQueue(PriorityQueue<QueueEntry<S>> openQueue, Node<S> node, double estimatedCost) {
+		long start = System.nanoTime();
+		openQueue.add(new QueueEntry<>(node, estimatedCost));
+		statistics.queueOperation(System.nanoTime() - start);
+		statistics.updateOpenSize(openQueue.size());
+	}
+	
+	private double estimate(S state) {
+		long start = System.nanoTime();
+		double estimate = heuristics.getEstimatedCost(state);
+		statistics.heuristicsComputed(System.nanoTime() - start);
+		
+		return estimate;
+	}
 
+	@Override
+	public OptionalLong getFingerprint() {
+		return OptionalLong.of(new Fingerprint(GreedyBestFirstSearch.class.getName()).get());
+	}
+	
 	@Override
 	public String getName() {
 		return "Greedy best-first";
 	}
+	
+	private static class QueueEntry<S> {
+		
+		private final Node<S> node;
+		private final double estimatedCost;
+		
+		public QueueEntry(Node<S> node, double estimatedCost) {
+			this.node = node;
+			this.estimatedCost = estimatedCost;
+		}
+		
+	}
 }
@@ -0,0 +1,212 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import hr.fer.zemris.engine.util.Fingerprint;
+import hr.fer.zemris.engine.util.IntList;
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * A* specialized for bounded grid problems. Explores the state space the same
+ * way as {@link AStar} (including reopening of closed states), but packs states
+ * into integer indices, keeps the search data in primitive arrays and uses an
+ * indexed heap with real decrease-key operation for the open list. Transition
+ * costs to successors can be computed in parallel on a fork-join pool.
+ */
+public class GridAStar implements ISearchAlgorithm<Point2Di> {
+	
+	private final IGridProblem problem;
+	private final IHeuristics<Point2Di> heuristics;
+	private final TransitionCostEvaluator<Point2Di> costEvaluator;
+	
+	private SearchStatistics statistics = new SearchStatistics();
+	private Optional<Consumer<SearchStatistics>> progressListener = Optional.empty();
+	private long progressPeriod;
+	
+	public GridAStar(IGridProblem problem, IHeuristics<Point2Di> heuristics) {
+		this(problem, heuristics, Optional.empty());
+	}
+	
+	public GridAStar(IProblem<Point2Di> problem, IHeuristics<Point2Di> heuristics) {
+		this(asGridProblem(problem), heuristics, Optional.empty());
+	}
+	
+	/**
+	 * Problem must support parallel evaluation.
+	 */
+	public GridAStar(IGridProblem problem, IHeuristics<Point2Di> heuristics, ForkJoinPool pool) {
+		this(problem, heuristics, Optional.of(pool));
+	}
+	
+	public GridAStar(IProblem<Point2Di> problem, IHeuristics<Point2Di> heuristics, ForkJoinPool pool) {
+		this(asGridProblem(problem), heuristics, Optional.of(pool));
+	}
+	
+	private GridAStar(IGridProblem problem, IHeuristics<Point2Di> heuristics, Optional<ForkJoinPool> pool) {
+		this.problem = problem;
+		this.heuristics = heuristics;
+		this.costEvaluator = new TransitionCostEvaluator<>(problem, pool);
+	}
+	
+	static IGridProblem asGridProblem(IProblem<Point2Di> problem) {
+		if(!(problem instanceof IGridProblem)) {
+			throw new IllegalArgumentException("Grid search algorithms require a bounded grid problem.");
+		}
+		return (IGridProblem) problem;
+	}
+	
+	/**
+	 * Listener is called from the searching thread with the statistics of the
+	 * running search, at most once per period given in milliseconds.
+	 */
+	public void setProgressListener(Consumer<SearchStatistics> listener, long period) {
+		this.progressListener = Optional.of(listener);
+		this.progressPeriod = TimeUnit.MILLISECONDS.toNanos(period);
+	}
+	
+	@Override
+	public Optional<SearchStatistics> getStatistics() {
+		return Optional.of(statistics);
+	}
+
+	@Override
+	public Optional<Node<Point2Di>> search() {
+		statistics = new SearchStatistics(progressListener, progressPeriod);
+		Optional<Node<Point2Di>> goal = searchGoal();
+		statistics.finish();
+		
+		return goal;
+	}
+	
+	private Optional<Node<Point2Di>> searchGoal() {
+		GridIndexer indexer = new GridIndexer(problem);
+		Point2Di initialState = problem.getInitialState();
+		
+		if(!indexer.contains(initialState)) {
+			throw new IllegalStateException("Initial state " + initialState + " is out of grid bounds.");
+		}
+		
+		int stateCount = indexer.size();
+		NodeArena nodes = new NodeArena();
+		IndexedMinHeap openQueue = new IndexedMinHeap(stateCount);
+		int[] openNodes = new int[stateCount];
+		double[] closedCosts = new double[stateCount];
+		Arrays.fill(openNodes, NodeArena.NONE);
+		Arrays.fill(closedCosts, Double.NaN);
+		
+		int initialIndex = indexer.index(initialState);
+		openNodes[initialIndex] = nodes.add(initialIndex, NodeArena.NONE, 0.0);
+		openQueue.add(initialIndex, estimate(initialState));
+		
+		Optional<Point2Di> noPredecessor = Optional.empty();
+		IntList successorIndices = new IntList();
+		List<Point2Di> successors = new ArrayList<>();
+		int closedCount = 0;
+		
+		while(!openQueue.isEmpty()) {
+			long queueStart = System.nanoTime();
+			int currentIndex = openQueue.poll();
+			statistics.queueOperation(System.nanoTime() - queueStart);
+			int currentNode = openNodes[currentIndex];
+			double currentCost = nodes.getCost(currentNode);
+			openNodes[currentIndex] = NodeArena.NONE;
+			if(Double.isNaN(closedCosts[currentIndex])) statistics.updateClosedSize(++closedCount);
+			closedCosts[currentIndex] = currentCost;
+			
+			Point2Di currentState = indexer.point(currentIndex);
+			
+			if(problem.isGoal(currentState)) {
+				return Optional.of(nodes.toNode(currentNode, indexer));
+			}
+			
+			if(currentCost >= problem.getMaximumCost()) {
+				return Optional.empty();
+			}
+			
+			statistics.nodeExpanded();
+			
+			int predecessorNode = nodes.getPredecessor(currentNode);
+			Optional<Point2Di> predecessor = predecessorNode == NodeArena.NONE ?
+					noPredecessor :
+					Optional.of(indexer.point(nodes.getState(predecessorNode)));
+			
+			// states out of bounds are unreachable by contract of grid problem
+			problem.getSuccessors(currentIndex, indexer, successorIndices);
+			successors.clear();
+			for(int i = 0; i < successorIndices.size(); i++) {
+				successors.add(indexer.point(successorIndices.get(i)));
+			}
+			
+			long costStart = System.nanoTime();
+			double[] transitionCosts = costEvaluator.evaluate(currentState, successors, predecessor);
+			statistics.transitionCostsComputed(successors.size(), System.nanoTime() - costStart);
+			statistics.nodesGenerated(successors.size());
+			
+			for(int i = 0; i < successors.size(); i++) {
+				Point2Di succState = successors.get(i);
+				double transitionCost = transitionCosts[i];
+				double succCost = currentCost + transitionCost;
+				
+				// same as expanding the node only after all finite ones, which ends the search
+				if(succCost == Double.POSITIVE_INFINITY) {
+					statistics.nodePruned();
+					continue;
+				}
+				
+				int succIndex = successorIndices.get(i);
+				
+				int existingSuccInOpen = openNodes[succIndex];
+				if(existingSuccInOpen != NodeArena.NONE && nodes.getCost(existingSuccInOpen) < succCost) {
+					statistics.nodePruned();
+					continue;
+				}
+				
+				double existingSuccInClosed = closedCosts[succIndex];
+				if(!Double.isNaN(existingSuccInClosed) && existingSuccInClosed < succCost) {
+					statistics.nodePruned();
+					continue;
+				}
+				
+				if(!Double.isNaN(existingSuccInClosed)) {
+					statistics.nodeReopened();
+				}
+				
+				double estimatedTotalCost = succCost + estimate(succState);
+				
+				openNodes[succIndex] = nodes.add(succIndex, currentNode, succCost);
+				queueStart = System.nanoTime();
+				openQueue.update(succIndex, estimatedTotalCost);
+				statistics.queueOperation(System.nanoTime() - queueStart);
+				statistics.updateOpenSize(openQueue.size());
+			}
+		}
+		
+		return Optional.empty();
+	}
+	
+	private double estimate(Point2Di state) {
+		long start = System.nanoTime();
+		double estimate = heuristics.getEstimatedCost(state);
+		statistics.heuristicsComputed(System.nanoTime() - start);
+		
+		return estimate;
+	}
+
+	@Override
+	public OptionalLong getFingerprint() {
+		return OptionalLong.of(new Fingerprint(GridAStar.class.getName()).get());
+	}
+	
+	@Override
+	public String getName() {
+		return "Grid A Star";
+	}
+
+}
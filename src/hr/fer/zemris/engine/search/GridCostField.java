@@ -0,0 +1,49 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.Optional;
+
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Costs of the cheapest found paths from a source state to every reached state
+ * of a bounded grid, together with the paths themselves.
+ */
+public class GridCostField {
+	
+	private final GridIndexer indexer;
+	private final NodeArena nodes;
+	private final int[] bestNodes;
+	
+	GridCostField(GridIndexer indexer, NodeArena nodes, int[] bestNodes) {
+		this.indexer = indexer;
+		this.nodes = nodes;
+		this.bestNodes = bestNodes;
+	}
+	
+	public GridIndexer getIndexer() {
+		return indexer;
+	}
+	
+	public boolean isReached(Point2Di state) {
+		return indexer.contains(state) && bestNodes[indexer.index(state)] != NodeArena.NONE;
+	}
+	
+	public double getCost(Point2Di state) {
+		if(!isReached(state)) return Double.POSITIVE_INFINITY;
+		return nodes.getCost(bestNodes[indexer.index(state)]);
+	}
+	
+	/**
+	 * Cost of the state with the given index, positive infinity if state was not reached.
+	 */
+	public double getCost(int index) {
+		int node = bestNodes[index];
+		return node == NodeArena.NONE ? Double.POSITIVE_INFINITY : nodes.getCost(node);
+	}
+	
+	public Optional<Node<Point2Di>> getNode(Point2Di state) {
+		if(!isReached(state)) return Optional.empty();
+		return Optional.of(nodes.toNode(bestNodes[indexer.index(state)], indexer));
+	}
+
+}
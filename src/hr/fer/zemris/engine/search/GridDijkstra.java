@@ -0,0 +1,123 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Optional;
+
+import hr.fer.zemris.engine.util.IntList;
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Uniform-cost search from the initial state (or a set of source states) of a
+ * bounded grid problem to all states of its grid. Transition costs may depend on
+ * the predecessor, so states are reopened on cheaper paths the same way as in
+ * {@link AStar}. Goal of the problem is ignored.
+ */
+public class GridDijkstra {
+	
+	private final IGridProblem problem;
+	
+	public GridDijkstra(IGridProblem problem) {
+		this.problem = problem;
+	}
+	
+	public GridCostField search() {
+		return search(Collections.emptyList());
+	}
+	
+	/**
+	 * Stops the search as soon as all target states have been expanded; if there
+	 * are no targets, all reachable states are expanded.
+	 */
+	public GridCostField search(Collection<Point2Di> targets) {
+		return search(Collections.singletonList(problem.getInitialState()), targets);
+	}
+	
+	/**
+	 * Searches from all sources at once, each of them having zero cost and no
+	 * predecessor.
+	 */
+	public GridCostField search(Collection<Point2Di> sources, Collection<Point2Di> targets) {
+		GridIndexer indexer = new GridIndexer(problem);
+		
+		int stateCount = indexer.size();
+		NodeArena nodes = new NodeArena();
+		IndexedMinHeap openQueue = new IndexedMinHeap(stateCount);
+		int[] openNodes = new int[stateCount];
+		int[] bestNodes = new int[stateCount];
+		Arrays.fill(openNodes, NodeArena.NONE);
+		Arrays.fill(bestNodes, NodeArena.NONE);
+		
+		boolean[] isTarget = new boolean[stateCount];
+		int targetsLeft = 0;
+		for(Point2Di target : targets) {
+			if(!indexer.contains(target) || isTarget[indexer.index(target)]) continue;
+			isTarget[indexer.index(target)] = true;
+			targetsLeft++;
+		}
+		boolean stopAtTargets = targetsLeft > 0;
+		
+		for(Point2Di source : sources) {
+			if(!indexer.contains(source)) {
+				throw new IllegalStateException("Source state " + source + " is out of grid bounds.");
+			}
+			
+			int sourceIndex = indexer.index(source);
+			if(openQueue.contains(sourceIndex)) continue;
+			
+			openNodes[sourceIndex] = nodes.add(sourceIndex, NodeArena.NONE, 0.0);
+			openQueue.add(sourceIndex, 0.0);
+		}
+		
+		Optional<Point2Di> noPredecessor = Optional.empty();
+		IntList successors = new IntList();
+		
+		while(!openQueue.isEmpty()) {
+			int currentIndex = openQueue.poll();
+			int currentNode = openNodes[currentIndex];
+			double currentCost = nodes.getCost(currentNode);
+			openNodes[currentIndex] = NodeArena.NONE;
+			
+			if(currentCost >= problem.getMaximumCost()) break;
+			
+			if(bestNodes[currentIndex] == NodeArena.NONE && isTarget[currentIndex]) {
+				targetsLeft--;
+			}
+			bestNodes[currentIndex] = currentNode;
+			
+			if(stopAtTargets && targetsLeft == 0) break;
+			
+			Point2Di currentState = indexer.point(currentIndex);
+			int predecessorNode = nodes.getPredecessor(currentNode);
+			Optional<Point2Di> predecessor = predecessorNode == NodeArena.NONE ?
+					noPredecessor :
+					Optional.of(indexer.point(nodes.getState(predecessorNode)));
+			
+			problem.getSuccessors(currentIndex, indexer, successors);
+			for(int i = 0; i < successors.size(); i++) {
+				int succIndex = successors.get(i);
+				Point2Di succState = indexer.point(succIndex);
+				
+				double succCost = currentCost + problem.getTransitionCost(currentState, succState, predecessor);
+				if(succCost == Double.POSITIVE_INFINITY) continue;
+				
+				int existingSuccInOpen = openNodes[succIndex];
+				if(existingSuccInOpen != NodeArena.NONE && nodes.getCost(existingSuccInOpen) < succCost) {
+					continue;
+				}
+				
+				int existingSuccInClosed = bestNodes[succIndex];
+				if(existingSuccInClosed != NodeArena.NONE && nodes.getCost(existingSuccInClosed) < succCost) {
+					continue;
+				}
+				
+				openNodes[succIndex] = nodes.add(succIndex, currentNode, succCost);
+				openQueue.update(succIndex, succCost);
+			}
+		}
+		
+		return new GridCostField(indexer, nodes, bestNodes);
+	}
+
+}
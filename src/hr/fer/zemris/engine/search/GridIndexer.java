@@ -0,0 +1,77 @@
+package hr.fer.zemris.engine.search;
+
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Packs states of a bounded grid problem into dense integer indices.
+ */
+public class GridIndexer {
+	
+	private final int minX;
+	private final int minZ;
+	private final int width;
+	private final int depth;
+	
+	public GridIndexer(Point2Di lowerBound, Point2Di upperBound) {
+		if(upperBound.getX() < lowerBound.getX() || upperBound.getZ() < lowerBound.getZ()) {
+			throw new IllegalArgumentException("Invalid grid bounds: " + lowerBound + ", " + upperBound);
+		}
+		
+		long width = (long) upperBound.getX() - lowerBound.getX() + 1;
+		long depth = (long) upperBound.getZ() - lowerBound.getZ() + 1;
+		
+		if(width * depth > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Grid of " + width + "x" + depth + " cells is too large to index.");
+		}
+		
+		this.minX = lowerBound.getX();
+		this.minZ = lowerBound.getZ();
+		this.width = (int) width;
+		this.depth = (int) depth;
+	}
+	
+	public GridIndexer(IGridProblem problem) {
+		this(problem.getGridLowerBound(), problem.getGridUpperBound());
+	}
+	
+	public int size() {
+		return width * depth;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getDepth() {
+		return depth;
+	}
+	
+	public boolean contains(int x, int z) {
+		return x >= minX && z >= minZ && x - minX < width && z - minZ < depth;
+	}
+	
+	public boolean contains(Point2Di point) {
+		return contains(point.getX(), point.getZ());
+	}
+	
+	public int index(int x, int z) {
+		return (z - minZ) * width + (x - minX);
+	}
+	
+	public int index(Point2Di point) {
+		return index(point.getX(), point.getZ());
+	}
+	
+	public int x(int index) {
+		return index % width + minX;
+	}
+	
+	public int z(int index) {
+		return index / width + minZ;
+	}
+	
+	public Point2Di point(int index) {
+		return new Point2Di(x(index), z(index));
+	}
+
+}
@@ -0,0 +1,257 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Hash distributed A* (HDA*). States are partitioned among worker threads by
+ * their hash; each worker keeps its own open list and best known costs of its
+ * states, and sends generated nodes of states owned by other workers to their
+ * message queues.
+ *
+ * Workers expand nodes out of global f-order, so the first solution found is
+ * not necessarily the best. A solution only prunes nodes whose estimated total
+ * cost is not lower than its own, which is when {@link AStar} would return it,
+ * and the search ends once no worker has other nodes and no messages are in
+ * transit. With admissible heuristics and costs that depend only on the states,
+ * the returned solution is therefore optimal. When costs also depend on the
+ * predecessor, the result depends on the order of expansions, like in A*, and
+ * can differ slightly between runs.
+ *
+ * Problem must support parallel evaluation and heuristics must be thread-safe.
+ */
+public class HashDistributedAStar<S> implements ISearchAlgorithm<S> {
+
+	private static final Logger LOGGER = Logger.getLogger(HashDistributedAStar.class.getName());
+	private static final long IDLE_WAIT_NANOS = 20_000L;
+
+	private final IProblem<S> problem;
+	private final IHeuristics<S> heuristics;
+	private final int threads;
+
+	// state of the current search
+	private List<Worker> workers;
+	// messages in transit plus busy workers, search ends when it drops to 0
+	private AtomicLong work;
+	private volatile boolean done;
+	// estimated total cost of the best solution, compared with open nodes like in A*
+	private volatile double bestEstimate;
+	private HeuristicsNode<S> bestNode;
+	private volatile Throwable failure;
+
+	public HashDistributedAStar(IProblem<S> problem, IHeuristics<S> heuristics, int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be positive, got: " + threads);
+		}
+		if(!problem.supportsParallelEvaluation()) {
+			throw new IllegalArgumentException("Problem does not support parallel evaluation.");
+		}
+
+		this.problem = problem;
+		this.heuristics = heuristics;
+		this.threads = threads;
+	}
+
+	public HashDistributedAStar(IProblem<S> problem, IHeuristics<S> heuristics) {
+		this(problem, heuristics, Runtime.getRuntime().availableProcessors());
+	}
+
+	@Override
+	public Optional<Node<S>> search() {
+		long start = System.nanoTime();
+
+		workers = new ArrayList<>();
+		for(int i = 0; i < threads; i++) {
+			workers.add(new Worker(i));
+		}
+		work = new AtomicLong();
+		done = false;
+		bestEstimate = Double.POSITIVE_INFINITY;
+		bestNode = null;
+		failure = null;
+
+		S initialState = problem.getInitialState();
+		HeuristicsNode<S> startNode = new HeuristicsNode<>(
+				initialState, Optional.empty(), 0.0, heuristics.getEstimatedCost(initialState));
+		if(problem.isGoal(initialState)) offerSolution(startNode);
+		send(startNode);
+
+		// workers wait for each other, so all of them need their own thread
+		List<Thread> workerThreads = new ArrayList<>();
+		for(int i = 1; i < threads; i++) {
+			Thread thread = new Thread(workers.get(i), getName() + " worker " + i);
+			thread.setDaemon(true);
+			thread.start();
+			workerThreads.add(thread);
+		}
+
+		workers.get(0).run();
+
+		try {
+			for(Thread thread : workerThreads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			done = true;
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for search workers.", e);
+		}
+
+		if(failure != null) {
+			throw new IllegalStateException("Search worker failed.", failure);
+		}
+
+		LOGGER.fine(getName() + " with " + threads + " threads finished in " + (System.nanoTime() - start) * 1e-9 +
+				" s; expansions per worker: " + workers.stream().map(w -> w.expansions).collect(Collectors.toList()));
+
+		return Optional.ofNullable(bestNode);
+	}
+
+	private int ownerOf(S state) {
+		int h = state.hashCode() * 0x9E3779B9;
+		return Math.floorMod(h ^ (h >>> 16), threads);
+	}
+
+	private void send(HeuristicsNode<S> node) {
+		work.incrementAndGet();
+		workers.get(ownerOf(node.getState())).inbox.add(node);
+	}
+
+	private synchronized void offerSolution(HeuristicsNode<S> node) {
+		if(node.getEstimatedTotalCost() < bestEstimate) {
+			bestNode = node;
+			bestEstimate = node.getEstimatedTotalCost();
+		}
+	}
+
+	private class Worker implements Runnable {
+
+		private final int index;
+		private final Queue<HeuristicsNode<S>> inbox = new ConcurrentLinkedQueue<>();
+		private final Map<S, HeuristicsNode<S>> bestNodes = new HashMap<>();
+		private final PriorityQueue<HeuristicsNode<S>> openQueue = new PriorityQueue<>(
+				(a, b) -> Double.compare(a.getEstimatedTotalCost(), b.getEstimatedTotalCost()));
+		private boolean busy;
+		private long expansions;
+
+		public Worker(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while(!done) {
+					HeuristicsNode<S> message;
+					while((message = inbox.poll()) != null) {
+						setBusy();
+						receive(message);
+						work.decrementAndGet();
+					}
+
+					HeuristicsNode<S> current = pollOpen();
+					if(current != null) {
+						setBusy();
+						expand(current);
+						continue;
+					}
+
+					if(busy) {
+						busy = false;
+						if(work.decrementAndGet() == 0) done = true;
+					} else {
+						LockSupport.parkNanos(IDLE_WAIT_NANOS);
+					}
+				}
+			} catch (Throwable t) {
+				failure = t;
+				done = true;
+			}
+		}
+
+		private void setBusy() {
+			if(!busy) {
+				work.incrementAndGet();
+				busy = true;
+			}
+		}
+
+		private void receive(HeuristicsNode<S> node) {
+			if(node.getEstimatedTotalCost() >= bestEstimate) return;
+
+			HeuristicsNode<S> existing = bestNodes.get(node.getState());
+			if(existing != null && existing.getCost() <= node.getCost()) return;
+
+			bestNodes.put(node.getState(), node);
+			openQueue.add(node);
+		}
+
+		// removes outdated entries, returns null if no node can improve the best solution
+		private HeuristicsNode<S> pollOpen() {
+			while(!openQueue.isEmpty()) {
+				HeuristicsNode<S> node = openQueue.peek();
+
+				if(bestNodes.get(node.getState()) != node) {
+					openQueue.remove();
+					continue;
+				}
+
+				if(node.getEstimatedTotalCost() >= bestEstimate) return null;
+				return openQueue.remove();
+			}
+
+			return null;
+		}
+
+		private void expand(HeuristicsNode<S> current) {
+			expansions++;
+
+			if(problem.isGoal(current.getState())) return;
+			if(current.getCost() >= problem.getMaximumCost()) return;
+
+			for(S succState : problem.getSuccessors(current.getState())) {
+				double transitionCost = problem.getTransitionCost(
+						current.getState(),
+						succState,
+						current.getPredecessor().map(node -> node.getState()));
+				double cost = current.getCost() + transitionCost;
+
+				if(cost == Double.POSITIVE_INFINITY) continue;
+
+				HeuristicsNode<S> candidateSucc = new HeuristicsNode<>(
+						succState,
+						Optional.of(current),
+						cost,
+						cost + heuristics.getEstimatedCost(succState));
+
+				if(problem.isGoal(succState)) {
+					offerSolution(candidateSucc);
+					continue;
+				}
+
+				if(ownerOf(succState) == index) {
+					receive(candidateSucc);
+				} else {
+					send(candidateSucc);
+				}
+			}
+		}
+
+	}
+
+	@Override
+	public String getName() {
+		return "Hash Distributed A Star";
+	}
+
+}
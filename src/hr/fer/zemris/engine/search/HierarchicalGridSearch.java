@@ -0,0 +1,205 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import hr.fer.zemris.engine.util.Fingerprint;
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Hierarchical (HPA*-style) search over a bounded grid problem. The path is first
+ * found in the abstract graph of entrances between clusters, and is then refined
+ * by a grid search restricted to the clusters the abstract path goes through.
+ * Abstract costs ignore curvature at cluster borders, so refinement can fail; in
+ * that case the corridor is expanded by neighboring clusters a limited number of
+ * times, and finally the whole grid is searched.
+ * 
+ * Moves are confined to the clusters of the abstract path and to the bands of
+ * their entrances, so tunnels, which reach far beyond a cluster, could never be
+ * used; problems which allow tunnels are rejected. Problem has to know its goal
+ * cell, see IGridProblem.getGoalState.
+ */
+public class HierarchicalGridSearch implements ISearchAlgorithm<Point2Di> {
+	
+	private static final Logger LOGGER = Logger.getLogger(HierarchicalGridSearch.class.getName());
+	private static final int DEFAULT_CORRIDOR_EXPANSIONS = 3;
+	
+	private final ClusterGraph graph;
+	private final IGridProblem problem;
+	private final Point2Di goal;
+	private final IHeuristics<Point2Di> heuristics;
+	private final int corridorExpansions;
+	
+	public HierarchicalGridSearch(ClusterGraph graph, IGridProblem problem, IHeuristics<Point2Di> heuristics,
+			int corridorExpansions) {
+		if(!graph.isCompatible(problem)) {
+			throw new IllegalArgumentException("Problem grid or its costs do not match those of the cluster graph.");
+		}
+		if(problem.allowsTunnels()) {
+			throw new IllegalArgumentException("Hierarchical search cannot use tunnels; disable them in the problem.");
+		}
+		
+		this.graph = graph;
+		this.problem = problem;
+		this.goal = problem.getGoalState().orElseThrow(() -> new IllegalArgumentException(
+				"Hierarchical search requires a problem with a single known goal cell."));
+		if(!graph.getIndexer().contains(goal)) {
+			throw new IllegalArgumentException("Goal " + goal + " is out of grid bounds.");
+		}
+		this.heuristics = heuristics;
+		this.corridorExpansions = corridorExpansions;
+	}
+	
+	public HierarchicalGridSearch(ClusterGraph graph, IProblem<Point2Di> problem, IHeuristics<Point2Di> heuristics) {
+		this(graph, GridAStar.asGridProblem(problem), heuristics, DEFAULT_CORRIDOR_EXPANSIONS);
+	}
+
+	@Override
+	public Optional<Node<Point2Di>> search() {
+		Optional<List<Integer>> abstractPath = searchAbstractPath();
+		
+		if(!abstractPath.isPresent()) {
+			LOGGER.info("No abstract path found; searching whole grid.");
+			return new GridAStar(problem, heuristics).search();
+		}
+		
+		List<Integer> clusters = abstractPath.get();
+		LOGGER.fine("Abstract path goes through " + clusters.size() + " clusters.");
+		
+		Set<Integer> corridorClusters = new HashSet<>(clusters);
+		BitSet corridor = new BitSet(graph.getIndexer().size());
+		corridorClusters.forEach(c -> graph.markCluster(c, corridor));
+		
+		for(int expansion = 0; ; expansion++) {
+			Optional<Node<Point2Di>> goal = refine(corridor);
+			if(goal.isPresent()) return goal;
+			if(expansion == corridorExpansions) break;
+			
+			LOGGER.fine("Refinement failed in " + corridorClusters.size() + " clusters; adding neighboring clusters.");
+			for(int cluster : new ArrayList<>(corridorClusters)) {
+				for(int neighbor : graph.getNeighborClusters(cluster)) {
+					if(corridorClusters.add(neighbor)) graph.markCluster(neighbor, corridor);
+				}
+			}
+		}
+		
+		LOGGER.info("Refinement in corridor failed; searching whole grid.");
+		return new GridAStar(problem, heuristics).search();
+	}
+	
+	private Optional<Node<Point2Di>> refine(BitSet corridor) {
+		return new GridAStar(new RestrictedGridProblem(problem, corridor), heuristics).search();
+	}
+	
+	// returns clusters the abstract path goes through, in order
+	private Optional<List<Integer>> searchAbstractPath() {
+		Point2Di start = problem.getInitialState();
+		
+		int startCluster = graph.clusterOf(start);
+		int goalCluster = graph.clusterOf(goal);
+		
+		int entranceCount = graph.getEntranceCount();
+		int startId = entranceCount;
+		int goalId = entranceCount + 1;
+		
+		// costs from start to entrances of its cluster, and to goal if it is in the same cluster
+		Point2Di lower = graph.getClusterLowerBound(startCluster);
+		Point2Di upper = graph.getClusterUpperBound(startCluster);
+		GridCostField startField = new GridDijkstra(new RestrictedGridProblem(problem, start,
+				Optional.empty(), lower, upper, Optional.empty())).search();
+		
+		int[] goalEntrances = graph.getClusterEntrances(goalCluster);
+		double[] costsToGoal = new double[entranceCount];
+		Arrays.fill(costsToGoal, Double.POSITIVE_INFINITY);
+		for(int entrance : goalEntrances) {
+			costsToGoal[entrance] = graph.getCostInCluster(goalCluster, entrance, goal);
+		}
+		
+		double[] costs = new double[entranceCount + 2];
+		int[] predecessors = new int[entranceCount + 2];
+		int[] predecessorClusters = new int[entranceCount + 2];
+		boolean[] closed = new boolean[entranceCount + 2];
+		Arrays.fill(costs, Double.POSITIVE_INFINITY);
+		Arrays.fill(predecessors, -1);
+		
+		IndexedMinHeap openQueue = new IndexedMinHeap(entranceCount + 2);
+		costs[startId] = 0.0;
+		openQueue.add(startId, heuristics.getEstimatedCost(start));
+		
+		while(!openQueue.isEmpty()) {
+			int current = openQueue.poll();
+			closed[current] = true;
+			
+			if(current == goalId) {
+				return Optional.of(reconstructClusters(predecessors, predecessorClusters, goalId));
+			}
+			
+			if(current == startId) {
+				for(int entrance : graph.getClusterEntrances(startCluster)) {
+					relax(current, entrance, graph.getCostToEntrance(startCluster, entrance, startField), startCluster,
+							graph.getEntrance(entrance), costs, predecessors, predecessorClusters, closed, openQueue);
+				}
+				relax(current, goalId, startCluster == goalCluster ? startField.getCost(goal) : Double.POSITIVE_INFINITY,
+						startCluster, goal, costs, predecessors, predecessorClusters, closed, openQueue);
+				continue;
+			}
+			
+			for(ClusterGraph.Edge edge : graph.getEdges(current)) {
+				relax(current, edge.getTarget(), edge.getCost(), edge.getCluster(),
+						graph.getEntrance(edge.getTarget()), costs, predecessors, predecessorClusters, closed, openQueue);
+			}
+			relax(current, goalId, costsToGoal[current], goalCluster, goal,
+					costs, predecessors, predecessorClusters, closed, openQueue);
+		}
+		
+		return Optional.empty();
+	}
+	
+	private void relax(int from, int to, double edgeCost, int cluster, Point2Di toCell, double[] costs,
+			int[] predecessors, int[] predecessorClusters, boolean[] closed, IndexedMinHeap openQueue) {
+		if(edgeCost == Double.POSITIVE_INFINITY || closed[to]) return;
+		
+		double cost = costs[from] + edgeCost;
+		if(cost >= costs[to]) return;
+		
+		costs[to] = cost;
+		predecessors[to] = from;
+		predecessorClusters[to] = cluster;
+		openQueue.update(to, cost + heuristics.getEstimatedCost(toCell));
+	}
+	
+	private List<Integer> reconstructClusters(int[] predecessors, int[] predecessorClusters, int goalId) {
+		Set<Integer> clusters = new LinkedHashSet<>();
+		List<Integer> reversed = new ArrayList<>();
+		
+		for(int current = goalId; predecessors[current] != -1; current = predecessors[current]) {
+			reversed.add(predecessorClusters[current]);
+		}
+		
+		for(int i = reversed.size() - 1; i >= 0; i--) {
+			clusters.add(reversed.get(i));
+		}
+		
+		return new ArrayList<>(clusters);
+	}
+	
+	@Override
+	public OptionalLong getFingerprint() {
+		return OptionalLong.of(new Fingerprint(HierarchicalGridSearch.class.getName())
+				.add(graph.getFingerprint()).add(corridorExpansions).get());
+	}
+
+	@Override
+	public String getName() {
+		return "Hierarchical A Star";
+	}
+
+}
@@ -0,0 +1,28 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.Optional;
+
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Grid problem which can evaluate a straight segment between any two cells, not
+ * only between a state and its successors, so that any-angle searches can
+ * shortcut paths through their neighborhoods.
+ */
+public interface IAnyAngleProblem extends IGridProblem {
+	
+	/**
+	 * Cost of going straight from the first cell to the second one, positive
+	 * infinity if the segment is not feasible.
+	 */
+	public double getSegmentCost(Point2Di first, Point2Di second, Optional<Point2Di> firstsPredecessor);
+	
+	/**
+	 * Lower bound of the transition cost from the first cell to the second one
+	 * with any predecessor, zero if none is known.
+	 */
+	public default double getTransitionCostLowerBound(Point2Di first, Point2Di second) {
+		return 0.0;
+	}
+
+}
@@ -0,0 +1,55 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.Optional;
+import java.util.OptionalLong;
+
+import hr.fer.zemris.engine.util.IntList;
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Problem whose states are cells of a bounded 2D grid. Every state that can be
+ * reached with a finite cost has to lie within the bounds (inclusive).
+ */
+public interface IGridProblem extends IProblem<Point2Di> {
+	
+	public Point2Di getGridLowerBound();
+	public Point2Di getGridUpperBound();
+	
+	/**
+	 * The only goal cell, nothing if goals are not known as a single cell.
+	 */
+	public default Optional<Point2Di> getGoalState() {
+		return Optional.empty();
+	}
+	
+	/**
+	 * Clears the buffer and fills it with indices of successors of the state at
+	 * the index, in the same order as getSuccessors. Successors outside the
+	 * bounds of the indexer are left out. Problems can override this to skip
+	 * creating a point for every successor.
+	 */
+	public default void getSuccessors(int index, GridIndexer indexer, IntList buffer) {
+		buffer.clear();
+		for(Point2Di successor : getSuccessors(indexer.point(index))) {
+			if(indexer.contains(successor)) buffer.add(indexer.index(successor));
+		}
+	}
+	
+	/**
+	 * Whether successors can include tunnels, which are much longer than moves
+	 * between neighboring cells.
+	 */
+	public default boolean allowsTunnels() {
+		return false;
+	}
+	
+	/**
+	 * Hash of everything which determines the grid and its transition costs, so
+	 * equal for problems differing only in endpoints; nothing if it cannot be
+	 * identified.
+	 */
+	public default OptionalLong getGridFingerprint() {
+		return OptionalLong.empty();
+	}
+
+}
@@ -1,5 +1,6 @@
 package hr.fer.zemris.engine.search;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface IProblem<S> {
@@ -10,4 +11,23 @@ public interface IProblem<S> {
 	public double getTransitionCost(S first, S second, Optional<S> firstsPredecessor);
 	public double getMaximumCost();
 	
+	/**
+	 * Problems returning true guarantee that successors of a state are always the
+	 * same and in the same order, and that successors and transition costs can
+	 * be computed from multiple threads at the same time.
+	 */
+	public default boolean supportsParallelEvaluation() {
+		return false;
+	}
+	
+	/**
+	 * Clears the buffer and fills it with successors of the state, in the same
+	 * order as getSuccessors. Searches reuse the buffer between expansions, so
+	 * problems can override this to avoid creating a collection per state.
+	 */
+	public default void getSuccessors(S state, List<S> buffer) {
+		buffer.clear();
+		getSuccessors(state).forEach(buffer::add);
+	}
+	
 }
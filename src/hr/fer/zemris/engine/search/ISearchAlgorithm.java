@@ -1,10 +1,28 @@
 package hr.fer.zemris.engine.search;
 
 import java.util.Optional;
+import java.util.OptionalLong;
 
 public interface ISearchAlgorithm<S> {
 	
 	public Optional<Node<S>> search();
 	public String getName();
+	
+	/**
+	 * Returns statistics of the last or currently running search, if the
+	 * algorithm collects them.
+	 */
+	public default Optional<SearchStatistics> getStatistics() {
+		return Optional.empty();
+	}
+	
+	/**
+	 * Hash of the algorithm and of its parameters which can change found paths.
+	 * Algorithms whose results cannot be reproduced return nothing; their routes
+	 * are not cached.
+	 */
+	public default OptionalLong getFingerprint() {
+		return OptionalLong.empty();
+	}
 
 }
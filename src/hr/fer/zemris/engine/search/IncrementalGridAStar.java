@@ -0,0 +1,349 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.logging.Logger;
+
+import hr.fer.zemris.engine.util.Fingerprint;
+import hr.fer.zemris.engine.util.IntList;
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Grid A* which keeps its search tree between searches and repairs only the
+ * affected part of it when transition costs change or when the goal moves.
+ *
+ * Like in GridAStar, every improvement of a state adds a node which references
+ * its predecessor node, and nodes never change. Transition costs depend on the
+ * predecessor through curvature, so a cost is only valid for the path of its
+ * node; paths through a state which is later reached more cheaply keep the
+ * old node and stay consistent with their costs.
+ *
+ * When costs of some transitions change, states whose paths go through their
+ * cells are discarded, and closed states which can reach the discarded region
+ * are reopened. The furthest successor seen so far bounds that region, so no
+ * successor relation is needed. When the goal or heuristics change, states stay
+ * closed, the open list is reordered and only a closed goal is reopened, found
+ * among the states closed so far. Costs are measured from the initial state and
+ * transition costs cannot be evaluated backwards, as they depend on the
+ * predecessor, so a new initial state starts a new search.
+ */
+public class IncrementalGridAStar implements ISearchAlgorithm<Point2Di> {
+
+	private static final Logger LOGGER = Logger.getLogger(IncrementalGridAStar.class.getName());
+
+	private static final byte NEW = 0;
+	private static final byte OPEN = 1;
+	private static final byte CLOSED = 2;
+	private static final int NONE = -1;
+
+	private IGridProblem problem;
+	private IHeuristics<Point2Di> heuristics;
+	private final GridIndexer indexer;
+
+	// search tree, valid between searches
+	private NodeArena nodes;
+	private int[] stateNodes; // last node of every state reached so far
+	private byte[] statuses;
+	private IndexedMinHeap openQueue;
+	private IntList closedStates; // states closed at least once, each listed once
+	private BitSet listedStates;
+	private int initialIndex = NONE;
+	private int maximalReach;
+
+	private SearchStatistics statistics = new SearchStatistics();
+
+	public IncrementalGridAStar(IGridProblem problem, IHeuristics<Point2Di> heuristics) {
+		this.problem = problem;
+		this.heuristics = heuristics;
+		this.indexer = new GridIndexer(problem);
+	}
+
+	public IncrementalGridAStar(IProblem<Point2Di> problem, IHeuristics<Point2Di> heuristics) {
+		this(GridAStar.asGridProblem(problem), heuristics);
+	}
+
+	/**
+	 * Replaces the problem, e.g. with the same problem with a different goal.
+	 * Problem must have the same grid and the same transition costs. A different
+	 * initial state discards the search tree in the next search.
+	 */
+	public void updateProblem(IProblem<Point2Di> problem, IHeuristics<Point2Di> heuristics) {
+		IGridProblem gridProblem = GridAStar.asGridProblem(problem);
+		if(!gridProblem.getGridLowerBound().equals(indexer.point(0)) ||
+				!gridProblem.getGridUpperBound().equals(indexer.point(indexer.size() - 1))) {
+			throw new IllegalArgumentException("Updated problem must have the same grid.");
+		}
+
+		this.problem = gridProblem;
+		this.heuristics = heuristics;
+	}
+
+	/**
+	 * Marks transition costs from and to given cells as changed. Both states of
+	 * every changed transition must be given, e.g. all cells from which a road
+	 * or a tunnel can reach the area where terrain changed.
+	 */
+	public void invalidate(Collection<Point2Di> changedCells) {
+		if(initialIndex == NONE) return;
+
+		BitSet changed = new BitSet(indexer.size());
+		for(Point2Di cell : changedCells) {
+			if(indexer.contains(cell)) changed.set(indexer.index(cell));
+		}
+
+		// predecessors are added before their successors, so one pass marks paths through changed cells
+		BitSet throughChanged = new BitSet(nodes.size());
+		BitSet invalid = new BitSet(nodes.size());
+		for(int node = 0; node < nodes.size(); node++) {
+			int predecessor = nodes.getPredecessor(node);
+			boolean changedState = changed.get(nodes.getState(node));
+			throughChanged.set(node, changedState || predecessor != NONE && throughChanged.get(predecessor));
+			invalid.set(node, predecessor != NONE && (changedState || throughChanged.get(predecessor)));
+		}
+
+		// discarded states are reached again from the remaining ones
+		BitSet discarded = (BitSet) changed.clone();
+		int discardedStates = 0;
+		for(int index = 0; index < statuses.length; index++) {
+			if(statuses[index] == NEW || !invalid.get(stateNodes[index])) continue;
+
+			if(statuses[index] == OPEN) openQueue.remove(index);
+			statuses[index] = NEW;
+			stateNodes[index] = NONE;
+			discarded.set(index);
+			discardedStates++;
+		}
+		compactNodes();
+
+		// reopen closed states whose successors can be in discarded region
+		BitSet reachable = dilate(discarded, maximalReach);
+		int reopenedStates = 0;
+		for(int index = reachable.nextSetBit(0); index >= 0; index = reachable.nextSetBit(index + 1)) {
+			if(statuses[index] != CLOSED) continue;
+
+			statuses[index] = OPEN;
+			openQueue.update(index, estimateTotalCost(index));
+			reopenedStates++;
+		}
+
+		LOGGER.fine("Invalidated " + changedCells.size() + " cells; discarded states: " + discardedStates +
+				", reopened states: " + reopenedStates);
+	}
+
+	/**
+	 * Discards the search tree, the next search starts from scratch.
+	 */
+	public void reset() {
+		initialIndex = NONE;
+	}
+
+	@Override
+	public Optional<SearchStatistics> getStatistics() {
+		return Optional.of(statistics);
+	}
+
+	@Override
+	public Optional<Node<Point2Di>> search() {
+		statistics = new SearchStatistics();
+		Optional<Node<Point2Di>> goal = searchGoal();
+		statistics.finish();
+
+		return goal;
+	}
+
+	private Optional<Node<Point2Di>> searchGoal() {
+		Point2Di initialState = problem.getInitialState();
+		if(!indexer.contains(initialState)) {
+			throw new IllegalStateException("Initial state " + initialState + " is out of grid bounds.");
+		}
+
+		if(initialIndex != indexer.index(initialState)) {
+			initialize(indexer.index(initialState));
+		} else {
+			prepareRepair();
+		}
+
+		Optional<Point2Di> noPredecessor = Optional.empty();
+		IntList successors = new IntList();
+
+		while(!openQueue.isEmpty()) {
+			int currentIndex = openQueue.poll();
+			int currentNode = stateNodes[currentIndex];
+			double currentCost = nodes.getCost(currentNode);
+			statuses[currentIndex] = CLOSED;
+			if(!listedStates.get(currentIndex)) {
+				listedStates.set(currentIndex);
+				closedStates.add(currentIndex);
+			}
+
+			Point2Di currentState = indexer.point(currentIndex);
+
+			if(problem.isGoal(currentState)) {
+				return Optional.of(nodes.toNode(currentNode, indexer));
+			}
+
+			if(currentCost >= problem.getMaximumCost()) {
+				return Optional.empty();
+			}
+
+			statistics.nodeExpanded();
+
+			int parentNode = nodes.getPredecessor(currentNode);
+			Optional<Point2Di> predecessor = parentNode == NONE ?
+					noPredecessor :
+					Optional.of(indexer.point(nodes.getState(parentNode)));
+
+			// states out of bounds are unreachable by contract of grid problem
+			problem.getSuccessors(currentIndex, indexer, successors);
+			statistics.nodesGenerated(successors.size());
+
+			for(int i = 0; i < successors.size(); i++) {
+				int succIndex = successors.get(i);
+				Point2Di succState = indexer.point(succIndex);
+				maximalReach = Math.max(maximalReach, Math.max(
+						Math.abs(succState.getX() - currentState.getX()),
+						Math.abs(succState.getZ() - currentState.getZ())));
+
+				double succCost = currentCost + problem.getTransitionCost(currentState, succState, predecessor);
+
+				if(succCost == Double.POSITIVE_INFINITY) {
+					statistics.nodePruned();
+					continue;
+				}
+
+				if(statuses[succIndex] != NEW && nodes.getCost(stateNodes[succIndex]) < succCost) {
+					statistics.nodePruned();
+					continue;
+				}
+
+				if(statuses[succIndex] == CLOSED) statistics.nodeReopened();
+
+				stateNodes[succIndex] = nodes.add(succIndex, currentNode, succCost);
+				statuses[succIndex] = OPEN;
+				openQueue.update(succIndex, succCost + heuristics.getEstimatedCost(succState));
+			}
+		}
+
+		return Optional.empty();
+	}
+
+	private void initialize(int index) {
+		int stateCount = indexer.size();
+		nodes = new NodeArena();
+		stateNodes = new int[stateCount];
+		statuses = new byte[stateCount];
+		openQueue = new IndexedMinHeap(stateCount);
+		closedStates = new IntList();
+		listedStates = new BitSet(stateCount);
+		Arrays.fill(stateNodes, NONE);
+		maximalReach = 0;
+
+		initialIndex = index;
+		stateNodes[index] = nodes.add(index, NONE, 0.0);
+		statuses[index] = OPEN;
+		openQueue.add(index, heuristics.getEstimatedCost(indexer.point(index)));
+	}
+
+	// heuristics or goal can change between searches, work is bounded by the states searched so far
+	private void prepareRepair() {
+		IntList open = new IntList(openQueue.size());
+		while(!openQueue.isEmpty()) {
+			open.add(openQueue.poll());
+		}
+
+		for(int i = 0; i < open.size(); i++) {
+			openQueue.add(open.get(i), estimateTotalCost(open.get(i)));
+		}
+
+		// closed goal is returned once no open state has lower estimated total cost
+		Optional<Point2Di> goal = problem.getGoalState();
+		if(goal.isPresent()) {
+			if(indexer.contains(goal.get())) reopenGoal(indexer.index(goal.get()));
+		} else {
+			for(int i = 0; i < closedStates.size(); i++) {
+				reopenGoal(closedStates.get(i));
+			}
+		}
+	}
+
+	private void reopenGoal(int index) {
+		if(statuses[index] == CLOSED && problem.isGoal(indexer.point(index))) {
+			statuses[index] = OPEN;
+			openQueue.add(index, estimateTotalCost(index));
+		}
+	}
+
+	private double estimateTotalCost(int index) {
+		return nodes.getCost(stateNodes[index]) + heuristics.getEstimatedCost(indexer.point(index));
+	}
+
+	// keeps only the nodes on paths of reached states, so repeated repairs do not grow the arena
+	private void compactNodes() {
+		BitSet live = new BitSet(nodes.size());
+		for(int index = 0; index < stateNodes.length; index++) {
+			for(int node = stateNodes[index]; node != NONE && !live.get(node); node = nodes.getPredecessor(node)) {
+				live.set(node);
+			}
+		}
+
+		NodeArena compacted = new NodeArena();
+		int[] positions = new int[nodes.size()];
+		for(int node = live.nextSetBit(0); node >= 0; node = live.nextSetBit(node + 1)) {
+			int predecessor = nodes.getPredecessor(node);
+			positions[node] = compacted.add(nodes.getState(node), predecessor == NONE ? NONE : positions[predecessor],
+					nodes.getCost(node));
+		}
+
+		for(int index = 0; index < stateNodes.length; index++) {
+			if(stateNodes[index] != NONE) stateNodes[index] = positions[stateNodes[index]];
+		}
+		nodes = compacted;
+	}
+
+	// marks cells within given Chebyshev distance of marked cells
+	private BitSet dilate(BitSet cells, int distance) {
+		int width = indexer.getWidth();
+		int depth = indexer.getDepth();
+		BitSet rows = new BitSet(indexer.size());
+		BitSet dilated = new BitSet(indexer.size());
+		int[] counts = new int[Math.max(width, depth) + 1];
+
+		for(int z = 0; z < depth; z++) {
+			for(int x = 0; x < width; x++) {
+				counts[x + 1] = counts[x] + (cells.get(z * width + x) ? 1 : 0);
+			}
+			for(int x = 0; x < width; x++) {
+				if(counts[Math.min(width, x + distance + 1)] > counts[Math.max(0, x - distance)]) {
+					rows.set(z * width + x);
+				}
+			}
+		}
+
+		for(int x = 0; x < width; x++) {
+			for(int z = 0; z < depth; z++) {
+				counts[z + 1] = counts[z] + (rows.get(z * width + x) ? 1 : 0);
+			}
+			for(int z = 0; z < depth; z++) {
+				if(counts[Math.min(depth, z + distance + 1)] > counts[Math.max(0, z - distance)]) {
+					dilated.set(z * width + x);
+				}
+			}
+		}
+
+		return dilated;
+	}
+
+	@Override
+	public OptionalLong getFingerprint() {
+		return OptionalLong.of(new Fingerprint(IncrementalGridAStar.class.getName()).get());
+	}
+	
+	@Override
+	public String getName() {
+		return "Incremental Grid A Star";
+	}
+
+}
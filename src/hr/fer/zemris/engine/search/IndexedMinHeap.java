@@ -0,0 +1,185 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over integer items from the range [0, capacity) with a position
+ * index, so that priority of an item already in the heap can be changed in
+ * logarithmic time.
+ */
+public class IndexedMinHeap {
+	
+	private static final int INITIAL_SIZE = 1024;
+	
+	private final int[] positions; // heap position of every item, -1 if not in heap
+	private int[] items;
+	private double[] keys;
+	private int size;
+	
+	public IndexedMinHeap(int capacity) {
+		if(capacity < 0) {
+			throw new IllegalArgumentException("Heap capacity must be non-negative.");
+		}
+		
+		this.positions = new int[capacity];
+		Arrays.fill(positions, -1);
+		
+		int initialSize = Math.max(1, Math.min(capacity, INITIAL_SIZE));
+		this.items = new int[initialSize];
+		this.keys = new double[initialSize];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public boolean contains(int item) {
+		return positions[item] != -1;
+	}
+	
+	public double getKey(int item) {
+		int position = positions[item];
+		if(position == -1) {
+			throw new IllegalArgumentException("Item " + item + " is not in the heap.");
+		}
+		return keys[position];
+	}
+	
+	public int peek() {
+		if(size == 0) {
+			throw new IllegalStateException("Heap is empty.");
+		}
+		return items[0];
+	}
+	
+	public double peekKey() {
+		if(size == 0) {
+			throw new IllegalStateException("Heap is empty.");
+		}
+		return keys[0];
+	}
+	
+	public void add(int item, double key) {
+		if(positions[item] != -1) {
+			throw new IllegalArgumentException("Item " + item + " is already in the heap.");
+		}
+		
+		if(size == items.length) {
+			int newLength = (int) Math.min((long) items.length * 2, positions.length);
+			items = Arrays.copyOf(items, newLength);
+			keys = Arrays.copyOf(keys, newLength);
+		}
+		
+		items[size] = item;
+		keys[size] = key;
+		positions[item] = size;
+		siftUp(size++);
+	}
+	
+	/**
+	 * Adds the item or changes its key if it is already in the heap. Key can be
+	 * both decreased and increased.
+	 */
+	public void update(int item, double key) {
+		int position = positions[item];
+		
+		if(position == -1) {
+			add(item, key);
+			return;
+		}
+		
+		double oldKey = keys[position];
+		keys[position] = key;
+		
+		if(key < oldKey) {
+			siftUp(position);
+		} else if(key > oldKey) {
+			siftDown(position);
+		}
+	}
+	
+	public int poll() {
+		int min = peek();
+		removeAt(0);
+		return min;
+	}
+	
+	public boolean remove(int item) {
+		int position = positions[item];
+		if(position == -1) return false;
+		
+		removeAt(position);
+		return true;
+	}
+	
+	public void clear() {
+		for(int i = 0; i < size; i++) {
+			positions[items[i]] = -1;
+		}
+		size = 0;
+	}
+	
+	private void removeAt(int position) {
+		positions[items[position]] = -1;
+		size--;
+		
+		if(position == size) return;
+		
+		double oldKey = keys[position];
+		move(size, position);
+		
+		if(keys[position] < oldKey) {
+			siftUp(position);
+		} else {
+			siftDown(position);
+		}
+	}
+	
+	private void siftUp(int position) {
+		int item = items[position];
+		double key = keys[position];
+		
+		while(position > 0) {
+			int parent = (position - 1) >>> 1;
+			if(keys[parent] <= key) break;
+			
+			move(parent, position);
+			position = parent;
+		}
+		
+		items[position] = item;
+		keys[position] = key;
+		positions[item] = position;
+	}
+	
+	private void siftDown(int position) {
+		int item = items[position];
+		double key = keys[position];
+		int half = size >>> 1;
+		
+		while(position < half) {
+			int child = 2 * position + 1;
+			int right = child + 1;
+			if(right < size && keys[right] < keys[child]) child = right;
+			if(key <= keys[child]) break;
+			
+			move(child, position);
+			position = child;
+		}
+		
+		items[position] = item;
+		keys[position] = key;
+		positions[item] = position;
+	}
+	
+	private void move(int from, int to) {
+		items[to] = items[from];
+		keys[to] = keys[from];
+		positions[items[to]] = to;
+	}
+
+}
@@ -0,0 +1,104 @@
+package hr.fer.zemris.engine.search;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Best known cost, its node in a MappedNodeStore and closed flag of every cell
+ * of a grid, kept in a memory-mapped temporary file instead of the heap. The
+ * file is sparse and mapped in chunks only when they are first touched, so the
+ * operating system keeps only the recently used parts of it in memory.
+ *
+ * A cell takes 16 bytes: cost as raw double bits plus one, so that zeros of an
+ * untouched file mean an unreached cell, and node plus one, negated when the
+ * cell is closed.
+ */
+class MappedCellStore implements AutoCloseable {
+
+	private static final int CELL_BYTES = 16;
+	private static final int CHUNK_CELLS = 1 << 26;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final MappedByteBuffer[] chunks;
+
+	MappedCellStore(int cellCount, Path directory) {
+		try {
+			this.file = Files.createTempFile(directory, "cells", ".bin");
+			this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot create cell store in " + directory, e);
+		}
+
+		this.chunks = new MappedByteBuffer[(cellCount + CHUNK_CELLS - 1) / CHUNK_CELLS];
+	}
+
+	double getCost(int cell) {
+		long bits = chunk(cell).getLong(offset(cell));
+		return bits == 0 ? Double.POSITIVE_INFINITY : Double.longBitsToDouble(bits - 1);
+	}
+
+	// node of the best cost, MappedNodeStore.NONE if the cell is unreached
+	long getNode(int cell) {
+		return Math.abs(chunk(cell).getLong(offset(cell) + 8)) - 1;
+	}
+
+	boolean isClosed(int cell) {
+		return chunk(cell).getLong(offset(cell) + 8) < 0;
+	}
+
+	/**
+	 * Stores the node of a cheaper path to the cell, which opens it again.
+	 */
+	void update(int cell, double cost, long node) {
+		MappedByteBuffer chunk = chunk(cell);
+		int offset = offset(cell);
+		chunk.putLong(offset, Double.doubleToRawLongBits(cost) + 1);
+		chunk.putLong(offset + 8, node + 1);
+	}
+
+	void close(int cell) {
+		MappedByteBuffer chunk = chunk(cell);
+		int offset = offset(cell) + 8;
+		chunk.putLong(offset, -Math.abs(chunk.getLong(offset)));
+	}
+
+	private MappedByteBuffer chunk(int cell) {
+		int chunkIndex = cell / CHUNK_CELLS;
+		MappedByteBuffer chunk = chunks[chunkIndex];
+
+		if(chunk == null) {
+			try {
+				chunk = channel.map(MapMode.READ_WRITE, (long) chunkIndex * CHUNK_CELLS * CELL_BYTES,
+						(long) CHUNK_CELLS * CELL_BYTES);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Cannot map cell store chunk " + chunkIndex, e);
+			}
+			chunks[chunkIndex] = chunk;
+		}
+
+		return chunk;
+	}
+
+	private static int offset(int cell) {
+		return (cell % CHUNK_CELLS) * CELL_BYTES;
+	}
+
+	@Override
+	public void close() {
+		// mapped file cannot be deleted on some systems until its buffers are collected
+		try {
+			channel.close();
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			file.toFile().deleteOnExit();
+		}
+	}
+
+}
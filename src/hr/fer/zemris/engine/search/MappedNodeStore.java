@@ -0,0 +1,126 @@
+package hr.fer.zemris.engine.search;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Append-only storage of search nodes like NodeArena, kept in a memory-mapped
+ * temporary file instead of the heap. A node references its predecessor by
+ * position, so a path stays the one its costs were computed for even if its
+ * cells are later reached through cheaper nodes.
+ *
+ * A node takes 20 bytes: state, predecessor and cost.
+ */
+class MappedNodeStore implements AutoCloseable {
+
+	static final long NONE = -1;
+
+	private static final int NODE_BYTES = 20;
+	private static final int CHUNK_NODES = 1 << 25;
+
+	private final Path file;
+	private final FileChannel channel;
+	private MappedByteBuffer[] chunks = new MappedByteBuffer[1];
+	private long size;
+
+	MappedNodeStore(Path directory) {
+		try {
+			this.file = Files.createTempFile(directory, "nodes", ".bin");
+			this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot create node store in " + directory, e);
+		}
+	}
+
+	long add(int state, long predecessor, double cost) {
+		long node = size++;
+		MappedByteBuffer chunk = chunk(node);
+		int offset = offset(node);
+		chunk.putInt(offset, state);
+		chunk.putLong(offset + 4, predecessor);
+		chunk.putDouble(offset + 12, cost);
+		return node;
+	}
+
+	int getState(long node) {
+		return chunk(node).getInt(offset(node));
+	}
+
+	long getPredecessor(long node) {
+		return chunk(node).getLong(offset(node) + 4);
+	}
+
+	double getCost(long node) {
+		return chunk(node).getDouble(offset(node) + 12);
+	}
+
+	long size() {
+		return size;
+	}
+
+	Node<Point2Di> toNode(long node, GridIndexer indexer) {
+		if(node == NONE) {
+			throw new IllegalArgumentException("Cannot create node from an empty reference.");
+		}
+
+		long[] chain = new long[16];
+		int length = 0;
+
+		for(long current = node; current != NONE; current = getPredecessor(current)) {
+			if(length == chain.length) chain = Arrays.copyOf(chain, length * 2);
+			chain[length++] = current;
+		}
+
+		Optional<Node<Point2Di>> predecessor = Optional.empty();
+		for(int i = length - 1; i >= 0; i--) {
+			long current = chain[i];
+			predecessor = Optional.of(new Node<>(indexer.point(getState(current)), predecessor, getCost(current)));
+		}
+
+		return predecessor.get();
+	}
+
+	private MappedByteBuffer chunk(long node) {
+		int chunkIndex = (int) (node / CHUNK_NODES);
+		if(chunkIndex >= chunks.length) chunks = Arrays.copyOf(chunks, Math.max(chunkIndex + 1, chunks.length * 2));
+		MappedByteBuffer chunk = chunks[chunkIndex];
+
+		if(chunk == null) {
+			try {
+				chunk = channel.map(MapMode.READ_WRITE, (long) chunkIndex * CHUNK_NODES * NODE_BYTES,
+						(long) CHUNK_NODES * NODE_BYTES);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Cannot map node store chunk " + chunkIndex, e);
+			}
+			chunks[chunkIndex] = chunk;
+		}
+
+		return chunk;
+	}
+
+	private static int offset(long node) {
+		return (int) (node % CHUNK_NODES) * NODE_BYTES;
+	}
+
+	@Override
+	public void close() {
+		// mapped file cannot be deleted on some systems until its buffers are collected
+		try {
+			channel.close();
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			file.toFile().deleteOnExit();
+		}
+	}
+
+}
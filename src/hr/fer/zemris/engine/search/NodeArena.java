@@ -0,0 +1,88 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Append-only storage of search nodes in primitive arrays. A node is identified
+ * by its position in the arena and references its predecessor by position, so
+ * a path stays valid even if its states are later reached through cheaper nodes.
+ */
+class NodeArena {
+	
+	static final int NONE = -1;
+	private static final int INITIAL_SIZE = 1024;
+	
+	private int[] states;
+	private int[] predecessors;
+	private double[] costs;
+	private int size;
+	
+	NodeArena() {
+		states = new int[INITIAL_SIZE];
+		predecessors = new int[INITIAL_SIZE];
+		costs = new double[INITIAL_SIZE];
+	}
+	
+	int add(int state, int predecessor, double cost) {
+		if(size == states.length) {
+			if(size == Integer.MAX_VALUE - 8) {
+				throw new IllegalStateException("Node arena is full.");
+			}
+			int newLength = (int) Math.min((long) size * 2, Integer.MAX_VALUE - 8);
+			states = Arrays.copyOf(states, newLength);
+			predecessors = Arrays.copyOf(predecessors, newLength);
+			costs = Arrays.copyOf(costs, newLength);
+		}
+		
+		states[size] = state;
+		predecessors[size] = predecessor;
+		costs[size] = cost;
+		return size++;
+	}
+	
+	int getState(int node) {
+		return states[node];
+	}
+	
+	int getPredecessor(int node) {
+		return predecessors[node];
+	}
+	
+	double getCost(int node) {
+		return costs[node];
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	void clear() {
+		size = 0;
+	}
+	
+	Node<Point2Di> toNode(int node, GridIndexer indexer) {
+		if(node == NONE) {
+			throw new IllegalArgumentException("Cannot create node from an empty reference.");
+		}
+		
+		int[] chain = new int[16];
+		int length = 0;
+		
+		for(int current = node; current != NONE; current = predecessors[current]) {
+			if(length == chain.length) chain = Arrays.copyOf(chain, length * 2);
+			chain[length++] = current;
+		}
+		
+		Optional<Node<Point2Di>> predecessor = Optional.empty();
+		for(int i = length - 1; i >= 0; i--) {
+			int current = chain[i];
+			predecessor = Optional.of(new Node<>(indexer.point(states[current]), predecessor, costs[current]));
+		}
+		
+		return predecessor.get();
+	}
+
+}
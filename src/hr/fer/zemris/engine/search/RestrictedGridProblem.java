@@ -0,0 +1,171 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.Predicate;
+
+import hr.fer.zemris.engine.util.Fingerprint;
+import hr.fer.zemris.engine.util.IntList;
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * View of a grid problem restricted to a rectangular part of its grid and,
+ * optionally, to the cells set in a mask over that part. Endpoints of the
+ * restricted problem can differ from the endpoints of the original one.
+ */
+public class RestrictedGridProblem implements IGridProblem {
+	
+	private final IGridProblem problem;
+	private final Point2Di initialState;
+	private final Predicate<Point2Di> goalTest;
+	private final Optional<Point2Di> goalState;
+	private final GridIndexer indexer;
+	private final Optional<BitSet> mask;
+	
+	private RestrictedGridProblem(IGridProblem problem, Point2Di initialState, Predicate<Point2Di> goalTest,
+			Optional<Point2Di> goalState, Point2Di lowerBound, Point2Di upperBound, Optional<BitSet> mask) {
+		this.problem = problem;
+		this.initialState = initialState;
+		this.goalTest = goalTest;
+		this.goalState = goalState;
+		this.indexer = new GridIndexer(lowerBound, upperBound);
+		this.mask = mask;
+		
+		if(!isAllowed(initialState)) {
+			throw new IllegalArgumentException("Initial state " + initialState + " is not in allowed area.");
+		}
+	}
+	
+	/**
+	 * If no goal is given, no state is a goal.
+	 */
+	public RestrictedGridProblem(IGridProblem problem, Point2Di initialState, Optional<Point2Di> goal,
+			Point2Di lowerBound, Point2Di upperBound, Optional<BitSet> mask) {
+		this(problem, initialState, goal.<Predicate<Point2Di>>map(g -> g::equals).orElse(s -> false), goal,
+				lowerBound, upperBound, mask);
+	}
+	
+	public RestrictedGridProblem(IGridProblem problem, Point2Di lowerBound, Point2Di upperBound) {
+		this(problem, problem.getInitialState(), problem::isGoal, problem.getGoalState(), lowerBound, upperBound,
+				Optional.empty());
+	}
+	
+	/**
+	 * Restricts the problem to cells set in the mask; mask is indexed by an indexer
+	 * over the grid bounds of the problem.
+	 */
+	public RestrictedGridProblem(IGridProblem problem, BitSet mask) {
+		this(problem, problem.getInitialState(), problem::isGoal, problem.getGoalState(),
+				problem.getGridLowerBound(), problem.getGridUpperBound(), Optional.of(mask));
+	}
+	
+	public IGridProblem getOriginalProblem() {
+		return problem;
+	}
+	
+	public boolean isAllowed(Point2Di state) {
+		return isAllowed(state.getX(), state.getZ());
+	}
+	
+	private boolean isAllowed(int x, int z) {
+		if(!indexer.contains(x, z)) return false;
+		return !mask.isPresent() || mask.get().get(indexer.index(x, z));
+	}
+
+	@Override
+	public Point2Di getInitialState() {
+		return initialState;
+	}
+
+	@Override
+	public boolean isGoal(Point2Di state) {
+		return goalTest.test(state);
+	}
+
+	@Override
+	public Iterable<Point2Di> getSuccessors(Point2Di state) {
+		List<Point2Di> successors = new ArrayList<>();
+		
+		for(Point2Di successor : problem.getSuccessors(state)) {
+			if(isAllowed(successor)) successors.add(successor);
+		}
+		
+		return successors;
+	}
+	
+	@Override
+	public void getSuccessors(Point2Di state, List<Point2Di> buffer) {
+		problem.getSuccessors(state, buffer);
+		
+		int allowed = 0;
+		for(int i = 0; i < buffer.size(); i++) {
+			Point2Di successor = buffer.get(i);
+			if(isAllowed(successor)) buffer.set(allowed++, successor);
+		}
+		buffer.subList(allowed, buffer.size()).clear();
+	}
+	
+	@Override
+	public void getSuccessors(int index, GridIndexer indexer, IntList buffer) {
+		problem.getSuccessors(index, indexer, buffer);
+		
+		int allowed = 0;
+		for(int i = 0; i < buffer.size(); i++) {
+			int successor = buffer.get(i);
+			if(isAllowed(indexer.x(successor), indexer.z(successor))) buffer.set(allowed++, successor);
+		}
+		buffer.truncate(allowed);
+	}
+
+	@Override
+	public double getTransitionCost(Point2Di first, Point2Di second, Optional<Point2Di> firstsPredecessor) {
+		if(!isAllowed(second)) return Double.POSITIVE_INFINITY;
+		return problem.getTransitionCost(first, second, firstsPredecessor);
+	}
+
+	@Override
+	public double getMaximumCost() {
+		return problem.getMaximumCost();
+	}
+	
+	@Override
+	public boolean supportsParallelEvaluation() {
+		return problem.supportsParallelEvaluation();
+	}
+
+	@Override
+	public Point2Di getGridLowerBound() {
+		return indexer.point(0);
+	}
+
+	@Override
+	public Point2Di getGridUpperBound() {
+		return indexer.point(indexer.size() - 1);
+	}
+	
+	@Override
+	public Optional<Point2Di> getGoalState() {
+		return goalState;
+	}
+	
+	@Override
+	public boolean allowsTunnels() {
+		return problem.allowsTunnels();
+	}
+	
+	@Override
+	public OptionalLong getGridFingerprint() {
+		OptionalLong grid = problem.getGridFingerprint();
+		if(!grid.isPresent()) return grid;
+		
+		Fingerprint fingerprint = new Fingerprint(RestrictedGridProblem.class.getName())
+				.add(grid.getAsLong()).add(getGridLowerBound()).add(getGridUpperBound()).add(mask.isPresent());
+		if(mask.isPresent()) fingerprint.add(mask.get());
+		
+		return OptionalLong.of(fingerprint.get());
+	}
+
+}
@@ -0,0 +1,165 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Counters and timings of a single search. Search algorithms update them while
+ * searching, and optionally report them to a progress listener periodically,
+ * from the searching thread. Times are in nanoseconds.
+ */
+public class SearchStatistics {
+
+	private final Optional<Consumer<SearchStatistics>> progressListener;
+	private final long progressPeriod;
+	private final long startTime;
+	private long lastProgressTime;
+	private long endTime = -1;
+
+	private long expandedNodes;
+	private long generatedNodes;
+	private long reopenedNodes;
+	private long prunedNodes;
+	private int peakOpenSize;
+	private int peakClosedSize;
+
+	private long transitionCostCalls;
+	private long heuristicsCalls;
+	private long transitionCostTime;
+	private long heuristicsTime;
+	private long queueTime;
+
+	SearchStatistics(Optional<Consumer<SearchStatistics>> progressListener, long progressPeriod) {
+		this.progressListener = progressListener;
+		this.progressPeriod = progressPeriod;
+		this.startTime = System.nanoTime();
+		this.lastProgressTime = startTime;
+	}
+
+	SearchStatistics() {
+		this(Optional.empty(), 0);
+	}
+
+	void nodeExpanded() {
+		expandedNodes++;
+
+		if(progressListener.isPresent()) {
+			long now = System.nanoTime();
+			if(now - lastProgressTime >= progressPeriod) {
+				lastProgressTime = now;
+				progressListener.get().accept(this);
+			}
+		}
+	}
+
+	void nodesGenerated(int count) {
+		generatedNodes += count;
+	}
+
+	void nodeReopened() {
+		reopenedNodes++;
+	}
+
+	void nodePruned() {
+		prunedNodes++;
+	}
+
+	void updateOpenSize(int size) {
+		if(size > peakOpenSize) peakOpenSize = size;
+	}
+
+	void updateClosedSize(int size) {
+		if(size > peakClosedSize) peakClosedSize = size;
+	}
+
+	void transitionCostsComputed(int calls, long time) {
+		transitionCostCalls += calls;
+		transitionCostTime += time;
+	}
+
+	void heuristicsComputed(long time) {
+		heuristicsCalls++;
+		heuristicsTime += time;
+	}
+
+	void queueOperation(long time) {
+		queueTime += time;
+	}
+
+	void finish() {
+		endTime = System.nanoTime();
+	}
+
+	public long getExpandedNodes() {
+		return expandedNodes;
+	}
+
+	public long getGeneratedNodes() {
+		return generatedNodes;
+	}
+
+	/**
+	 * Number of nodes added to open list for states which were already closed.
+	 */
+	public long getReopenedNodes() {
+		return reopenedNodes;
+	}
+
+	/**
+	 * Number of generated nodes which were not added to the open list, e.g.
+	 * because the state was already reached with a lower cost.
+	 */
+	public long getPrunedNodes() {
+		return prunedNodes;
+	}
+
+	public int getPeakOpenSize() {
+		return peakOpenSize;
+	}
+
+	public int getPeakClosedSize() {
+		return peakClosedSize;
+	}
+
+	public long getTransitionCostCalls() {
+		return transitionCostCalls;
+	}
+
+	public long getHeuristicsCalls() {
+		return heuristicsCalls;
+	}
+
+	public long getTransitionCostTime() {
+		return transitionCostTime;
+	}
+
+	public long getHeuristicsTime() {
+		return heuristicsTime;
+	}
+
+	public long getQueueTime() {
+		return queueTime;
+	}
+
+	/**
+	 * Duration of the finished search, or time since start of the running one.
+	 */
+	public long getDuration() {
+		return (endTime < 0 ? System.nanoTime() : endTime) - startTime;
+	}
+
+	public boolean isFinished() {
+		return endTime >= 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("expanded: %d, generated: %d, reopened: %d, pruned: %d, " +
+				"peak open: %d, peak closed: %d, transition costs: %d (%.3f s), heuristics: %d (%.3f s), " +
+				"queue: %.3f s, duration: %.3f s",
+				expandedNodes, generatedNodes, reopenedNodes, prunedNodes, peakOpenSize, peakClosedSize,
+				transitionCostCalls, transitionCostTime * 1e-9, heuristicsCalls, heuristicsTime * 1e-9,
+				queueTime * 1e-9, getDuration() * 1e-9);
+	}
+
+}
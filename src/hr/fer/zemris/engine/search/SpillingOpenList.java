@@ -0,0 +1,383 @@
+package hr.fer.zemris.engine.search;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Open list of a search whose records are grouped into buckets by estimated
+ * total cost. Records of the bucket with the lowest costs are kept in a binary
+ * heap; before the arrays of records in memory, together with the buckets and
+ * the buffers for the file, would grow beyond the budget, whole buckets with
+ * the highest costs are appended to a temporary file and read back only when
+ * they become the lowest bucket. If that is not enough, the lowest bucket is
+ * split at the middle of its costs and its upper part is spilled as a bucket of
+ * its own, until the arrays fit into half of the budget. The lowest bucket is
+ * split the same way while it is read back.
+ *
+ * A record takes 24 bytes: node, its cost and estimated total cost.
+ * Records are not updated in place, so the list can contain stale records
+ * which the search has to skip.
+ */
+class SpillingOpenList implements AutoCloseable {
+
+	private static final int RECORD_BYTES = 24;
+	private static final int IO_RECORDS = 4096;
+	private static final int BUCKET_RECORDS = 8; // a bucket with its map entry takes about as much as 8 records
+	private static final int SEGMENT_RECORDS = 2;
+	private static final long[] NO_LONGS = new long[0];
+	private static final double[] NO_DOUBLES = new double[0];
+
+	private final int memoryRecords;
+	private final int ioRecords; // records of a buffer, small budgets get smaller buffers
+	private final double bucketWidth;
+	private final Path directory;
+	private final TreeMap<Double, Bucket> buckets = new TreeMap<>(); // by the lowest cost of the bucket
+
+	private Bucket active;
+	private double activeStart;
+	private double activeLimit; // records cheaper than this go to the active bucket
+	private long allocated; // records the arrays of all buckets can hold, with buckets and buffers as records
+	private long size;
+
+	private Path file;
+	private FileChannel channel;
+	private ByteBuffer writeBuffer;
+	private ByteBuffer readBuffer; // records are read back while others are spilled
+	private long fileEnd;
+	private long spilledRecords;
+
+	// last polled record
+	private long node;
+	private double cost;
+
+	SpillingOpenList(int memoryRecords, double bucketWidth, Path directory) {
+		this.memoryRecords = memoryRecords;
+		this.ioRecords = Math.max(16, Math.min(IO_RECORDS, memoryRecords / 16));
+		this.bucketWidth = bucketWidth;
+		this.directory = directory;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	long size() {
+		return size;
+	}
+
+	long getSpilledRecords() {
+		return spilledRecords;
+	}
+
+	void add(long node, double cost, double estimatedTotalCost) {
+		// inconsistent heuristics can produce records cheaper than the active bucket
+		if(active != null && estimatedTotalCost < activeLimit) {
+			active.push(node, cost, estimatedTotalCost);
+		} else {
+			bucket(estimatedTotalCost).append(node, cost, estimatedTotalCost);
+		}
+
+		size++;
+	}
+
+	/**
+	 * Removes the record with the lowest estimated total cost; its fields are
+	 * available through the getters until the next call.
+	 */
+	void poll() {
+		while(active == null || active.size == 0) {
+			if(active != null) {
+				active.clear();
+				allocated -= BUCKET_RECORDS;
+			}
+
+			Map.Entry<Double, Bucket> lowest = buckets.pollFirstEntry();
+			active = lowest.getValue();
+			activeStart = lowest.getKey();
+			activeLimit = bucketEnd(activeStart);
+			if(!buckets.isEmpty()) activeLimit = Math.min(activeLimit, buckets.firstKey());
+			load(active);
+			active.heapify();
+		}
+
+		active.pop();
+		size--;
+	}
+
+	long getNode() {
+		return node;
+	}
+
+	double getCost() {
+		return cost;
+	}
+
+	// bucket of the cost, a part of a split bucket if its range is split
+	private Bucket bucket(double estimatedTotalCost) {
+		double start = Math.floor(estimatedTotalCost / bucketWidth) * bucketWidth;
+		Map.Entry<Double, Bucket> part = buckets.floorEntry(estimatedTotalCost);
+		if(part != null && part.getKey() >= start) return part.getValue();
+
+		return buckets.computeIfAbsent(start, k -> new Bucket());
+	}
+
+	private double bucketEnd(double start) {
+		return (Math.floor(start / bucketWidth) + 1.0) * bucketWidth;
+	}
+
+	// moves buckets with the highest costs and then the upper parts of the active one to the file
+	private void spill() {
+		for(Bucket bucket : buckets.descendingMap().values()) {
+			if(allocated <= memoryRecords / 2) return;
+			if(bucket.size == 0) continue;
+
+			spilledRecords += bucket.size;
+			write(bucket, Double.NEGATIVE_INFINITY, bucket);
+		}
+
+		while(active != null && active.size > 0 && allocated > memoryRecords / 2) {
+			// root of the heap has the lowest cost, records of equal costs cannot be split
+			double highest = active.estimates[0];
+			for(int i = 1; i < active.size; i++) {
+				highest = Math.max(highest, active.estimates[i]);
+			}
+			double middle = active.estimates[0] + (highest - active.estimates[0]) / 2.0;
+			middle = Math.max(middle, activeStart); // parts stay within the range of the bucket
+			if(!(middle > active.estimates[0]) || middle > highest) return;
+
+			Bucket upper = new Bucket();
+			int records = active.size;
+			write(active, middle, upper);
+			active.heapify();
+			active.trim();
+
+			buckets.put(middle, upper);
+			activeLimit = middle;
+			spilledRecords += records - active.size;
+		}
+	}
+
+	// appends records of the source costing at least the threshold to the file as a segment of the target
+	private void write(Bucket source, double threshold, Bucket target) {
+		try {
+			if(channel == null) {
+				file = Files.createTempFile(directory, "open", ".bin");
+				channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				writeBuffer = ByteBuffer.allocate(ioRecords * RECORD_BYTES);
+				readBuffer = ByteBuffer.allocate(ioRecords * RECORD_BYTES);
+				allocated += 2 * ioRecords;
+			}
+
+			long start = fileEnd;
+			int kept = 0;
+			writeBuffer.clear();
+			for(int i = 0; i < source.size; i++) {
+				if(source.estimates[i] < threshold) {
+					source.move(i, kept++);
+					continue;
+				}
+
+				writeBuffer.putLong(source.nodes[i]).putDouble(source.costs[i]).putDouble(source.estimates[i]);
+				if(!writeBuffer.hasRemaining()) flush();
+			}
+			flush();
+
+			// segments written one after another are read as one
+			long records = (fileEnd - start) / RECORD_BYTES;
+			long[] last = target.segments.isEmpty() ? null : target.segments.get(target.segments.size() - 1);
+			if(last != null && last[0] + last[1] * RECORD_BYTES == start) {
+				last[1] += records;
+			} else if(records > 0) {
+				target.segments.add(new long[] {start, records});
+				allocated += SEGMENT_RECORDS;
+			}
+
+			if(kept == 0) {
+				source.clear();
+			} else {
+				source.size = kept;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot spill open list to " + file, e);
+		}
+	}
+
+	private void flush() throws IOException {
+		writeBuffer.flip();
+		while(writeBuffer.hasRemaining()) {
+			fileEnd += channel.write(writeBuffer, fileEnd);
+		}
+		writeBuffer.clear();
+	}
+
+	// reads the spilled records of the active bucket, records above its limit go to other buckets
+	private void load(Bucket bucket) {
+		if(bucket.segments.isEmpty()) return;
+
+		try {
+			for(long[] segment : bucket.segments) {
+				long position = segment[0];
+				long records = segment[1];
+
+				while(records > 0) {
+					int count = (int) Math.min(records, ioRecords);
+					readBuffer.clear().limit(count * RECORD_BYTES);
+					while(readBuffer.hasRemaining()) {
+						position += channel.read(readBuffer, position);
+					}
+					readBuffer.flip();
+
+					// appending can split the bucket, which lowers its limit
+					for(int i = 0; i < count; i++) {
+						long node = readBuffer.getLong();
+						double cost = readBuffer.getDouble();
+						double estimate = readBuffer.getDouble();
+						(estimate < activeLimit ? bucket : bucket(estimate)).append(node, cost, estimate);
+					}
+					records -= count;
+				}
+			}
+
+			allocated -= (long) bucket.segments.size() * SEGMENT_RECORDS;
+			bucket.segments.clear();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot read spilled open list from " + file, e);
+		}
+	}
+
+	@Override
+	public void close() {
+		if(channel == null) return;
+
+		try {
+			channel.close();
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			file.toFile().deleteOnExit();
+		}
+	}
+
+	// records in memory, ordered as a binary heap once the bucket is active
+	private class Bucket {
+
+		// buckets without records in memory hold no arrays, there can be many of them
+		private long[] nodes = NO_LONGS;
+		private double[] costs = NO_DOUBLES;
+		private double[] estimates = NO_DOUBLES;
+		private int size;
+		private final List<long[]> segments = new ArrayList<>(); // spilled {position, records}
+
+		Bucket() {
+			allocated += BUCKET_RECORDS;
+		}
+
+		void append(long node, double cost, double estimate) {
+			if(size == nodes.length) grow();
+
+			nodes[size] = node;
+			costs[size] = cost;
+			estimates[size] = estimate;
+			size++;
+		}
+
+		void push(long node, double cost, double estimate) {
+			append(node, cost, estimate);
+			siftUp(size - 1);
+		}
+
+		void pop() {
+			SpillingOpenList.this.node = nodes[0];
+			SpillingOpenList.this.cost = costs[0];
+
+			size--;
+			move(size, 0);
+			siftDown(0);
+			trim();
+		}
+
+		void heapify() {
+			for(int i = size / 2 - 1; i >= 0; i--) {
+				siftDown(i);
+			}
+		}
+
+		void clear() {
+			allocated -= nodes.length;
+			nodes = NO_LONGS;
+			costs = NO_DOUBLES;
+			estimates = NO_DOUBLES;
+			size = 0;
+		}
+
+		// releases half of the arrays once they are three quarters empty, if the copies fit into the budget
+		void trim() {
+			if(nodes.length <= 16 || size * 4 > nodes.length) return;
+			if(allocated + Math.max(16, size * 2) > memoryRecords) return;
+			resize(Math.max(16, size * 2));
+		}
+
+		private void siftUp(int position) {
+			while(position > 0) {
+				int parent = (position - 1) / 2;
+				if(estimates[parent] <= estimates[position]) return;
+				swap(parent, position);
+				position = parent;
+			}
+		}
+
+		private void siftDown(int position) {
+			while(true) {
+				int smallest = position;
+				int left = 2 * position + 1;
+				int right = left + 1;
+				if(left < size && estimates[left] < estimates[smallest]) smallest = left;
+				if(right < size && estimates[right] < estimates[smallest]) smallest = right;
+				if(smallest == position) return;
+				swap(smallest, position);
+				position = smallest;
+			}
+		}
+
+		private void swap(int i, int j) {
+			long node = nodes[i];
+			double cost = costs[i];
+			double estimate = estimates[i];
+			move(j, i);
+			nodes[j] = node;
+			costs[j] = cost;
+			estimates[j] = estimate;
+		}
+
+		private void move(int from, int to) {
+			nodes[to] = nodes[from];
+			costs[to] = costs[from];
+			estimates[to] = estimates[from];
+		}
+
+		// spills first if larger arrays, held together with the old ones while copied, would not fit
+		// into the budget; spilling can empty this bucket
+		private void grow() {
+			if(allocated + Math.max(16, nodes.length * 2) > memoryRecords) spill();
+			resize(Math.max(16, nodes.length * 2));
+		}
+
+		private void resize(int length) {
+			allocated += length - nodes.length;
+			nodes = Arrays.copyOf(nodes, length);
+			costs = Arrays.copyOf(costs, length);
+			estimates = Arrays.copyOf(estimates, length);
+		}
+
+	}
+
+}
@@ -0,0 +1,205 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import hr.fer.zemris.engine.util.Fingerprint;
+import hr.fer.zemris.engine.util.IntList;
+import hr.fer.zemris.engine.util.Point2Di;
+
+/**
+ * Any-angle variant of {@link GridAStar}. A successor is connected to the
+ * predecessor of the expanded state directly whenever the straight segment
+ * between them is feasible and cheaper than the path through the expanded state,
+ * so a small neighborhood is enough to produce paths in any direction, with
+ * fewer and longer segments. As in Theta*, the segment is evaluated first, and
+ * the move through the expanded state only if its lower bound does not already
+ * make it more expensive.
+ */
+public class ThetaStar implements ISearchAlgorithm<Point2Di> {
+	
+	private final IAnyAngleProblem problem;
+	private final IHeuristics<Point2Di> heuristics;
+	
+	private SearchStatistics statistics = new SearchStatistics();
+	private Optional<Consumer<SearchStatistics>> progressListener = Optional.empty();
+	private long progressPeriod;
+	
+	public ThetaStar(IAnyAngleProblem problem, IHeuristics<Point2Di> heuristics) {
+		this.problem = problem;
+		this.heuristics = heuristics;
+	}
+	
+	public ThetaStar(IProblem<Point2Di> problem, IHeuristics<Point2Di> heuristics) {
+		this(asAnyAngleProblem(problem), heuristics);
+	}
+	
+	private static IAnyAngleProblem asAnyAngleProblem(IProblem<Point2Di> problem) {
+		if(!(problem instanceof IAnyAngleProblem)) {
+			throw new IllegalArgumentException("Any-angle search requires an any-angle grid problem.");
+		}
+		return (IAnyAngleProblem) problem;
+	}
+	
+	/**
+	 * Listener is called from the searching thread with the statistics of the
+	 * running search, at most once per period given in milliseconds.
+	 */
+	public void setProgressListener(Consumer<SearchStatistics> listener, long period) {
+		this.progressListener = Optional.of(listener);
+		this.progressPeriod = TimeUnit.MILLISECONDS.toNanos(period);
+	}
+	
+	@Override
+	public Optional<SearchStatistics> getStatistics() {
+		return Optional.of(statistics);
+	}
+
+	@Override
+	public Optional<Node<Point2Di>> search() {
+		statistics = new SearchStatistics(progressListener, progressPeriod);
+		Optional<Node<Point2Di>> goal = searchGoal();
+		statistics.finish();
+		
+		return goal;
+	}
+	
+	private Optional<Node<Point2Di>> searchGoal() {
+		GridIndexer indexer = new GridIndexer(problem);
+		Point2Di initialState = problem.getInitialState();
+		
+		if(!indexer.contains(initialState)) {
+			throw new IllegalStateException("Initial state " + initialState + " is out of grid bounds.");
+		}
+		
+		int stateCount = indexer.size();
+		NodeArena nodes = new NodeArena();
+		IndexedMinHeap openQueue = new IndexedMinHeap(stateCount);
+		int[] openNodes = new int[stateCount];
+		double[] closedCosts = new double[stateCount];
+		Arrays.fill(openNodes, NodeArena.NONE);
+		Arrays.fill(closedCosts, Double.NaN);
+		
+		int initialIndex = indexer.index(initialState);
+		openNodes[initialIndex] = nodes.add(initialIndex, NodeArena.NONE, 0.0);
+		openQueue.add(initialIndex, estimate(initialState));
+		
+		Optional<Point2Di> noPredecessor = Optional.empty();
+		IntList successors = new IntList();
+		int closedCount = 0;
+		
+		while(!openQueue.isEmpty()) {
+			long queueStart = System.nanoTime();
+			int currentIndex = openQueue.poll();
+			statistics.queueOperation(System.nanoTime() - queueStart);
+			int currentNode = openNodes[currentIndex];
+			double currentCost = nodes.getCost(currentNode);
+			openNodes[currentIndex] = NodeArena.NONE;
+			if(Double.isNaN(closedCosts[currentIndex])) statistics.updateClosedSize(++closedCount);
+			closedCosts[currentIndex] = currentCost;
+			
+			Point2Di currentState = indexer.point(currentIndex);
+			
+			if(problem.isGoal(currentState)) {
+				return Optional.of(nodes.toNode(currentNode, indexer));
+			}
+			
+			if(currentCost >= problem.getMaximumCost()) {
+				return Optional.empty();
+			}
+			
+			statistics.nodeExpanded();
+			
+			int parentNode = nodes.getPredecessor(currentNode);
+			Optional<Point2Di> parent = parentNode == NodeArena.NONE ?
+					noPredecessor :
+					Optional.of(indexer.point(nodes.getState(parentNode)));
+			
+			int grandparentNode = parentNode == NodeArena.NONE ? NodeArena.NONE : nodes.getPredecessor(parentNode);
+			Optional<Point2Di> grandparent = grandparentNode == NodeArena.NONE ?
+					noPredecessor :
+					Optional.of(indexer.point(nodes.getState(grandparentNode)));
+			
+			// states out of bounds are unreachable by contract of grid problem
+			problem.getSuccessors(currentIndex, indexer, successors);
+			statistics.nodesGenerated(successors.size());
+			
+			for(int i = 0; i < successors.size(); i++) {
+				int succIndex = successors.get(i);
+				Point2Di succState = indexer.point(succIndex);
+				
+				long costStart = System.nanoTime();
+				int succPredecessorNode = parentNode;
+				double succCost = Double.POSITIVE_INFINITY;
+				int costsComputed = 0;
+				
+				if(parent.isPresent() && nodes.getState(parentNode) != succIndex) {
+					succCost = nodes.getCost(parentNode) + problem.getSegmentCost(parent.get(), succState, grandparent);
+					costsComputed++;
+				}
+				if(succCost > currentCost + problem.getTransitionCostLowerBound(currentState, succState)) {
+					double throughCurrent = currentCost + problem.getTransitionCost(currentState, succState, parent);
+					costsComputed++;
+					if(throughCurrent < succCost) {
+						succCost = throughCurrent;
+						succPredecessorNode = currentNode;
+					}
+				}
+				statistics.transitionCostsComputed(costsComputed, System.nanoTime() - costStart);
+				
+				if(succCost == Double.POSITIVE_INFINITY) {
+					statistics.nodePruned();
+					continue;
+				}
+				
+				int existingSuccInOpen = openNodes[succIndex];
+				if(existingSuccInOpen != NodeArena.NONE && nodes.getCost(existingSuccInOpen) <= succCost) {
+					statistics.nodePruned();
+					continue;
+				}
+				
+				double existingSuccInClosed = closedCosts[succIndex];
+				if(!Double.isNaN(existingSuccInClosed) && existingSuccInClosed <= succCost) {
+					statistics.nodePruned();
+					continue;
+				}
+				
+				if(!Double.isNaN(existingSuccInClosed)) {
+					statistics.nodeReopened();
+				}
+				
+				double estimatedTotalCost = succCost + estimate(succState);
+				
+				openNodes[succIndex] = nodes.add(succIndex, succPredecessorNode, succCost);
+				queueStart = System.nanoTime();
+				openQueue.update(succIndex, estimatedTotalCost);
+				statistics.queueOperation(System.nanoTime() - queueStart);
+				statistics.updateOpenSize(openQueue.size());
+			}
+		}
+		
+		return Optional.empty();
+	}
+	
+	private double estimate(Point2Di state) {
+		long start = System.nanoTime();
+		double estimate = heuristics.getEstimatedCost(state);
+		statistics.heuristicsComputed(System.nanoTime() - start);
+		
+		return estimate;
+	}
+
+	@Override
+	public OptionalLong getFingerprint() {
+		return OptionalLong.of(new Fingerprint(ThetaStar.class.getName()).get());
+	}
+	
+	@Override
+	public String getName() {
+		return "Theta Star";
+	}
+
+}
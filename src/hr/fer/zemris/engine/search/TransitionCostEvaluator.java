@@ -0,0 +1,87 @@
+package hr.fer.zemris.engine.search;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes transition costs from an expanded state to all of its successors,
+ * either serially or split into tasks on a fork-join pool. Costs are stored by
+ * position of the successor, so the search processes them in the same order in
+ * both cases and finds the same path.
+ */
+class TransitionCostEvaluator<S> {
+
+	// successors evaluated by a single task
+	private static final int SEQUENTIAL_THRESHOLD = 8;
+
+	private final IProblem<S> problem;
+	private final Optional<ForkJoinPool> pool;
+	private double[] costs = new double[64];
+
+	public TransitionCostEvaluator(IProblem<S> problem, Optional<ForkJoinPool> pool) {
+		if(pool.isPresent() && !problem.supportsParallelEvaluation()) {
+			throw new IllegalArgumentException("Problem does not support parallel evaluation of transition costs.");
+		}
+
+		this.problem = problem;
+		this.pool = pool;
+	}
+
+	/**
+	 * Returned array is reused by the next call; only the first successors.size()
+	 * elements are valid.
+	 */
+	public double[] evaluate(S state, List<S> successors, Optional<S> predecessor) {
+		int size = successors.size();
+		if(costs.length < size) costs = new double[Math.max(size, costs.length * 2)];
+
+		if(!pool.isPresent() || size <= SEQUENTIAL_THRESHOLD) {
+			for(int i = 0; i < size; i++) {
+				costs[i] = problem.getTransitionCost(state, successors.get(i), predecessor);
+			}
+		} else {
+			pool.get().invoke(new CostTask(state, successors, predecessor, costs, 0, size));
+		}
+
+		return costs;
+	}
+
+	private class CostTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final S state;
+		private final List<S> successors;
+		private final Optional<S> predecessor;
+		private final double[] costs;
+		private final int from;
+		private final int to;
+
+		public CostTask(S state, List<S> successors, Optional<S> predecessor, double[] costs, int from, int to) {
+			this.state = state;
+			this.successors = successors;
+			this.predecessor = predecessor;
+			this.costs = costs;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= SEQUENTIAL_THRESHOLD) {
+				for(int i = from; i < to; i++) {
+					costs[i] = problem.getTransitionCost(state, successors.get(i), predecessor);
+				}
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new CostTask(state, successors, predecessor, costs, from, middle),
+					new CostTask(state, successors, predecessor, costs, middle, to));
+		}
+
+	}
+
+}
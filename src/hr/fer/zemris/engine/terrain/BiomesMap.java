@@ -7,6 +7,7 @@ import java.util.function.Function;
 
 import org.lwjgl.util.vector.Vector3f;
 
+import hr.fer.zemris.engine.util.CoordinateRandom;
 import hr.fer.zemris.engine.util.Globals;
 import hr.fer.zemris.engine.util.Range;
 import hr.fer.zemris.engine.util.TriFunction;
@@ -29,7 +30,8 @@ public class BiomesMap implements ITextureMap {
 	private final float lowerTreeThreshold;
 	private final List<Function<Float, Float>> weightedFunctions;
 	private final TriFunction<Float, Float, Float, Float> textureVariation;
-	private final Random random;
+	private static final int TREE_TYPE_STREAM = 2;
+	private final CoordinateRandom random; // tree type of a location is always the same
 
 	public BiomesMap(IHeightMap heightMap, List<Range> textureRanges, float interpolationInterval,
 			TriFunction<Float, Float, Float, Float> textureVariation, NoiseMap treeTypeVariationMap,
@@ -40,7 +42,7 @@ public class BiomesMap implements ITextureMap {
 		this.moistureMap = moistureMap;
 		this.lowerTreeThreshold = lowerTreeThreshold;
 		this.upperTreeThreshold = upperTreeThreshold;
-		this.random = random;
+		this.random = new CoordinateRandom(random.nextLong());
 		this.weightedFunctions = createWeightedFunctions(textureRanges, interpolationInterval);
 	}
 	
@@ -78,7 +80,8 @@ public class BiomesMap implements ITextureMap {
 		if(modifiedHeight < lowerTreeThreshold) return TreeType.OAK;
 		if(modifiedHeight > upperTreeThreshold) return TreeType.PINE;
 		
-		double r = random.nextDouble();
+		double r = random.getDouble(TREE_TYPE_STREAM,
+				CoordinateRandom.coordinate(x), CoordinateRandom.coordinate(z), 0);
 		double pineProbability = (modifiedHeight - lowerTreeThreshold) /
 				(upperTreeThreshold - lowerTreeThreshold);
 		return r < pineProbability ? TreeType.OAK : TreeType.PINE;
@@ -173,6 +176,24 @@ public class BiomesMap implements ITextureMap {
 		}
 	}
 
+	// modified heights are computed once, then each weighted function is applied to all of them
+	@Override
+	public void textureInfluences(float[] vertices, int count, float[] out) {
+		float[] modifiedHeights = new float[count];
+		for(int i = 0; i < count; i++) {
+			float height = vertices[i * 3 + 1];
+			modifiedHeights[i] = height + textureVariation.apply(vertices[i * 3], height, vertices[i * 3 + 2]);
+		}
+		
+		int influences = weightedFunctions.size();
+		for(int f = 0; f < influences; f++) {
+			Function<Float, Float> weightedFunction = weightedFunctions.get(f);
+			for(int i = 0; i < count; i++) {
+				out[i * influences + f] = weightedFunction.apply(modifiedHeights[i]);
+			}
+		}
+	}
+
 	@Override
 	public int getNumberOfInfluences() {
 		return weightedFunctions.size();
@@ -0,0 +1,326 @@
+package hr.fer.zemris.engine.terrain;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import hr.fer.zemris.engine.util.Fingerprint;
+
+/**
+ * Height map which answers approximate queries from a raster of another map.
+ * Approximate heights of the wrapped map are sampled on a lattice with the
+ * given resolution, in square tiles which are rasterized on first use, and
+ * interpolated bilinearly between lattice points. Once tiles take more memory
+ * than the budget, the ones which were not used for the longest time are
+ * dropped. It is safe for use from multiple threads.
+ *
+ * Exact heights and normals, which include height updates of mutable maps, are
+ * always taken from the wrapped map. In exact mode approximate ones are taken
+ * from it as well, while the rasterized tiles are kept.
+ */
+public class CachedHeightMap implements IHeightMap, HeightRaster {
+
+	private static final int DEFAULT_TILE_SIZE = 64;
+	private static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+	private static final int MIN_TILES = 4;
+	private static final int TILE_OVERHEAD_BYTES = 64;
+
+	private final IHeightMap heightMap;
+	private final float resolution;
+	private final int tileSize; // lattice intervals along a side of a tile
+	private final int side; // lattice points along a side of a tile, shared with neighbours
+	private final int maxTiles;
+
+	private final Map<Long, Tile> tiles = new ConcurrentHashMap<>();
+	private final AtomicLong clock = new AtomicLong(); // advanced by every rasterized tile
+	private volatile boolean exact;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public CachedHeightMap(IHeightMap heightMap, float resolution) {
+		this(heightMap, resolution, DEFAULT_TILE_SIZE, DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * Tiles span tileSize lattice intervals along each side; memory budget is
+	 * given in bytes, but at least a few tiles are always kept.
+	 */
+	public CachedHeightMap(IHeightMap heightMap, float resolution, int tileSize, long memoryBudget) {
+		if(resolution <= 0f) {
+			throw new IllegalArgumentException("Resolution must be positive, got: " + resolution);
+		}
+		if(tileSize < 1) {
+			throw new IllegalArgumentException("Tile size must be positive, got: " + tileSize);
+		}
+
+		this.heightMap = heightMap;
+		this.resolution = resolution;
+		this.tileSize = tileSize;
+		this.side = tileSize + 1;
+
+		long tileBytes = (long) side * side * Float.BYTES + TILE_OVERHEAD_BYTES;
+		this.maxTiles = (int) Math.max(MIN_TILES, Math.min(memoryBudget / tileBytes, Integer.MAX_VALUE));
+	}
+
+	@Override
+	public float getHeight(float x, float z) {
+		return heightMap.getHeight(x, z);
+	}
+
+	@Override
+	public float getHeightApprox(float x, float z) {
+		if(exact) return heightMap.getHeightApprox(x, z);
+
+		float gridX = x / resolution;
+		float gridZ = z / resolution;
+		int cellX = (int) Math.floor(gridX);
+		int cellZ = (int) Math.floor(gridZ);
+		float u = gridX - cellX;
+		float v = gridZ - cellZ;
+
+		int tileX = Math.floorDiv(cellX, tileSize);
+		int tileZ = Math.floorDiv(cellZ, tileSize);
+		float[] heights = tile(tileX, tileZ);
+		int i = (cellZ - tileZ * tileSize) * side + cellX - tileX * tileSize;
+
+		float heightUp = heights[i] + (heights[i + 1] - heights[i]) * u;
+		float heightDown = heights[i + side] + (heights[i + side + 1] - heights[i + side]) * u;
+		return heightUp + (heightDown - heightUp) * v;
+	}
+
+	@Override
+	public Vector3f getNormal(float x, float z) {
+		return heightMap.getNormal(x, z);
+	}
+
+	// central differences over one lattice interval, like in mutable height map
+	@Override
+	public Vector3f getNormalApprox(float x, float z) {
+		if(exact) return heightMap.getNormalApprox(x, z);
+
+		Vector3f normal = new Vector3f(
+				(getHeightApprox(x - resolution, z) - getHeightApprox(x + resolution, z)) / (2f * resolution),
+				1f,
+				(getHeightApprox(x, z - resolution) - getHeightApprox(x, z + resolution)) / (2f * resolution));
+		normal.normalise();
+
+		return normal;
+	}
+
+	@Override
+	public void getHeights(float[] xs, float[] zs, int count, float[] out) {
+		heightMap.getHeights(xs, zs, count, out);
+	}
+
+	@Override
+	public void getHeightGrid(float[] xs, float[] zs, float[] out) {
+		heightMap.getHeightGrid(xs, zs, out);
+	}
+
+	@Override
+	public void getHeightsApprox(float[] xs, float[] zs, int count, float[] out) {
+		if(exact) {
+			heightMap.getHeightsApprox(xs, zs, count, out);
+		} else {
+			IHeightMap.super.getHeightsApprox(xs, zs, count, out);
+		}
+	}
+
+	@Override
+	public void getNormalsApprox(float[] xs, float[] zs, int count, float[] out) {
+		if(exact) {
+			heightMap.getNormalsApprox(xs, zs, count, out);
+		} else {
+			IHeightMap.super.getNormalsApprox(xs, zs, count, out);
+		}
+	}
+
+	@Override
+	public void getHeightGridApprox(float[] xs, float[] zs, float[] out) {
+		if(exact) {
+			heightMap.getHeightGridApprox(xs, zs, out);
+		} else {
+			IHeightMap.super.getHeightGridApprox(xs, zs, out);
+		}
+	}
+
+	@Override
+	public void getNormalGridApprox(float[] xs, float[] zs, float[] out) {
+		if(exact) {
+			heightMap.getNormalGridApprox(xs, zs, out);
+		} else {
+			IHeightMap.super.getNormalGridApprox(xs, zs, out);
+		}
+	}
+
+	@Override
+	public float getMaxHeight() {
+		return heightMap.getMaxHeight();
+	}
+
+	@Override
+	public OptionalLong getFingerprint() {
+		OptionalLong wrapped = heightMap.getFingerprint();
+		if(exact || !wrapped.isPresent()) return wrapped;
+
+		return OptionalLong.of(new Fingerprint(CachedHeightMap.class.getName())
+				.add(wrapped.getAsLong()).add(resolution).get());
+	}
+
+	public IHeightMap getHeightMap() {
+		return heightMap;
+	}
+
+	// lattice of the raster, which gives approximate heights only when not in exact mode
+	@Override
+	public double getSampleDistance() {
+		return resolution;
+	}
+
+	@Override
+	public int getSamplesX() {
+		return 0;
+	}
+
+	@Override
+	public int getSamplesZ() {
+		return 0;
+	}
+
+	// computed like the tiles, without keeping them
+	@Override
+	public void getSampleRow(int firstX, int z, int count, double[] out) {
+		float[] xs = new float[count];
+		for(int i = 0; i < count; i++) {
+			xs[i] = (float) (((long) firstX + i) * (double) resolution);
+		}
+
+		float[] heights = new float[count];
+		heightMap.getHeightGridApprox(xs, new float[] {(float) (z * (double) resolution)}, heights);
+		for(int i = 0; i < count; i++) {
+			out[i] = heights[i];
+		}
+	}
+
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * In exact mode approximate heights and normals are taken from the wrapped
+	 * map instead of the raster.
+	 */
+	public void setExact(boolean exact) {
+		this.exact = exact;
+	}
+
+	/**
+	 * Drops all tiles, must be called when approximate heights of the wrapped map
+	 * change.
+	 */
+	public void clear() {
+		tiles.clear();
+	}
+
+	public int getTileCount() {
+		return tiles.size();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public double getHitRate() {
+		long hits = getHits();
+		long lookups = hits + getMisses();
+		return lookups == 0 ? 0.0 : hits / (double) lookups;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("tiles: %d, hits: %d, misses: %d, evictions: %d, hit rate: %.3f",
+				getTileCount(), getHits(), getMisses(), getEvictions(), getHitRate());
+	}
+
+	private float[] tile(int tileX, int tileZ) {
+		Long key = ((long) tileX << 32) | (tileZ & 0xFFFFFFFFL);
+		Tile tile = tiles.get(key);
+
+		if(tile == null) {
+			misses.increment();
+
+			// two threads can rasterize the same tile, only one of them is kept
+			Tile rasterized = rasterize(tileX, tileZ);
+			tile = tiles.putIfAbsent(key, rasterized);
+			if(tile == null) {
+				tile = rasterized;
+				if(tiles.size() > maxTiles) evict();
+			}
+		} else {
+			hits.increment();
+		}
+
+		// stamps change only when tiles are added, so shared tiles are rarely written
+		long now = clock.get();
+		if(tile.lastUse != now) tile.lastUse = now;
+
+		return tile.heights;
+	}
+
+	private Tile rasterize(int tileX, int tileZ) {
+		float[] xs = new float[side];
+		float[] zs = new float[side];
+		for(int i = 0; i < side; i++) {
+			xs[i] = (float) (((long) tileX * tileSize + i) * (double) resolution);
+			zs[i] = (float) (((long) tileZ * tileSize + i) * (double) resolution);
+		}
+
+		float[] heights = new float[side * side];
+		heightMap.getHeightGridApprox(xs, zs, heights);
+
+		return new Tile(heights, clock.incrementAndGet());
+	}
+
+	// drops an eighth of the budget at once, so sorting is amortized over many misses
+	private synchronized void evict() {
+		if(tiles.size() <= maxTiles) return;
+
+		List<Map.Entry<Long, Tile>> entries = new ArrayList<>(tiles.entrySet());
+		entries.sort(Comparator.comparingLong(e -> e.getValue().lastUse));
+
+		int target = maxTiles - Math.max(1, maxTiles / 8);
+		for(int i = 0; i < entries.size() && tiles.size() > target; i++) {
+			if(tiles.remove(entries.get(i).getKey(), entries.get(i).getValue())) evictions.increment();
+		}
+	}
+
+	private static class Tile {
+
+		private final float[] heights; // row by row, along x first
+		private volatile long lastUse;
+
+		public Tile(float[] heights, long lastUse) {
+			this.heights = heights;
+			this.lastUse = lastUse;
+		}
+
+	}
+
+}
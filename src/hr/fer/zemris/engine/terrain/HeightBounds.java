@@ -0,0 +1,199 @@
+package hr.fer.zemris.engine.terrain;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Pyramid of the lowest and the highest approximate heights of a raster height
+ * map over blocks of its samples, for an area of the map. Heights interpolated
+ * bilinearly between samples stay within the range of the samples around them,
+ * so bounds of a box hold for every point in it; they are widened by a small
+ * tolerance which covers rounding of the interpolation. Analytic maps have no
+ * samples and no bounds.
+ *
+ * Bounds are computed when created and have to be created again when
+ * approximate heights of the map change.
+ */
+public class HeightBounds {
+
+	private static final int MAX_BLOCKS = 1 << 20; // blocks of the finest level
+	private static final int SPAN = 4; // blocks along a side of a box which are read at most
+	private static final double TOLERANCE = 1e-3; // in height units, grows by a millionth of the height
+
+	private final double sampleDistance;
+	private final int samplesX; // 0 if the lattice is unbounded
+	private final int samplesZ;
+	private final int firstX; // samples covered by the blocks
+	private final int firstZ;
+	private final int lastX;
+	private final int lastZ;
+	private final int blockSize; // sample intervals along a side of a finest block
+	private final int[] widths; // blocks along x by level
+	private final int[] depths;
+	private final float[][] mins; // by level, row by row along x
+	private final float[][] maxs;
+
+	/**
+	 * Bounds of the approximate heights of the map over the area, nothing if the
+	 * map is not a raster or a cached map is in exact mode.
+	 */
+	public static Optional<HeightBounds> of(IHeightMap heightMap, float minX, float minZ, float maxX, float maxZ) {
+		if(!(heightMap instanceof HeightRaster)) return Optional.empty();
+		if(heightMap instanceof CachedHeightMap && ((CachedHeightMap) heightMap).isExact()) return Optional.empty();
+
+		return Optional.of(new HeightBounds((HeightRaster) heightMap, minX, minZ, maxX, maxZ));
+	}
+
+	private HeightBounds(HeightRaster raster, float minX, float minZ, float maxX, float maxZ) {
+		this.sampleDistance = raster.getSampleDistance();
+		this.samplesX = raster.getSamplesX();
+		this.samplesZ = raster.getSamplesZ();
+		this.firstX = clamp((int) Math.floor(minX / sampleDistance) - 1, samplesX);
+		this.firstZ = clamp((int) Math.floor(minZ / sampleDistance) - 1, samplesZ);
+		this.lastX = clamp((int) Math.ceil(maxX / sampleDistance) + 1, samplesX);
+		this.lastZ = clamp((int) Math.ceil(maxZ / sampleDistance) + 1, samplesZ);
+
+		int blockSize = 1;
+		while(blocks(lastX - firstX, blockSize) * blocks(lastZ - firstZ, blockSize) > MAX_BLOCKS) {
+			blockSize *= 2;
+		}
+		this.blockSize = blockSize;
+
+		int levels = 1;
+		for(long width = blocks(lastX - firstX, blockSize), depth = blocks(lastZ - firstZ, blockSize);
+				width > 1 || depth > 1; width = (width + 1) / 2, depth = (depth + 1) / 2) {
+			levels++;
+		}
+
+		this.widths = new int[levels];
+		this.depths = new int[levels];
+		this.mins = new float[levels][];
+		this.maxs = new float[levels][];
+		widths[0] = (int) blocks(lastX - firstX, blockSize);
+		depths[0] = (int) blocks(lastZ - firstZ, blockSize);
+		for(int level = 1; level < levels; level++) {
+			widths[level] = (widths[level - 1] + 1) / 2;
+			depths[level] = (depths[level - 1] + 1) / 2;
+		}
+
+		computeFinestLevel(raster);
+		for(int level = 1; level < levels; level++) {
+			computeLevel(level);
+		}
+	}
+
+	private static int clamp(int sample, int samples) {
+		return samples == 0 ? sample : Math.max(0, Math.min(sample, samples - 1));
+	}
+
+	private static long blocks(int intervals, int blockSize) {
+		return Math.max(1, (intervals + (long) blockSize - 1) / blockSize);
+	}
+
+	// samples on the border of blocks belong to both of them
+	private void computeFinestLevel(HeightRaster raster) {
+		int width = widths[0];
+		float[] min = new float[width * depths[0]];
+		float[] max = new float[width * depths[0]];
+		Arrays.fill(min, Float.POSITIVE_INFINITY);
+		Arrays.fill(max, Float.NEGATIVE_INFINITY);
+
+		double[] row = new double[lastX - firstX + 1];
+		for(int z = firstZ; z <= lastZ; z++) {
+			raster.getSampleRow(firstX, z, row.length, row);
+
+			int offsetZ = z - firstZ;
+			int highBlockZ = Math.min(offsetZ / blockSize, depths[0] - 1);
+			int lowBlockZ = offsetZ > 0 && offsetZ % blockSize == 0 ? offsetZ / blockSize - 1 : highBlockZ;
+
+			for(int offsetX = 0; offsetX < row.length; offsetX++) {
+				double margin = TOLERANCE + Math.abs(row[offsetX]) * 1e-6;
+				float low = (float) (row[offsetX] - margin);
+				float high = (float) (row[offsetX] + margin);
+
+				int highBlockX = Math.min(offsetX / blockSize, width - 1);
+				int lowBlockX = offsetX > 0 && offsetX % blockSize == 0 ? offsetX / blockSize - 1 : highBlockX;
+				for(int blockZ = Math.min(lowBlockZ, highBlockZ); blockZ <= highBlockZ; blockZ++) {
+					for(int blockX = Math.min(lowBlockX, highBlockX); blockX <= highBlockX; blockX++) {
+						int i = blockZ * width + blockX;
+						min[i] = Math.min(min[i], low);
+						max[i] = Math.max(max[i], high);
+					}
+				}
+			}
+		}
+
+		mins[0] = min;
+		maxs[0] = max;
+	}
+
+	private void computeLevel(int level) {
+		int width = widths[level];
+		int finerWidth = widths[level - 1];
+		int finerDepth = depths[level - 1];
+		float[] min = new float[width * depths[level]];
+		float[] max = new float[width * depths[level]];
+
+		for(int blockZ = 0; blockZ < depths[level]; blockZ++) {
+			for(int blockX = 0; blockX < width; blockX++) {
+				float low = Float.POSITIVE_INFINITY;
+				float high = Float.NEGATIVE_INFINITY;
+				for(int z = 2 * blockZ; z < Math.min(2 * blockZ + 2, finerDepth); z++) {
+					for(int x = 2 * blockX; x < Math.min(2 * blockX + 2, finerWidth); x++) {
+						low = Math.min(low, mins[level - 1][z * finerWidth + x]);
+						high = Math.max(high, maxs[level - 1][z * finerWidth + x]);
+					}
+				}
+				min[blockZ * width + blockX] = low;
+				max[blockZ * width + blockX] = high;
+			}
+		}
+
+		mins[level] = min;
+		maxs[level] = max;
+	}
+
+	/**
+	 * Writes the lowest and the highest approximate height of points in the box
+	 * to the first two elements of bounds. Boxes reaching outside the area are
+	 * given infinite bounds. Blocks of the finest level which spans the box with
+	 * at most SPAN blocks along each side are used, so bounds can be loose.
+	 */
+	public void getBounds(float minX, float minZ, float maxX, float maxZ, float[] bounds) {
+		// samples around the box, with a margin for points rounded to a neighbouring cell
+		int lowX = clamp((int) Math.floor(minX / sampleDistance - 1e-3), samplesX);
+		int lowZ = clamp((int) Math.floor(minZ / sampleDistance - 1e-3), samplesZ);
+		int highX = clamp((int) Math.ceil(maxX / sampleDistance + 1e-3), samplesX);
+		int highZ = clamp((int) Math.ceil(maxZ / sampleDistance + 1e-3), samplesZ);
+
+		if(lowX < firstX || lowZ < firstZ || highX > lastX || highZ > lastZ) {
+			bounds[0] = Float.NEGATIVE_INFINITY;
+			bounds[1] = Float.POSITIVE_INFINITY;
+			return;
+		}
+
+		int blockX0 = Math.min((lowX - firstX) / blockSize, widths[0] - 1);
+		int blockZ0 = Math.min((lowZ - firstZ) / blockSize, depths[0] - 1);
+		int blockX1 = Math.max(blockX0, Math.min((highX - firstX - 1) / blockSize, widths[0] - 1));
+		int blockZ1 = Math.max(blockZ0, Math.min((highZ - firstZ - 1) / blockSize, depths[0] - 1));
+
+		int level = 0;
+		while((blockX1 >> level) - (blockX0 >> level) >= SPAN || (blockZ1 >> level) - (blockZ0 >> level) >= SPAN) {
+			level++;
+		}
+
+		float low = Float.POSITIVE_INFINITY;
+		float high = Float.NEGATIVE_INFINITY;
+		int width = widths[level];
+		for(int z = blockZ0 >> level; z <= blockZ1 >> level; z++) {
+			for(int x = blockX0 >> level; x <= blockX1 >> level; x++) {
+				low = Math.min(low, mins[level][z * width + x]);
+				high = Math.max(high, maxs[level][z * width + x]);
+			}
+		}
+
+		bounds[0] = low;
+		bounds[1] = high;
+	}
+
+}
@@ -0,0 +1,25 @@
+package hr.fer.zemris.engine.terrain;
+
+/**
+ * Lattice of samples, the first one at the origin, whose bilinear
+ * interpolation gives approximate heights of a map, so heights between four
+ * neighbouring samples lie between the lowest and the highest of them.
+ */
+interface HeightRaster {
+
+	double getSampleDistance();
+
+	/**
+	 * Samples along x, or 0 if the lattice is unbounded. Coordinates outside a
+	 * bounded lattice are clamped to its edge samples.
+	 */
+	int getSamplesX();
+
+	int getSamplesZ();
+
+	/**
+	 * Writes heights of count samples of the row z, starting with firstX, to out.
+	 */
+	void getSampleRow(int firstX, int z, int count, double[] out);
+
+}
@@ -1,5 +1,8 @@
 package hr.fer.zemris.engine.terrain;
 
+import java.util.Arrays;
+import java.util.OptionalLong;
+
 import org.lwjgl.util.vector.Vector3f;
 
 public interface IHeightMap {
@@ -9,5 +12,78 @@ public interface IHeightMap {
 	public Vector3f getNormal(float x, float z);
 	public Vector3f getNormalApprox(float x, float z);
 	public float getMaxHeight();
+	
+	/**
+	 * Hash of the heights of the map, equal for maps with equal heights. Maps whose
+	 * heights cannot be identified return nothing; routes on them are not cached.
+	 */
+	public default OptionalLong getFingerprint() {
+		return OptionalLong.empty();
+	}
+	
+	/**
+	 * Writes heights at the first count points given by their coordinates to out;
+	 * results are equal to those of getHeight.
+	 */
+	public default void getHeights(float[] xs, float[] zs, int count, float[] out) {
+		for(int i = 0; i < count; i++) {
+			out[i] = getHeight(xs[i], zs[i]);
+		}
+	}
+	
+	public default void getHeightsApprox(float[] xs, float[] zs, int count, float[] out) {
+		for(int i = 0; i < count; i++) {
+			out[i] = getHeightApprox(xs[i], zs[i]);
+		}
+	}
+	
+	/**
+	 * Writes three components of the approximate normal per point to out.
+	 */
+	public default void getNormalsApprox(float[] xs, float[] zs, int count, float[] out) {
+		for(int i = 0; i < count; i++) {
+			Vector3f normal = getNormalApprox(xs[i], zs[i]);
+			out[i * 3] = normal.x;
+			out[i * 3 + 1] = normal.y;
+			out[i * 3 + 2] = normal.z;
+		}
+	}
+	
+	/**
+	 * Writes heights of a grid of points at all pairs of the given coordinates to
+	 * out, row by row along x.
+	 */
+	public default void getHeightGrid(float[] xs, float[] zs, float[] out) {
+		float[] rowZs = new float[xs.length];
+		float[] row = new float[xs.length];
+		
+		for(int j = 0; j < zs.length; j++) {
+			Arrays.fill(rowZs, zs[j]);
+			getHeights(xs, rowZs, xs.length, row);
+			System.arraycopy(row, 0, out, j * xs.length, xs.length);
+		}
+	}
+	
+	public default void getHeightGridApprox(float[] xs, float[] zs, float[] out) {
+		float[] rowZs = new float[xs.length];
+		float[] row = new float[xs.length];
+		
+		for(int j = 0; j < zs.length; j++) {
+			Arrays.fill(rowZs, zs[j]);
+			getHeightsApprox(xs, rowZs, xs.length, row);
+			System.arraycopy(row, 0, out, j * xs.length, xs.length);
+		}
+	}
+	
+	public default void getNormalGridApprox(float[] xs, float[] zs, float[] out) {
+		float[] rowZs = new float[xs.length];
+		float[] row = new float[xs.length * 3];
+		
+		for(int j = 0; j < zs.length; j++) {
+			Arrays.fill(rowZs, zs[j]);
+			getNormalsApprox(xs, rowZs, xs.length, row);
+			System.arraycopy(row, 0, out, j * xs.length * 3, xs.length * 3);
+		}
+	}
 
 }
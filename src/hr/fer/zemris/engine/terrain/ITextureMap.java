@@ -15,6 +15,20 @@ public interface ITextureMap {
 	public float[] textureInfluences(float xcoord, float ycoord, float zcoord);
 	public void textureInfluences(float xcoord, float ycoord, float zcoord, float[] buffer);
 	
+	/**
+	 * Writes texture strengths of the first count vertices, given as consecutive
+	 * x, y and z coordinates, to out; strengths of a vertex are consecutive.
+	 */
+	public default void textureInfluences(float[] vertices, int count, float[] out) {
+		int influences = getNumberOfInfluences();
+		float[] buffer = new float[influences];
+		
+		for(int i = 0; i < count; i++) {
+			textureInfluences(vertices[i * 3], vertices[i * 3 + 1], vertices[i * 3 + 2], buffer);
+			System.arraycopy(buffer, 0, out, i * influences, influences);
+		}
+	}
+	
 	/**
 	 * Number of texture influences returned by this map.
 	 * @return number of texture influences returned by this map
@@ -1,18 +1,24 @@
 package hr.fer.zemris.engine.terrain;
 
 import java.awt.image.BufferedImage;
+import java.util.OptionalLong;
 import java.util.logging.Logger;
 
-public class ImageHeightMap extends MutableHeightMap {
+import hr.fer.zemris.engine.util.Fingerprint;
+
+public class ImageHeightMap extends MutableHeightMap implements HeightRaster {
 
 	private static final Logger LOGGER = Logger.getLogger(ImageHeightMap.class.getName());
 	private static final int MAX_PIXEL_COLOR = 256 * 256 * 256;
 	
 	private final double maxHeight;
 	private final double pixelDistance;
-	private final double[][] heightMap;
+	private final double[] heightMap; // row by row along x, so lattice rows are read linearly
 	private final int xVerts;
 	private final int zVerts;
+	private final double maxX;
+	private final double maxZ;
+	private volatile OptionalLong fingerprint; // hashed on first use
 
 	public ImageHeightMap(BufferedImage heightMapImage, double minHeight, double maxHeight,
 			double pixelDistance) {
@@ -22,12 +28,14 @@ public class ImageHeightMap extends MutableHeightMap {
 		this.pixelDistance = pixelDistance;
 		this.xVerts = heightMapImage.getWidth();
 		this.zVerts = heightMapImage.getHeight();
+		this.maxX = (xVerts - 1) * pixelDistance;
+		this.maxZ = (zVerts - 1) * pixelDistance;
 		this.heightMap = generateHeightMap(heightMapImage, minHeight, maxHeight);
 	}
 	
-	private double[][] generateHeightMap(BufferedImage heightMapImage, double minHeight, 
+	private double[] generateHeightMap(BufferedImage heightMapImage, double minHeight, 
 			double maxHeight) {
-		double[][] heightMap = new double[heightMapImage.getWidth()][heightMapImage.getHeight()];
+		double[] heightMap = new double[heightMapImage.getWidth() * heightMapImage.getHeight()];
 
 		double minAfterScale = Double.POSITIVE_INFINITY;
 		double maxAfterScale = Double.NEGATIVE_INFINITY;
@@ -61,7 +69,7 @@ public class ImageHeightMap extends MutableHeightMap {
 				if(height > maxFoundHeightFinal) maxFoundHeightFinal = height;
 				if(height < minFoundHeightFinal) minFoundHeightFinal = height;
 
-				heightMap[x][y] = height;
+				heightMap[y * xVerts + x] = height;
 			}
 		}
 
@@ -77,8 +85,8 @@ public class ImageHeightMap extends MutableHeightMap {
 	protected float getBaseHeight(float x, float z) {
 		if(x + 1e-6 < 0.0) x = 0.0f;
 		if(z + 1e-6 < 0.0) z = 0.0f;
-		if(x > (xVerts - 1) * pixelDistance + 1e-6) x = (float) ((xVerts - 1) * pixelDistance);
-		if(z > (zVerts - 1) * pixelDistance) z = (float) ((zVerts - 1) * pixelDistance);
+		if(x > maxX + 1e-6) x = (float) maxX;
+		if(z > maxZ) z = (float) maxZ;
 
 		double xGrid = x / pixelDistance;
 		double zGrid = z / pixelDistance;
@@ -91,10 +99,10 @@ public class ImageHeightMap extends MutableHeightMap {
 		double u = xGrid - leftX;
 		double v = zGrid - upZ;
 
-		double heightLeftUp = heightMap[leftX][upZ];
-		double heightLeftDown = heightMap[leftX][downZ];
-		double heightRightUp = heightMap[rightX][upZ];
-		double heightRightDown = heightMap[rightX][downZ];
+		double heightLeftUp = heightMap[upZ * xVerts + leftX];
+		double heightLeftDown = heightMap[downZ * xVerts + leftX];
+		double heightRightUp = heightMap[upZ * xVerts + rightX];
+		double heightRightDown = heightMap[downZ * xVerts + rightX];
 		
 		double heightUp = (1.0 - u) * heightLeftUp + u * heightRightUp;
 		double heightDown = (1.0 - u) * heightLeftDown + u * heightRightDown;
@@ -103,9 +111,79 @@ public class ImageHeightMap extends MutableHeightMap {
 		return (float) height;
 	}
 
+	// points of a grid row share z, so their two rows of the array are located once per run
+	@Override
+	protected void getBaseHeights(float[] xs, float[] zs, int count, float[] out) {
+		int i = 0;
+		while(i < count) {
+			float rowZ = zs[i];
+			float z = rowZ;
+			if(z + 1e-6 < 0.0) z = 0.0f;
+			if(z > maxZ) z = (float) maxZ;
+			
+			double zGrid = z / pixelDistance;
+			int upZ = (int) zGrid;
+			int downZ = upZ == zVerts - 1 ? upZ : upZ + 1;
+			double v = zGrid - upZ;
+			int up = upZ * xVerts;
+			int down = downZ * xVerts;
+			
+			do {
+				float x = xs[i];
+				if(x + 1e-6 < 0.0) x = 0.0f;
+				if(x > maxX + 1e-6) x = (float) maxX;
+				
+				double xGrid = x / pixelDistance;
+				int leftX = (int) xGrid;
+				int rightX = leftX == xVerts - 1 ? leftX : leftX + 1;
+				double u = xGrid - leftX;
+				
+				double heightUp = (1.0 - u) * heightMap[up + leftX] + u * heightMap[up + rightX];
+				double heightDown = (1.0 - u) * heightMap[down + leftX] + u * heightMap[down + rightX];
+				out[i] = (float) ((1.0 - v) * heightUp + v * heightDown);
+				i++;
+			} while(i < count && zs[i] == rowZ);
+		}
+	}
+
+	@Override
+	protected OptionalLong getBaseFingerprint() {
+		if(fingerprint == null) {
+			Fingerprint hash = new Fingerprint(ImageHeightMap.class.getName())
+					.add(pixelDistance).add(maxHeight).add(xVerts).add(zVerts);
+			for(double height : heightMap) {
+				hash.add(height);
+			}
+			
+			fingerprint = OptionalLong.of(hash.get());
+		}
+		
+		return fingerprint;
+	}
+
 	@Override
 	public float getMaxHeight() {
 		return (float) maxHeight;
 	}
+	
+	@Override
+	public double getSampleDistance() {
+		return pixelDistance;
+	}
+	
+	@Override
+	public int getSamplesX() {
+		return xVerts;
+	}
+	
+	@Override
+	public int getSamplesZ() {
+		return zVerts;
+	}
+	
+	@Override
+	public void getSampleRow(int firstX, int z, int count, double[] out) {
+		System.arraycopy(heightMap, z * xVerts + firstX, out, 0, count);
+	}
 
 }
@@ -5,7 +5,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.function.BiFunction;
+import java.util.OptionalLong;
 import java.util.function.Function;
 import java.util.logging.Logger;
 
@@ -31,6 +31,29 @@ public abstract class MutableHeightMap implements IHeightMap {
 	
 	protected abstract float getBaseHeight(float x, float z);
 	
+	/**
+	 * Writes base heights of the first count points to out. Implementations should
+	 * override it if they can evaluate many points faster than one by one.
+	 */
+	protected void getBaseHeights(float[] xs, float[] zs, int count, float[] out) {
+		for(int i = 0; i < count; i++) {
+			out[i] = getBaseHeight(xs[i], zs[i]);
+		}
+	}
+	
+	/**
+	 * Hash of the heights without updates, nothing if they cannot be identified.
+	 */
+	protected OptionalLong getBaseFingerprint() {
+		return OptionalLong.empty();
+	}
+	
+	// updates cannot be identified, influence distributions are arbitrary functions
+	@Override
+	public OptionalLong getFingerprint() {
+		return trajectories.isEmpty() ? getBaseFingerprint() : OptionalLong.empty();
+	}
+	
 	@Override
 	public float getHeight(float x, float z) {
 		float finalHeight = getBaseHeight(x, z);
@@ -47,23 +70,79 @@ public abstract class MutableHeightMap implements IHeightMap {
 		return getBaseHeight(x, z);
 	}
 	
+	@Override
+	public void getHeights(float[] xs, float[] zs, int count, float[] out) {
+		getBaseHeights(xs, zs, count, out);
+		
+		for(GriddedTrajectory griddedTrajectory : trajectories) {
+			for(int i = 0; i < count; i++) {
+				out[i] = getInterpolatedHeight(xs[i], zs[i], out[i], griddedTrajectory);
+			}
+		}
+	}
+	
+	@Override
+	public void getHeightsApprox(float[] xs, float[] zs, int count, float[] out) {
+		getBaseHeights(xs, zs, count, out);
+	}
+	
+	@Override
+	public void getNormalsApprox(float[] xs, float[] zs, int count, float[] out) {
+		getBaseNormals(xs, zs, count, out);
+	}
+	
+	// heights changed by updates have no derivatives, so their normals are estimated by differences
 	@Override
 	public Vector3f getNormal(float x, float z) {
-		return getGenericNormal(x, z, diff, this::getHeight);
+		if(trajectories.isEmpty()) return getBaseNormal(x, z);
+		
+		return differenceNormal(getHeight(x - diff, z), getHeight(x + diff, z),
+				getHeight(x, z - diff), getHeight(x, z + diff));
 	}
 	
 	@Override
 	public Vector3f getNormalApprox(float x, float z) {
-		return getGenericNormal(x, z, diff, this::getHeightApprox);
+		return getBaseNormal(x, z);
+	}
+	
+	/**
+	 * Normal of the heights without updates, estimated by central differences.
+	 * Implementations which know derivatives of their heights should override it.
+	 */
+	protected Vector3f getBaseNormal(float x, float z) {
+		return differenceNormal(getBaseHeight(x - diff, z), getBaseHeight(x + diff, z),
+				getBaseHeight(x, z - diff), getBaseHeight(x, z + diff));
 	}
 	
-	private Vector3f getGenericNormal(float x, float z, float diff,
-			BiFunction<Float, Float, Float> heightGetter) {
-		float heightL = heightGetter.apply(x - diff, z);
-		float heightR = heightGetter.apply(x + diff, z);
-		float heightD = heightGetter.apply(x, z - diff);
-		float heightU = heightGetter.apply(x, z + diff);
+	/**
+	 * Writes three components of the base normal per point to out; base heights of
+	 * each side are computed at once.
+	 */
+	protected void getBaseNormals(float[] xs, float[] zs, int count, float[] out) {
+		float[] shifted = new float[count];
+		float[] left = new float[count];
+		float[] right = new float[count];
+		float[] down = new float[count];
+		float[] up = new float[count];
+		
+		for(int i = 0; i < count; i++) shifted[i] = xs[i] - diff;
+		getBaseHeights(shifted, zs, count, left);
+		for(int i = 0; i < count; i++) shifted[i] = xs[i] + diff;
+		getBaseHeights(shifted, zs, count, right);
+		for(int i = 0; i < count; i++) shifted[i] = zs[i] - diff;
+		getBaseHeights(xs, shifted, count, down);
+		for(int i = 0; i < count; i++) shifted[i] = zs[i] + diff;
+		getBaseHeights(xs, shifted, count, up);
 		
+		for(int i = 0; i < count; i++) {
+			Vector3f normal = differenceNormal(left[i], right[i], down[i], up[i]);
+			out[i * 3] = normal.x;
+			out[i * 3 + 1] = normal.y;
+			out[i * 3 + 2] = normal.z;
+		}
+	}
+	
+	private Vector3f differenceNormal(float heightL, float heightR, float heightD, float heightU) {
 		Vector3f normal = new Vector3f(
 				(heightL - heightR) / (2f * diff),
 				1f,
@@ -1,5 +1,12 @@
 package hr.fer.zemris.engine.terrain;
 
+import java.util.Arrays;
+import java.util.OptionalLong;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import hr.fer.zemris.engine.util.FastSimplexNoise;
+import hr.fer.zemris.engine.util.Fingerprint;
 import hr.fer.zemris.engine.util.OpenSimplexNoise;
 
 public class SimplexHeightGenerator extends MutableHeightMap {
@@ -12,26 +19,44 @@ public class SimplexHeightGenerator extends MutableHeightMap {
 	private static final float DEFAULT_ROUGHNESS = 0.4f;
 	private static final float DEFAULT_HEIGHT_BIAS = 0.2f;
 	private static final float DEFAULT_HEIGHT_VARIATION = 5f;
+	private static final int MAX_INTEGRAL_VARIATION = 16;
 	
 	private final float preferredHeight;
-	private final float baseFrequencyModifier;
-	private final float freqIncreaseFactor;
-	private final int octaves;
-	private final float roughness;
+	private final float[] frequencies; // per octave
+	private final float[] amplitudes;
+	private final float normalizer;
 	private final float heightBias; // larger values result with more mountains, must be positive or 0
 	private final float heightVariation;
+	private final int integralVariation; // height variation if it is a small whole number, otherwise -1
+	private final NoiseMode noiseMode;
+	
+	private final long fingerprint;
 	
 	private OpenSimplexNoise simplexNoiseGenerator;
+	private FastSimplexNoise fastNoiseGenerator;
 
 	public SimplexHeightGenerator(long seed) {
 		this(seed, DEFAULT_PREFERRED_HEIGHT, DEFAULT_BASE_FREQUENCY_MODIFIER,
 				DEFAULT_FREQ_INCREASE_FACTOR, DEFAULT_OCTAVES, DEFAULT_ROUGHNESS,
 				DEFAULT_HEIGHT_BIAS, DEFAULT_HEIGHT_VARIATION);
 	}
+	
+	public SimplexHeightGenerator(long seed, NoiseMode noiseMode) {
+		this(seed, DEFAULT_PREFERRED_HEIGHT, DEFAULT_BASE_FREQUENCY_MODIFIER,
+				DEFAULT_FREQ_INCREASE_FACTOR, DEFAULT_OCTAVES, DEFAULT_ROUGHNESS,
+				DEFAULT_HEIGHT_BIAS, DEFAULT_HEIGHT_VARIATION, noiseMode);
+	}
 
 	public SimplexHeightGenerator(long seed, float maxHeight, float baseFrequencyModifier,
 			float freqIncreaseFactor, int octaves, float roughness, float heightBias,
 			float heightVariation) {
+		this(seed, maxHeight, baseFrequencyModifier, freqIncreaseFactor, octaves, roughness, heightBias,
+				heightVariation, NoiseMode.PRECISE);
+	}
+
+	public SimplexHeightGenerator(long seed, float maxHeight, float baseFrequencyModifier,
+			float freqIncreaseFactor, int octaves, float roughness, float heightBias,
+			float heightVariation, NoiseMode noiseMode) {
 		super(DIFF);
 		
 		if(heightBias < 0) {
@@ -39,36 +64,180 @@ public class SimplexHeightGenerator extends MutableHeightMap {
 		}
 		
 		this.preferredHeight = maxHeight;
-		this.baseFrequencyModifier = baseFrequencyModifier;
-		this.freqIncreaseFactor = freqIncreaseFactor;
-		this.octaves = octaves;
-		this.roughness = roughness;
+		this.frequencies = new float[octaves];
+		this.amplitudes = new float[octaves];
+		float normalizer = 0;
+		for(int i = 0; i < octaves; i++) {
+			frequencies[i] = (float) (baseFrequencyModifier * Math.pow(freqIncreaseFactor, i));
+			amplitudes[i] = (float) (Math.pow(roughness, i));
+			normalizer += amplitudes[i];
+		}
+		this.normalizer = normalizer;
 		this.heightBias = heightBias;
 		this.heightVariation = heightVariation;
+		this.integralVariation = heightVariation == Math.rint(heightVariation) && heightVariation >= 1 &&
+				heightVariation <= MAX_INTEGRAL_VARIATION ? (int) heightVariation : -1;
+		this.noiseMode = noiseMode;
 		this.simplexNoiseGenerator = new OpenSimplexNoise(seed);
+		this.fastNoiseGenerator = new FastSimplexNoise(seed);
+		
+		// only fast heights are told apart, so routes cached for precise ones stay valid
+		Fingerprint fingerprint = new Fingerprint(SimplexHeightGenerator.class.getName())
+				.add(seed).add(maxHeight).add(baseFrequencyModifier).add(freqIncreaseFactor).add(octaves)
+				.add(roughness).add(heightBias).add(heightVariation);
+		if(noiseMode != NoiseMode.PRECISE) fingerprint.add(FastSimplexNoise.class.getName());
+		this.fingerprint = fingerprint.get();
 	}
 	
 	@Override
 	protected float getBaseHeight(float x, float z) {
 		float totalNoise = 0;
-		float normalizer = 0;
 		
-		for(int i = 0; i < octaves; i++) {
-			float frequency = (float) (baseFrequencyModifier * Math.pow(freqIncreaseFactor, i));
-			float amplitude = (float) (Math.pow(roughness, i));
-			normalizer += amplitude;
-			totalNoise += getNormalizedNoise(x * frequency, z * frequency) * amplitude;
+		for(int i = 0; i < frequencies.length; i++) {
+			totalNoise += getNormalizedNoise(x * frequencies[i], z * frequencies[i]) * amplitudes[i];
+		}
+		
+		return toHeight(totalNoise);
+	}
+	
+	// octave by octave over all points, sums are the same as for a single point
+	@Override
+	protected void getBaseHeights(float[] xs, float[] zs, int count, float[] out) {
+		Arrays.fill(out, 0, count, 0f);
+		
+		for(int i = 0; i < frequencies.length; i++) {
+			float frequency = frequencies[i];
+			float amplitude = amplitudes[i];
+			for(int j = 0; j < count; j++) {
+				out[j] += getNormalizedNoise(xs[j] * frequency, zs[j] * frequency) * amplitude;
+			}
+		}
+		
+		for(int j = 0; j < count; j++) {
+			out[j] = toHeight(out[j]);
+		}
+	}
+	
+	// chain rule through the octave sum and the height shaping, heights are equal to base heights
+	@Override
+	protected Vector3f getBaseNormal(float x, float z) {
+		double[] derivatives = new double[2];
+		float[] fastDerivatives = new float[2];
+		float totalNoise = 0;
+		double noiseSlopeX = 0;
+		double noiseSlopeZ = 0;
+		
+		for(int i = 0; i < frequencies.length; i++) {
+			float frequency = frequencies[i];
+			totalNoise += getNormalizedNoise(x * frequency, z * frequency, derivatives, fastDerivatives) *
+					amplitudes[i];
+			noiseSlopeX += derivatives[0] * frequency * amplitudes[i];
+			noiseSlopeZ += derivatives[1] * frequency * amplitudes[i];
+		}
+		
+		Vector3f normal = new Vector3f();
+		toNormal(totalNoise, noiseSlopeX, noiseSlopeZ, normal);
+		return normal;
+	}
+	
+	@Override
+	protected void getBaseNormals(float[] xs, float[] zs, int count, float[] out) {
+		double[] derivatives = new double[2];
+		float[] fastDerivatives = new float[2];
+		float[] totalNoise = new float[count];
+		double[] noiseSlopes = new double[count * 2];
+		
+		for(int i = 0; i < frequencies.length; i++) {
+			float frequency = frequencies[i];
+			float amplitude = amplitudes[i];
+			for(int j = 0; j < count; j++) {
+				totalNoise[j] += getNormalizedNoise(xs[j] * frequency, zs[j] * frequency, derivatives,
+						fastDerivatives) * amplitude;
+				noiseSlopes[j * 2] += derivatives[0] * frequency * amplitude;
+				noiseSlopes[j * 2 + 1] += derivatives[1] * frequency * amplitude;
+			}
+		}
+		
+		Vector3f normal = new Vector3f();
+		for(int j = 0; j < count; j++) {
+			toNormal(totalNoise[j], noiseSlopes[j * 2], noiseSlopes[j * 2 + 1], normal);
+			out[j * 3] = normal.x;
+			out[j * 3 + 1] = normal.y;
+			out[j * 3 + 2] = normal.z;
 		}
+	}
+	
+	private void toNormal(float totalNoise, double noiseSlopeX, double noiseSlopeZ, Vector3f normal) {
+		// derivative of the height by the octave sum
+		float base = totalNoise / normalizer + heightBias;
+		double heightSlope = heightVariation * shape(base, heightVariation - 1, integralVariation - 1) *
+				preferredHeight / normalizer;
 		
+		normal.set((float) (-heightSlope * noiseSlopeX), 1f, (float) (-heightSlope * noiseSlopeZ));
+		normal.normalise();
+	}
+	
+	private float toHeight(float totalNoise) {
 		totalNoise /= normalizer;
-		totalNoise = (float) Math.pow(totalNoise + heightBias, heightVariation);
+		totalNoise = (float) shape(totalNoise + heightBias, heightVariation, integralVariation);
 		
 		float height = totalNoise * preferredHeight;
 		return height;
 	}
 	
+	// fast modes raise to whole exponents by multiplication
+	private double shape(float base, float exponent, int integralExponent) {
+		if(noiseMode == NoiseMode.PRECISE || integralExponent < 0) return Math.pow(base, exponent);
+		
+		float result = 1f;
+		for(int exponentBits = integralExponent; exponentBits != 0; exponentBits >>= 1) {
+			if((exponentBits & 1) != 0) result *= base;
+			base *= base;
+		}
+		return result;
+	}
+	
 	private float getNormalizedNoise(float x, float z) {
-		return (float) (0.5 * (simplexNoiseGenerator.eval(x, z) + 1.0f));
+		if(noiseMode == NoiseMode.PRECISE) return (float) (0.5 * (simplexNoiseGenerator.eval(x, z) + 1.0f));
+		
+		float noise = fastNoiseGenerator.eval(x, z);
+		if(noiseMode == NoiseMode.CHECKED) {
+			checkNoise(x, z, "value", noise, simplexNoiseGenerator.eval(x, z), 1f);
+		}
+		return 0.5f * (noise + 1f);
+	}
+	
+	// also writes derivatives of the normalized noise
+	private float getNormalizedNoise(float x, float z, double[] derivatives, float[] fastDerivatives) {
+		if(noiseMode == NoiseMode.PRECISE) {
+			double noise = simplexNoiseGenerator.eval(x, z, derivatives);
+			derivatives[0] *= 0.5;
+			derivatives[1] *= 0.5;
+			return (float) (0.5 * (noise + 1.0f));
+		}
+		
+		float noise = fastNoiseGenerator.eval(x, z, fastDerivatives);
+		if(noiseMode == NoiseMode.CHECKED) {
+			checkNoise(x, z, "value", noise, simplexNoiseGenerator.eval(x, z, derivatives), 1f);
+			checkNoise(x, z, "x derivative", fastDerivatives[0], derivatives[0], 4f);
+			checkNoise(x, z, "z derivative", fastDerivatives[1], derivatives[1], 4f);
+		}
+		derivatives[0] = 0.5f * fastDerivatives[0];
+		derivatives[1] = 0.5f * fastDerivatives[1];
+		return 0.5f * (noise + 1f);
+	}
+	
+	private static void checkNoise(float x, float z, String quantity, float fast, double precise,
+			float toleranceFactor) {
+		if(Math.abs(fast - precise) > toleranceFactor * FastSimplexNoise.getTolerance(x, z)) {
+			throw new IllegalStateException("Fast noise " + quantity + " at (" + x + ", " + z + ") is " + fast +
+					" instead of " + precise + ".");
+		}
+	}
+	
+	@Override
+	protected OptionalLong getBaseFingerprint() {
+		return OptionalLong.of(fingerprint);
 	}
 	
 	@Override
@@ -76,5 +245,18 @@ public class SimplexHeightGenerator extends MutableHeightMap {
 		//return (float) (Math.pow(1.0f + heightBias, heightVariation) * preferredHeight);
 		return preferredHeight;
 	}
+	
+	public NoiseMode getNoiseMode() {
+		return noiseMode;
+	}
+	
+	public static enum NoiseMode {
+		/** Double precision noise and shaping, which the heights were always computed with. */
+		PRECISE,
+		/** Single precision noise and shaping, which differ from precise ones only by rounding. */
+		FAST,
+		/** Fast noise, checked against precise noise within its tolerance; for testing only. */
+		CHECKED
+	}
 
 }
@@ -117,36 +117,36 @@ public class Terrain implements ITerrain {
 		float[] textureInfluences = new float[count * 3]; // 3 textures per vertex
 		int[] indices = new int[6 * (xVertices - 1) * (zVertices - 1)];
 
+		float[] xcoords = new float[xVertices];
+		for (int x = 0; x < xVertices; x++) {
+			xcoords[x] = x / (float) (xVertices - 1) * width + xUpperLeft;
+		}
+		float[] zcoords = new float[zVertices];
+		for (int z = 0; z < zVertices; z++) {
+			zcoords[z] = z / (float) (zVertices - 1) * depth + zUpperLeft;
+		}
+		
+		float[] heights = new float[count];
+		heightGenerator.getHeightGrid(xcoords, zcoords, heights);
+		heightGenerator.getNormalGridApprox(xcoords, zcoords, normals);
+
 		int vertexPointer = 0;
-		float[] texStrengthsBuffer = new float[NUM_TEXTURES];
 		
 		for (int z = 0; z < zVertices; z++) {
 			for (int x = 0; x < xVertices; x++) {
-				float xcoord = x / (float) (xVertices - 1) * width + xUpperLeft;
-				float zcoord = z / (float) (zVertices - 1) * depth + zUpperLeft;
-				float height = heightGenerator.getHeight(xcoord, zcoord);
+				vertices[vertexPointer * 3] = xcoords[x];
+				vertices[vertexPointer * 3 + 1] = heights[vertexPointer];
+				vertices[vertexPointer * 3 + 2] = zcoords[z];
 
-				vertices[vertexPointer * 3] = xcoord;
-				vertices[vertexPointer * 3 + 1] = height;
-				vertices[vertexPointer * 3 + 2] = zcoord;
-
-				Vector3f normal = heightGenerator.getNormalApprox(xcoord, zcoord);
-				normals[vertexPointer * 3] = normal.x;
-				normals[vertexPointer * 3 + 1] = normal.y;
-				normals[vertexPointer * 3 + 2] = normal.z;
-
-				textureCoords[vertexPointer * 2] = xcoord / textureWidth;
-				textureCoords[vertexPointer * 2 + 1] = zcoord / textureDepth;
-
-				textureMap.textureInfluences(xcoord, height, zcoord, texStrengthsBuffer);
-				textureInfluences[vertexPointer * 3] = texStrengthsBuffer[0];
-				textureInfluences[vertexPointer * 3 + 1] = texStrengthsBuffer[1];
-				textureInfluences[vertexPointer * 3 + 2] = texStrengthsBuffer[2];
+				textureCoords[vertexPointer * 2] = xcoords[x] / textureWidth;
+				textureCoords[vertexPointer * 2 + 1] = zcoords[z] / textureDepth;
 
 				vertexPointer++;
 			}
 		}
 
+		textureMap.textureInfluences(vertices, count, textureInfluences);
+
 		int pointer = 0;
 		for (int gz = 0; gz < zVertices - 1; gz++) {
 			for (int gx = 0; gx < xVertices - 1; gx++) {
@@ -87,22 +87,10 @@ public class TerrainMend implements ITerrain {
 		int thisVerticesCount = (int) (Math.round(size * thisVertsPerUnit) + 1);
 		int otherVerticesCount = (int) (Math.round(size * otherVertsPerUnit) + 1);
 		
-		List<Vector3f> thisVertices = new LinkedList<>();
-		List<Vector3f> otherVertices = new LinkedList<>();
-		
-		for(int i = 0; i < thisVerticesCount; i++) {
-			float xcoord = isRight ? xStart : i / (float) (thisVerticesCount - 1) * size + xUpperLeft;
-			float zcoord = isRight ? i / (float) (thisVerticesCount - 1) * size + zUpperLeft : zStart;
-			float height = heightMap.getHeight(xcoord, zcoord);
-			thisVertices.add(new Vector3f(xcoord, height, zcoord));
-		}
-		
-		for(int i = 0; i < otherVerticesCount; i++) {
-			float xcoord = isRight ? xStart : i / (float) (otherVerticesCount - 1) * size + xUpperLeft;
-			float zcoord = isRight ? i / (float) (otherVerticesCount - 1) * size + zUpperLeft : zStart;
-			float height = heightMap.getHeight(xcoord, zcoord);
-			otherVertices.add(new Vector3f(xcoord, height, zcoord));
-		}
+		List<Vector3f> thisVertices = edgeVertices(xUpperLeft, zUpperLeft, xStart, zStart, size,
+				thisVerticesCount, heightMap, isRight);
+		List<Vector3f> otherVertices = edgeVertices(xUpperLeft, zUpperLeft, xStart, zStart, size,
+				otherVerticesCount, heightMap, isRight);
 
 		int toInsert = Math.abs(thisVerticesCount - otherVerticesCount);
 		List<Vector3f> receivingList = thisVerticesCount < otherVerticesCount ? thisVertices : otherVertices;
@@ -143,8 +131,8 @@ public class TerrainMend implements ITerrain {
 		float[] textureInfluences = new float[count * NUM_TEXTURES]; // 3 textures per vertex (r, g, b)
 		float[] tangents = new float[count * 3];
 		int[] indices = new int[6 * (thisVertices.size() - 1)];
-		
-		float[] texStrengthsBuffer = new float[NUM_TEXTURES];
+		float[] xs = new float[count];
+		float[] zs = new float[count];
 		
 		for(int i = 0; i < thisVertices.size(); i++) {
 			Vector3f thisVert = thisVertices.get(i);
@@ -158,16 +146,10 @@ public class TerrainMend implements ITerrain {
 			vertices[(thisVertices.size() + i) * 3 + 1] = otherVert.y;
 			vertices[(thisVertices.size() + i) * 3 + 2] = otherVert.z;
 
-			
-			Vector3f thisNormal = heightMap.getNormalApprox(thisVert.x, thisVert.z);
-			normals[i * 3] = thisNormal.x;
-			normals[i * 3 + 1] = thisNormal.y;
-			normals[i * 3 + 2] = thisNormal.z;
-			
-			Vector3f otherNormal = heightMap.getNormalApprox(otherVert.x, otherVert.z);
-			normals[(thisVertices.size() + i) * 3] = otherNormal.x;
-			normals[(thisVertices.size() + i) * 3 + 1] = otherNormal.y;
-			normals[(thisVertices.size() + i) * 3 + 2] = otherNormal.z;
+			xs[i] = thisVert.x;
+			zs[i] = thisVert.z;
+			xs[thisVertices.size() + i] = otherVert.x;
+			zs[thisVertices.size() + i] = otherVert.z;
 
 			
 			textureCoords[i * 2] = thisVert.x / textureWidth;
@@ -176,17 +158,10 @@ public class TerrainMend implements ITerrain {
 			textureCoords[i * 2] = otherVert.x / textureWidth;
 			textureCoords[i * 2 + 1] = otherVert.z / textureDepth;
 
-			
-			textureMap.textureInfluences(thisVert.x, thisVert.y, thisVert.z, texStrengthsBuffer);
-			textureInfluences[i * 3] = texStrengthsBuffer[0];
-			textureInfluences[i * 3 + 1] = texStrengthsBuffer[1];
-			textureInfluences[i * 3 + 2] = texStrengthsBuffer[2];
-			
-			textureMap.textureInfluences(otherVert.x, otherVert.y, otherVert.z, texStrengthsBuffer);
-			textureInfluences[(thisVertices.size() + i) * NUM_TEXTURES] = texStrengthsBuffer[0];
-			textureInfluences[(thisVertices.size() + i) * NUM_TEXTURES + 1] = texStrengthsBuffer[1];
-			textureInfluences[(thisVertices.size() + i) * NUM_TEXTURES + 2] = texStrengthsBuffer[2];
 		}
+		
+		heightMap.getNormalsApprox(xs, zs, count, normals);
+		textureMap.textureInfluences(vertices, count, textureInfluences);
 
 		boolean cw = isRight;
 		int pointer = 0;
@@ -207,5 +182,30 @@ public class TerrainMend implements ITerrain {
 		
 		return new TerrainData(vertices, textureCoords, normals, tangents, indices, textureInfluences);
 	}
+	
+	// vertices at the same points as the vertices of the terrain along the edge
+	private static List<Vector3f> edgeVertices(float xUpperLeft, float zUpperLeft, float xStart, float zStart,
+			float size, int count, IHeightMap heightMap, boolean isRight) {
+		float[] coords = new float[count];
+		for(int i = 0; i < count; i++) {
+			coords[i] = i / (float) (count - 1) * size + (isRight ? zUpperLeft : xUpperLeft);
+		}
+		
+		float[] heights = new float[count];
+		if(isRight) {
+			heightMap.getHeightGrid(new float[] {xStart}, coords, heights);
+		} else {
+			heightMap.getHeightGrid(coords, new float[] {zStart}, heights);
+		}
+		
+		List<Vector3f> vertices = new LinkedList<>();
+		for(int i = 0; i < count; i++) {
+			vertices.add(isRight ?
+					new Vector3f(xStart, heights[i], coords[i]) :
+					new Vector3f(coords[i], heights[i], zStart));
+		}
+		
+		return vertices;
+	}
 
 }
@@ -0,0 +1,289 @@
+package hr.fer.zemris.engine.terrain;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.OptionalLong;
+
+import hr.fer.zemris.engine.util.Fingerprint;
+
+/**
+ * Height map read from a file of samples in square tiles, which is memory-mapped
+ * instead of loaded, so the operating system reads only the tiles which are
+ * used and keeps the recently used ones in memory. Files are created from
+ * images or raw elevation data by TiledHeightMapConverter.
+ *
+ * Samples lie pixelDistance apart, the first one at the origin, with rows along
+ * x; heights between them are interpolated bilinearly like in ImageHeightMap. A
+ * file starts with a header of HEADER_BYTES bytes, followed by tiles row by row
+ * and samples of each tile row by row; tiles on the edges are padded to full
+ * size. All values are big-endian.
+ */
+public class TiledHeightMap extends MutableHeightMap implements HeightRaster {
+
+	static final int MAGIC = 0x44454D54; // "DEMT"
+	static final int FORMAT_VERSION = 1;
+	static final int HEADER_BYTES = 128;
+
+	private static final long MAX_CHUNK_BYTES = 1L << 30;
+
+	private final SampleType sampleType;
+	private final int width; // samples along x
+	private final int depth; // samples along z
+	private final int tileSize;
+	private final int tilesX;
+	private final double pixelDistance;
+	private final double heightOffset;
+	private final double heightScale;
+	private final double maxHeight;
+	private final long contentHash;
+	private final double maxX;
+	private final double maxZ;
+
+	private final int tileBytes;
+	private final int tilesPerChunk;
+	private final MappedByteBuffer[] chunks;
+
+	/**
+	 * Maps the whole file at once; only the header is read until heights are
+	 * queried.
+	 */
+	public TiledHeightMap(Path file) {
+		this(readHeader(file), file);
+	}
+
+	private TiledHeightMap(ByteBuffer header, Path file) {
+		super((float) header.getDouble(24));
+
+		this.sampleType = SampleType.values()[header.getInt(8)];
+		this.width = header.getInt(12);
+		this.depth = header.getInt(16);
+		this.tileSize = header.getInt(20);
+		this.pixelDistance = header.getDouble(24);
+		this.heightOffset = header.getDouble(32);
+		this.heightScale = header.getDouble(40);
+		this.maxHeight = header.getDouble(56);
+		this.contentHash = header.getLong(64);
+		this.maxX = (width - 1) * pixelDistance;
+		this.maxZ = (depth - 1) * pixelDistance;
+
+		this.tilesX = (width + tileSize - 1) / tileSize;
+		long tileCount = (long) tilesX * ((depth + tileSize - 1) / tileSize);
+		this.tileBytes = tileSize * tileSize * sampleType.getBytes();
+		this.tilesPerChunk = (int) Math.max(1, MAX_CHUNK_BYTES / tileBytes);
+		this.chunks = new MappedByteBuffer[(int) ((tileCount + tilesPerChunk - 1) / tilesPerChunk)];
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if(channel.size() < HEADER_BYTES + tileCount * tileBytes) {
+				throw new IOException("File is shorter than its " + tileCount + " tiles.");
+			}
+
+			// mapping only reserves addresses, pages are read on first access
+			for(int i = 0; i < chunks.length; i++) {
+				long chunkTiles = Math.min(tilesPerChunk, tileCount - (long) i * tilesPerChunk);
+				chunks[i] = channel.map(MapMode.READ_ONLY, HEADER_BYTES + (long) i * tilesPerChunk * tileBytes,
+						chunkTiles * tileBytes);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot map tiled height map " + file, e);
+		}
+	}
+
+	private static ByteBuffer readHeader(Path file) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while(header.hasRemaining()) {
+				if(channel.read(header) < 0) throw new IOException("File is shorter than the header.");
+			}
+
+			if(header.getInt(0) != MAGIC) {
+				throw new IOException("File is not a tiled height map.");
+			}
+			if(header.getInt(4) != FORMAT_VERSION) {
+				throw new IOException("Unsupported tiled height map version: " + header.getInt(4));
+			}
+			if(header.getInt(8) < 0 || header.getInt(8) >= SampleType.values().length ||
+					header.getInt(12) < 1 || header.getInt(16) < 1 || header.getInt(20) < 1 ||
+					header.getInt(20) > (1 << 14) || !(header.getDouble(24) > 0.0)) {
+				throw new IOException("Header is corrupted.");
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot open tiled height map " + file, e);
+		}
+
+		return header;
+	}
+
+	@Override
+	protected float getBaseHeight(float x, float z) {
+		if(x + 1e-6 < 0.0) x = 0.0f;
+		if(z + 1e-6 < 0.0) z = 0.0f;
+		if(x > maxX + 1e-6) x = (float) maxX;
+		if(z > maxZ) z = (float) maxZ;
+
+		double xGrid = x / pixelDistance;
+		double zGrid = z / pixelDistance;
+
+		int leftX = Math.min((int) xGrid, width - 1);
+		int upZ = Math.min((int) zGrid, depth - 1); // up is forward, towards -z
+		int rightX = leftX == width - 1 ? leftX : leftX + 1;
+		int downZ = upZ == depth - 1 ? upZ : upZ + 1;
+
+		double u = xGrid - leftX;
+		double v = zGrid - upZ;
+
+		double heightLeftUp = getSampleHeight(leftX, upZ);
+		double heightLeftDown = getSampleHeight(leftX, downZ);
+		double heightRightUp = getSampleHeight(rightX, upZ);
+		double heightRightDown = getSampleHeight(rightX, downZ);
+
+		double heightUp = (1.0 - u) * heightLeftUp + u * heightRightUp;
+		double heightDown = (1.0 - u) * heightLeftDown + u * heightRightDown;
+		double height = (1.0 - v) * heightUp + v * heightDown;
+
+		return (float) height;
+	}
+
+	// points of a grid row share z, so their two sample rows are located once per run
+	@Override
+	protected void getBaseHeights(float[] xs, float[] zs, int count, float[] out) {
+		int i = 0;
+		while(i < count) {
+			float rowZ = zs[i];
+			float z = rowZ;
+			if(z + 1e-6 < 0.0) z = 0.0f;
+			if(z > maxZ) z = (float) maxZ;
+
+			double zGrid = z / pixelDistance;
+			int upZ = Math.min((int) zGrid, depth - 1);
+			int downZ = upZ == depth - 1 ? upZ : upZ + 1;
+			double v = zGrid - upZ;
+			long upTiles = (long) (upZ / tileSize) * tilesX;
+			long downTiles = (long) (downZ / tileSize) * tilesX;
+			int upOffset = (upZ % tileSize) * tileSize;
+			int downOffset = (downZ % tileSize) * tileSize;
+
+			do {
+				float x = xs[i];
+				if(x + 1e-6 < 0.0) x = 0.0f;
+				if(x > maxX + 1e-6) x = (float) maxX;
+
+				double xGrid = x / pixelDistance;
+				int leftX = Math.min((int) xGrid, width - 1);
+				int rightX = leftX == width - 1 ? leftX : leftX + 1;
+				double u = xGrid - leftX;
+
+				double heightUp = (1.0 - u) * getSampleHeight(upTiles, upOffset, leftX) +
+						u * getSampleHeight(upTiles, upOffset, rightX);
+				double heightDown = (1.0 - u) * getSampleHeight(downTiles, downOffset, leftX) +
+						u * getSampleHeight(downTiles, downOffset, rightX);
+				out[i] = (float) ((1.0 - v) * heightUp + v * heightDown);
+				i++;
+			} while(i < count && zs[i] == rowZ);
+		}
+	}
+
+	private double getSampleHeight(int x, int z) {
+		return getSampleHeight((long) (z / tileSize) * tilesX, (z % tileSize) * tileSize, x);
+	}
+
+	// row of tiles is given by its first tile, row within the tiles by its first sample
+	private double getSampleHeight(long rowTiles, int rowOffset, int x) {
+		long tile = rowTiles + x / tileSize;
+		MappedByteBuffer chunk = chunks[(int) (tile / tilesPerChunk)];
+		int offset = (int) (tile % tilesPerChunk) * tileBytes + (rowOffset + x % tileSize) * sampleType.getBytes();
+
+		double sample;
+		switch(sampleType) {
+			case SHORT:
+				sample = chunk.getShort(offset);
+				break;
+			case UNSIGNED_SHORT:
+				sample = chunk.getShort(offset) & 0xFFFF;
+				break;
+			default:
+				sample = chunk.getFloat(offset);
+		}
+
+		return heightOffset + heightScale * sample;
+	}
+
+	// content is hashed by the converter, so large files are not read to identify them
+	@Override
+	protected OptionalLong getBaseFingerprint() {
+		return OptionalLong.of(new Fingerprint(TiledHeightMap.class.getName())
+				.add(contentHash).add(pixelDistance).get());
+	}
+
+	@Override
+	public float getMaxHeight() {
+		return (float) maxHeight;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public double getPixelDistance() {
+		return pixelDistance;
+	}
+
+	public SampleType getSampleType() {
+		return sampleType;
+	}
+
+	@Override
+	public double getSampleDistance() {
+		return pixelDistance;
+	}
+
+	@Override
+	public int getSamplesX() {
+		return width;
+	}
+
+	@Override
+	public int getSamplesZ() {
+		return depth;
+	}
+
+	@Override
+	public void getSampleRow(int firstX, int z, int count, double[] out) {
+		long rowTiles = (long) (z / tileSize) * tilesX;
+		int rowOffset = (z % tileSize) * tileSize;
+		for(int i = 0; i < count; i++) {
+			out[i] = getSampleHeight(rowTiles, rowOffset, firstX + i);
+		}
+	}
+
+	/**
+	 * Type of stored samples; heights are heightOffset + heightScale * sample.
+	 * Types are stored by their order, which must not change.
+	 */
+	public static enum SampleType {
+		SHORT(2),
+		UNSIGNED_SHORT(2),
+		FLOAT(4);
+
+		private final int bytes;
+
+		private SampleType(int bytes) {
+			this.bytes = bytes;
+		}
+
+		public int getBytes() {
+			return bytes;
+		}
+	}
+
+}
@@ -0,0 +1,265 @@
+package hr.fer.zemris.engine.terrain;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+import hr.fer.zemris.engine.terrain.TiledHeightMap.SampleType;
+import hr.fer.zemris.engine.util.Fingerprint;
+
+/**
+ * Converts height images and raw elevation data to files of TiledHeightMap.
+ * Raw data is converted a band of tile rows at a time, so sources larger than
+ * the heap can be converted; images are decoded whole by ImageIO. Files are
+ * written to a temporary file and moved into place.
+ *
+ * Header holds magic, version, sample type, width, depth and tile size as ints,
+ * then pixel distance, height offset, height scale, minimum and maximum height
+ * as doubles and a hash of the samples as long, followed by zeros.
+ */
+public class TiledHeightMapConverter {
+
+	private static final Logger LOGGER = Logger.getLogger(TiledHeightMapConverter.class.getName());
+	private static final int DEFAULT_TILE_SIZE = 256;
+	private static final int MAX_PIXEL_COLOR = 256 * 256 * 256;
+
+	/**
+	 * Single band 16-bit images are stored as unsigned samples, with their range
+	 * stretched between minHeight and maxHeight. Their samples are taken as they
+	 * are, without the gamma and 8-bit rounding getRGB applies, so heights differ
+	 * from ImageHeightMap of the same image. Other images are decoded to heights
+	 * exactly like in ImageHeightMap and stored as floats.
+	 */
+	public static void fromImage(BufferedImage image, double minHeight, double maxHeight, double pixelDistance,
+			Path target) {
+		Raster raster = image.getRaster();
+		int width = image.getWidth();
+		int depth = image.getHeight();
+
+		if(raster.getNumBands() == 1 && raster.getTransferType() == DataBuffer.TYPE_USHORT) {
+			int[] row = new int[width];
+			int minSample = Integer.MAX_VALUE;
+			int maxSample = Integer.MIN_VALUE;
+			for(int z = 0; z < depth; z++) {
+				raster.getSamples(0, z, width, 1, 0, row);
+				for(int sample : row) {
+					minSample = Math.min(minSample, sample);
+					maxSample = Math.max(maxSample, sample);
+				}
+			}
+
+			double scale = maxSample > minSample ? (maxHeight - minHeight) / (maxSample - minSample) : 0.0;
+			write(target, width, depth, SampleType.UNSIGNED_SHORT, minHeight - scale * minSample, scale,
+					pixelDistance, DEFAULT_TILE_SIZE, (firstRow, rows, band) -> {
+				for(int z = firstRow; z < firstRow + rows; z++) {
+					raster.getSamples(0, z, width, 1, 0, row);
+					for(int sample : row) {
+						band.putShort((short) sample);
+					}
+				}
+			});
+			return;
+		}
+
+		int[] row = new int[width];
+		double minAfterScale = Double.POSITIVE_INFINITY;
+		double maxAfterScale = Double.NEGATIVE_INFINITY;
+		for(int z = 0; z < depth; z++) {
+			image.getRGB(0, z, width, 1, row, 0, width);
+			for(int color : row) {
+				double height = (color + (double) MAX_PIXEL_COLOR) / MAX_PIXEL_COLOR;
+				minAfterScale = Math.min(minAfterScale, height);
+				maxAfterScale = Math.max(maxAfterScale, height);
+			}
+		}
+
+		final double intervalsRatio = (maxHeight - minHeight) / (maxAfterScale - minAfterScale);
+		final double minPercentage = minAfterScale;
+		write(target, width, depth, SampleType.FLOAT, 0.0, 1.0, pixelDistance, DEFAULT_TILE_SIZE,
+				(firstRow, rows, band) -> {
+			for(int z = firstRow; z < firstRow + rows; z++) {
+				image.getRGB(0, z, width, 1, row, 0, width);
+				for(int color : row) {
+					double percentage = (color + (double) MAX_PIXEL_COLOR) / MAX_PIXEL_COLOR;
+					band.putFloat((float) (minHeight + intervalsRatio * (percentage - minPercentage)));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Converts a file of samples of the given type and byte order without a
+	 * header, row by row along x, e.g. a 16-bit DEM; heights are heightOffset +
+	 * heightScale * sample.
+	 */
+	public static void fromRaw(Path source, int width, int depth, SampleType sampleType, ByteOrder order,
+			double heightOffset, double heightScale, double pixelDistance, Path target) {
+		try(FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+			if(channel.size() != (long) width * depth * sampleType.getBytes()) {
+				throw new IOException("Size " + channel.size() + " B does not match " + width + " x " + depth +
+						" samples of type " + sampleType + ".");
+			}
+
+			ByteBuffer rows = ByteBuffer.allocate(width * sampleType.getBytes()).order(order);
+			write(target, width, depth, sampleType, heightOffset, heightScale, pixelDistance, DEFAULT_TILE_SIZE,
+					(firstRow, rowCount, band) -> {
+				for(int i = 0; i < rowCount; i++) {
+					rows.clear();
+					while(rows.hasRemaining()) {
+						if(channel.read(rows) < 0) throw new IOException("Unexpected end of " + source);
+					}
+					rows.flip();
+
+					for(int x = 0; x < width; x++) {
+						if(sampleType == SampleType.FLOAT) {
+							band.putFloat(rows.getFloat());
+						} else {
+							band.putShort(rows.getShort());
+						}
+					}
+				}
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot convert " + source, e);
+		}
+	}
+
+	private static void write(Path target, int width, int depth, SampleType sampleType, double heightOffset,
+			double heightScale, double pixelDistance, int tileSize, BandReader reader) {
+		if(!(pixelDistance > 0.0)) {
+			throw new IllegalArgumentException("Pixel distance must be positive, got: " + pixelDistance);
+		}
+		if((long) width * tileSize * sampleType.getBytes() > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Rows of " + width + " samples are too long.");
+		}
+
+		int sampleBytes = sampleType.getBytes();
+		int tilesX = (width + tileSize - 1) / tileSize;
+		ByteBuffer band = ByteBuffer.allocate(width * tileSize * sampleBytes);
+		ByteBuffer tiles = ByteBuffer.allocate(tilesX * tileSize * tileSize * sampleBytes);
+
+		Fingerprint hash = new Fingerprint(TiledHeightMap.class.getName())
+				.add(width).add(depth).add(sampleType.name()).add(heightOffset).add(heightScale);
+		double minHeight = Double.POSITIVE_INFINITY;
+		double maxHeight = Double.NEGATIVE_INFINITY;
+
+		Path temporary = null;
+		try {
+			temporary = Files.createTempFile(target.toAbsolutePath().getParent(), "heights", ".tmp");
+			try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				channel.position(TiledHeightMap.HEADER_BYTES);
+
+				for(int firstRow = 0; firstRow < depth; firstRow += tileSize) {
+					int rows = Math.min(tileSize, depth - firstRow);
+					band.clear();
+					reader.read(firstRow, rows, band);
+
+					// samples are hashed row by row, so the hash does not depend on the tile size
+					for(int i = 0; i < rows * width; i++) {
+						double sample;
+						if(sampleType == SampleType.FLOAT) {
+							float value = band.getFloat(i * sampleBytes);
+							hash.add(value);
+							sample = value;
+						} else {
+							short value = band.getShort(i * sampleBytes);
+							hash.add(value);
+							sample = sampleType == SampleType.SHORT ? value : value & 0xFFFF;
+						}
+
+						double height = heightOffset + heightScale * sample;
+						minHeight = Math.min(minHeight, height);
+						maxHeight = Math.max(maxHeight, height);
+					}
+
+					// rows of the band are split among the tiles, padding stays zero
+					Arrays.fill(tiles.array(), (byte) 0);
+					for(int i = 0; i < rows; i++) {
+						for(int tileX = 0; tileX < tilesX; tileX++) {
+							int samples = Math.min(tileSize, width - tileX * tileSize);
+							System.arraycopy(band.array(), (i * width + tileX * tileSize) * sampleBytes,
+									tiles.array(), ((tileX * tileSize + i) * tileSize) * sampleBytes,
+									samples * sampleBytes);
+						}
+					}
+
+					tiles.clear();
+					while(tiles.hasRemaining()) {
+						channel.write(tiles);
+					}
+				}
+
+				ByteBuffer header = ByteBuffer.allocate(TiledHeightMap.HEADER_BYTES);
+				header.putInt(TiledHeightMap.MAGIC).putInt(TiledHeightMap.FORMAT_VERSION)
+						.putInt(sampleType.ordinal()).putInt(width).putInt(depth).putInt(tileSize)
+						.putDouble(pixelDistance).putDouble(heightOffset).putDouble(heightScale)
+						.putDouble(minHeight).putDouble(maxHeight).putLong(hash.get());
+				header.clear();
+				while(header.hasRemaining()) {
+					channel.write(header, header.position());
+				}
+			}
+
+			Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			try {
+				if(temporary != null) Files.deleteIfExists(temporary);
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw new UncheckedIOException("Cannot write tiled height map " + target, e);
+		}
+
+		LOGGER.fine("Wrote " + width + " x " + depth + " samples to " + target + ", heights from " + minHeight +
+				" to " + maxHeight);
+	}
+
+	// fills the band with samples of the rows, row by row, in the stored type
+	private interface BandReader {
+
+		void read(int firstRow, int rows, ByteBuffer band) throws IOException;
+
+	}
+
+	/**
+	 * One-time conversion from the command line, e.g.
+	 * "image medvednicaHeightMap12.png medvednica.dem 135 1041 11.11" or
+	 * "raw dem.raw dem.dem 40000 30000 SHORT LITTLE_ENDIAN 0 1 30".
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length == 6 && args[0].equals("image")) {
+			BufferedImage image = ImageIO.read(new File(args[1]));
+			if(image == null) throw new IOException("Unsupported image format: " + args[1]);
+
+			fromImage(image, Double.parseDouble(args[3]), Double.parseDouble(args[4]),
+					Double.parseDouble(args[5]), Paths.get(args[2]));
+		} else if(args.length == 10 && args[0].equals("raw")) {
+			ByteOrder order = args[6].equals(ByteOrder.LITTLE_ENDIAN.toString()) ?
+					ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+			fromRaw(Paths.get(args[1]), Integer.parseInt(args[3]), Integer.parseInt(args[4]),
+					SampleType.valueOf(args[5]), order, Double.parseDouble(args[7]), Double.parseDouble(args[8]),
+					Double.parseDouble(args[9]), Paths.get(args[2]));
+		} else {
+			System.err.println("Usage: image <source> <target> <minHeight> <maxHeight> <pixelDistance>");
+			System.err.println("       raw <source> <target> <width> <depth> <SHORT|UNSIGNED_SHORT|FLOAT> "
+					+ "<BIG_ENDIAN|LITTLE_ENDIAN> <heightOffset> <heightScale> <pixelDistance>");
+			System.exit(1);
+		}
+	}
+
+}
@@ -99,20 +99,7 @@ public class TreePlacer {
 						System.exit(1);
 					}
 					
-					Map<TreeType, List<Vector3f>> locationsPerType = new HashMap<>();
-					for(TreeType type : TreeType.values()) {
-						locationsPerType.put(type, new ArrayList<>());
-					}
-					
-					for(Point2D.Float location : locations) {
-						if(inNoTreeZone(location)) continue;
-						
-						TreeType type = biomesMap.getTreeType(location.x, location.y);
-						float height = usePreciseHeight ?
-								heightMap.getHeight(location.x, location.y) :
-								heightMap.getHeightApprox(location.x, location.y);
-						locationsPerType.get(type).add(new Vector3f(location.x, height, location.y));
-					}
+					Map<TreeType, List<Vector3f>> locationsPerType = placeTrees(locations);
 					
 					try {
 						outQueue.put(new QueueProduct<>(locationsPerType));
@@ -131,20 +118,37 @@ public class TreePlacer {
 	}
 	
 	public Map<TreeType, List<Vector3f>> computeLocations() {
+		return placeTrees(sampler.sample());
+	}
+	
+	// heights of all locations outside of no tree zones are computed at once
+	private Map<TreeType, List<Vector3f>> placeTrees(List<Point2D.Float> locations) {
 		Map<TreeType, List<Vector3f>> locationsPerType = new HashMap<>();
 		for(TreeType type : TreeType.values()) {
 			locationsPerType.put(type, new ArrayList<>());
 		}
-
-		List<Point2D.Float> locations = sampler.sample();
+		
+		float[] xs = new float[locations.size()];
+		float[] zs = new float[locations.size()];
+		int count = 0;
 		for(Point2D.Float location : locations) {
 			if(inNoTreeZone(location)) continue;
 			
-			TreeType type = biomesMap.getTreeType(location.x, location.y);
-			float height = usePreciseHeight ?
-					heightMap.getHeight(location.x, location.y) :
-					heightMap.getHeightApprox(location.x, location.y);
-			locationsPerType.get(type).add(new Vector3f(location.x, height, location.y));
+			xs[count] = location.x;
+			zs[count] = location.y;
+			count++;
+		}
+		
+		float[] heights = new float[count];
+		if(usePreciseHeight) {
+			heightMap.getHeights(xs, zs, count, heights);
+		} else {
+			heightMap.getHeightsApprox(xs, zs, count, heights);
+		}
+		
+		for(int i = 0; i < count; i++) {
+			TreeType type = biomesMap.getTreeType(xs[i], zs[i]);
+			locationsPerType.get(type).add(new Vector3f(xs[i], heights[i], zs[i]));
 		}
 		
 		return locationsPerType;
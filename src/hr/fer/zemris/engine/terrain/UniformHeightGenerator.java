@@ -1,7 +1,11 @@
 package hr.fer.zemris.engine.terrain;
 
+import java.util.OptionalLong;
+
 import org.lwjgl.util.vector.Vector3f;
 
+import hr.fer.zemris.engine.util.Fingerprint;
+
 public class UniformHeightGenerator implements IHeightMap {
 
 	@Override
@@ -28,5 +32,10 @@ public class UniformHeightGenerator implements IHeightMap {
 	public Vector3f getNormalApprox(float x, float z) {
 		return getNormal(x, z);
 	}
+	
+	@Override
+	public OptionalLong getFingerprint() {
+		return OptionalLong.of(new Fingerprint(UniformHeightGenerator.class.getName()).get());
+	}
 
 }
@@ -0,0 +1,72 @@
+package hr.fer.zemris.engine.util;
+
+/**
+ * Stateless random number generator. Every value is a hash of the seed, a stream
+ * identifier, coordinates and a counter, so it does not depend on the order of
+ * calls, on the number of threads or on which values were cached. Different
+ * users of the same seed should use different streams.
+ *
+ * Inputs are combined one by one with the SplitMix64 finalizer.
+ */
+public class CoordinateRandom {
+	
+	static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	
+	private final long seed;
+	
+	public CoordinateRandom(long seed) {
+		this.seed = seed;
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+	
+	public long getLong(int stream, int x, int z, int counter) {
+		long h = mix(seed + GOLDEN_GAMMA * (stream + 1L));
+		h = mix(h + GOLDEN_GAMMA * (x + 1L));
+		h = mix(h + GOLDEN_GAMMA * (z + 1L));
+		return mix(h + GOLDEN_GAMMA * (counter + 1L));
+	}
+	
+	/**
+	 * Uniformly distributed integer from [0, bound).
+	 */
+	public int getInt(int stream, int x, int z, int counter, int bound) {
+		if(bound <= 0) {
+			throw new IllegalArgumentException("Bound must be positive, got: " + bound);
+		}
+		
+		// multiply-shift keeps the bias below 2^-32 without rejection
+		return (int) (((getLong(stream, x, z, counter) >>> 32) * bound) >>> 32);
+	}
+	
+	/**
+	 * Uniformly distributed double from [0, 1).
+	 */
+	public double getDouble(int stream, int x, int z, int counter) {
+		return (getLong(stream, x, z, counter) >>> 11) * 0x1.0p-53;
+	}
+	
+	/**
+	 * Uniformly distributed float from [0, 1).
+	 */
+	public float getFloat(int stream, int x, int z, int counter) {
+		return (getLong(stream, x, z, counter) >>> 40) * 0x1.0p-24f;
+	}
+	
+	/**
+	 * Converts a real coordinate to an integer one, equal coordinates give equal
+	 * integers.
+	 */
+	public static int coordinate(float value) {
+		return Float.floatToIntBits(value + 0f); // -0 becomes 0
+	}
+	
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
@@ -0,0 +1,182 @@
+package hr.fer.zemris.engine.util;
+
+/**
+ * 2D OpenSimplex noise in single precision, on the same lattice and with the
+ * same gradients as OpenSimplexNoise of the same seed. Both gradient components
+ * are looked up from one flat table indexed by the lattice hash, and no objects
+ * are allocated, so it is safe for use from multiple threads.
+ *
+ * Values differ from those of OpenSimplexNoise only by rounding, which grows
+ * with the distance of the coordinates from the origin; see getTolerance.
+ */
+public class FastSimplexNoise {
+
+	private static final float STRETCH_CONSTANT = -0.211324865405187f; // (1/sqrt(2+1)-1)/2
+	private static final float SQUISH_CONSTANT = 0.366025403784439f; // (sqrt(2+1)-1)/2
+	private static final float NORM_FACTOR = 1f / 47f;
+
+	private final int[] perm = new int[256];
+	private final float[] gradients = new float[512]; // x and y components by hash of a vertex
+
+	public FastSimplexNoise(long seed) {
+		short[] permutation = OpenSimplexNoise.permutation(seed);
+
+		for(int i = 0; i < 256; i++) {
+			perm[i] = permutation[i];
+			int index = permutation[i] & 0x0E;
+			gradients[i * 2] = OpenSimplexNoise.gradients2D[index];
+			gradients[i * 2 + 1] = OpenSimplexNoise.gradients2D[index + 1];
+		}
+	}
+
+	/**
+	 * Bound of the difference from OpenSimplexNoise at the coordinates; partial
+	 * derivatives differ by at most four times as much.
+	 */
+	public static float getTolerance(float x, float y) {
+		return 1e-6f + 4e-7f * Math.max(Math.abs(x), Math.abs(y));
+	}
+
+	public float eval(float x, float y) {
+		// place coordinates onto the grid and find the rhombus origin
+		float stretchOffset = (x + y) * STRETCH_CONSTANT;
+		float xs = x + stretchOffset;
+		float ys = y + stretchOffset;
+		int xsb = fastFloor(xs);
+		int ysb = fastFloor(ys);
+
+		float squishOffset = (xsb + ysb) * SQUISH_CONSTANT;
+		float xins = xs - xsb;
+		float yins = ys - ysb;
+		float inSum = xins + yins;
+
+		// positions relative to the origin
+		float dx0 = x - (xsb + squishOffset);
+		float dy0 = y - (ysb + squishOffset);
+
+		float value = contribution(xsb + 1, ysb, dx0 - 1 - SQUISH_CONSTANT, dy0 - SQUISH_CONSTANT)
+				+ contribution(xsb, ysb + 1, dx0 - SQUISH_CONSTANT, dy0 - 1 - SQUISH_CONSTANT);
+
+		// extra vertex and the vertex of the triangle, like in OpenSimplexNoise
+		if(inSum <= 1) {
+			float zins = 1 - inSum;
+			if(zins > xins || zins > yins) {
+				if(xins > yins) {
+					value += contribution(xsb + 1, ysb - 1, dx0 - 1, dy0 + 1);
+				} else {
+					value += contribution(xsb - 1, ysb + 1, dx0 + 1, dy0 - 1);
+				}
+			} else {
+				value += contribution(xsb + 1, ysb + 1, dx0 - 1 - 2 * SQUISH_CONSTANT, dy0 - 1 - 2 * SQUISH_CONSTANT);
+			}
+			value += contribution(xsb, ysb, dx0, dy0);
+		} else {
+			float zins = 2 - inSum;
+			if(zins < xins || zins < yins) {
+				if(xins > yins) {
+					value += contribution(xsb + 2, ysb, dx0 - 2 - 2 * SQUISH_CONSTANT, dy0 - 2 * SQUISH_CONSTANT);
+				} else {
+					value += contribution(xsb, ysb + 2, dx0 - 2 * SQUISH_CONSTANT, dy0 - 2 - 2 * SQUISH_CONSTANT);
+				}
+			} else {
+				value += contribution(xsb, ysb, dx0, dy0);
+			}
+			value += contribution(xsb + 1, ysb + 1, dx0 - 1 - 2 * SQUISH_CONSTANT, dy0 - 1 - 2 * SQUISH_CONSTANT);
+		}
+
+		return value * NORM_FACTOR;
+	}
+
+	/**
+	 * Noise with its partial derivatives by x and y, which are written to the
+	 * first two elements of derivatives.
+	 */
+	public float eval(float x, float y, float[] derivatives) {
+		derivatives[0] = 0f;
+		derivatives[1] = 0f;
+
+		float stretchOffset = (x + y) * STRETCH_CONSTANT;
+		float xs = x + stretchOffset;
+		float ys = y + stretchOffset;
+		int xsb = fastFloor(xs);
+		int ysb = fastFloor(ys);
+
+		float squishOffset = (xsb + ysb) * SQUISH_CONSTANT;
+		float xins = xs - xsb;
+		float yins = ys - ysb;
+		float inSum = xins + yins;
+
+		// derivatives of relative positions by x and y are 1
+		float dx0 = x - (xsb + squishOffset);
+		float dy0 = y - (ysb + squishOffset);
+
+		float value = contribution(xsb + 1, ysb, dx0 - 1 - SQUISH_CONSTANT, dy0 - SQUISH_CONSTANT, derivatives)
+				+ contribution(xsb, ysb + 1, dx0 - SQUISH_CONSTANT, dy0 - 1 - SQUISH_CONSTANT, derivatives);
+
+		if(inSum <= 1) {
+			float zins = 1 - inSum;
+			if(zins > xins || zins > yins) {
+				if(xins > yins) {
+					value += contribution(xsb + 1, ysb - 1, dx0 - 1, dy0 + 1, derivatives);
+				} else {
+					value += contribution(xsb - 1, ysb + 1, dx0 + 1, dy0 - 1, derivatives);
+				}
+			} else {
+				value += contribution(xsb + 1, ysb + 1, dx0 - 1 - 2 * SQUISH_CONSTANT, dy0 - 1 - 2 * SQUISH_CONSTANT,
+						derivatives);
+			}
+			value += contribution(xsb, ysb, dx0, dy0, derivatives);
+		} else {
+			float zins = 2 - inSum;
+			if(zins < xins || zins < yins) {
+				if(xins > yins) {
+					value += contribution(xsb + 2, ysb, dx0 - 2 - 2 * SQUISH_CONSTANT, dy0 - 2 * SQUISH_CONSTANT,
+							derivatives);
+				} else {
+					value += contribution(xsb, ysb + 2, dx0 - 2 * SQUISH_CONSTANT, dy0 - 2 - 2 * SQUISH_CONSTANT,
+							derivatives);
+				}
+			} else {
+				value += contribution(xsb, ysb, dx0, dy0, derivatives);
+			}
+			value += contribution(xsb + 1, ysb + 1, dx0 - 1 - 2 * SQUISH_CONSTANT, dy0 - 1 - 2 * SQUISH_CONSTANT,
+					derivatives);
+		}
+
+		derivatives[0] *= NORM_FACTOR;
+		derivatives[1] *= NORM_FACTOR;
+		return value * NORM_FACTOR;
+	}
+
+	private float contribution(int xsv, int ysv, float dx, float dy) {
+		float attn = 2 - dx * dx - dy * dy;
+		if(attn <= 0) return 0;
+
+		int hash = ((perm[xsv & 0xFF] + ysv) & 0xFF) << 1;
+		attn *= attn;
+		return attn * attn * (gradients[hash] * dx + gradients[hash + 1] * dy);
+	}
+
+	private float contribution(int xsv, int ysv, float dx, float dy, float[] derivatives) {
+		float attn = 2 - dx * dx - dy * dy;
+		if(attn <= 0) return 0;
+
+		int hash = ((perm[xsv & 0xFF] + ysv) & 0xFF) << 1;
+		float gx = gradients[hash];
+		float gy = gradients[hash + 1];
+		float extrapolation = gx * dx + gy * dy;
+
+		float attn2 = attn * attn;
+		float attn4 = attn2 * attn2;
+		float slope = 8 * attn2 * attn * extrapolation;
+		derivatives[0] += attn4 * gx - slope * dx;
+		derivatives[1] += attn4 * gy - slope * dy;
+		return attn4 * extrapolation;
+	}
+
+	private static int fastFloor(float x) {
+		int xi = (int) x;
+		return x < xi ? xi - 1 : xi;
+	}
+
+}
@@ -0,0 +1,74 @@
+package hr.fer.zemris.engine.util;
+
+import java.util.BitSet;
+
+/**
+ * 64-bit hash of a sequence of values, used to recognize data computed from the
+ * same inputs, e.g. routes on the same terrain. Values are combined one by one
+ * with the SplitMix64 finalizer like in CoordinateRandom, so the hash depends on
+ * their order. It is not a cryptographic hash.
+ */
+public class Fingerprint {
+
+	private long hash;
+
+	/**
+	 * Name distinguishes different kinds of data with equal values.
+	 */
+	public Fingerprint(String name) {
+		add(name);
+	}
+
+	public Fingerprint add(long value) {
+		hash = CoordinateRandom.mix(hash + CoordinateRandom.GOLDEN_GAMMA * (value + 1L));
+		return this;
+	}
+
+	public Fingerprint add(int value) {
+		return add((long) value);
+	}
+
+	public Fingerprint add(boolean value) {
+		return add(value ? 1L : 0L);
+	}
+
+	public Fingerprint add(float value) {
+		return add(Float.floatToIntBits(value + 0f)); // -0 equals 0
+	}
+
+	public Fingerprint add(double value) {
+		return add(Double.doubleToLongBits(value + 0.0));
+	}
+
+	public Fingerprint add(String value) {
+		add(value.length());
+		for(int i = 0; i < value.length(); i++) {
+			add(value.charAt(i));
+		}
+
+		return this;
+	}
+
+	public Fingerprint add(Point2Df point) {
+		return add(point.getX()).add(point.getZ());
+	}
+
+	public Fingerprint add(Point2Di point) {
+		return add(point.getX()).add(point.getZ());
+	}
+
+	public Fingerprint add(BitSet bits) {
+		long[] words = bits.toLongArray();
+		add(words.length);
+		for(long word : words) {
+			add(word);
+		}
+
+		return this;
+	}
+
+	public long get() {
+		return hash;
+	}
+
+}
@@ -0,0 +1,25 @@
+package hr.fer.zemris.engine.util;
+
+/**
+ * Cells under a straight segment between two grid cells, as roads are marked
+ * on the grid: one cell for every step along the longer axis, from the first
+ * cell at step 0 to the last one, offsets rounded to the nearest cell.
+ */
+public class GridLine {
+
+	private GridLine() {
+	}
+
+	public static int steps(int dx, int dz) {
+		return Math.max(Math.abs(dx), Math.abs(dz));
+	}
+
+	/**
+	 * Offset from the first cell along an axis with the given difference, at the
+	 * step of the segment.
+	 */
+	public static int offset(int delta, int step, int steps) {
+		return steps == 0 ? 0 : Math.round(delta * step / (float) steps);
+	}
+
+}
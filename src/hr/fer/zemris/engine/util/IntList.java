@@ -0,0 +1,60 @@
+package hr.fer.zemris.engine.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive integers, e.g. a buffer of cell indices which is
+ * refilled without boxing or allocating for every use.
+ */
+public class IntList {
+
+	private int[] values;
+	private int size;
+
+	public IntList() {
+		this(16);
+	}
+
+	public IntList(int capacity) {
+		if(capacity < 0) {
+			throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+		}
+
+		this.values = new int[capacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int get(int i) {
+		if(i >= size) throw new IndexOutOfBoundsException("Index " + i + " of " + size + " elements.");
+		return values[i];
+	}
+
+	public void set(int i, int value) {
+		if(i >= size) throw new IndexOutOfBoundsException("Index " + i + " of " + size + " elements.");
+		values[i] = value;
+	}
+
+	public void add(int value) {
+		if(size == values.length) values = Arrays.copyOf(values, Math.max(16, size * 2));
+		values[size++] = value;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Keeps only the first size elements.
+	 */
+	public void truncate(int size) {
+		if(size < 0 || size > this.size) {
+			throw new IllegalArgumentException("Cannot truncate " + this.size + " elements to " + size + ".");
+		}
+
+		this.size = size;
+	}
+
+}
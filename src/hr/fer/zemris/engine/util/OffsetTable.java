@@ -0,0 +1,44 @@
+package hr.fer.zemris.engine.util;
+
+import java.util.List;
+
+/**
+ * Immutable list of grid offsets, e.g. a neighborhood of a cell. Offsets keep
+ * the order in which they were sampled.
+ */
+public class OffsetTable {
+
+	private final int[] xs;
+	private final int[] zs;
+
+	public OffsetTable(int[] xs, int[] zs) {
+		if(xs.length != zs.length) {
+			throw new IllegalArgumentException("Offset tables must have the same length.");
+		}
+
+		this.xs = xs.clone();
+		this.zs = zs.clone();
+	}
+
+	public int size() {
+		return xs.length;
+	}
+
+	public int getX(int i) {
+		return xs[i];
+	}
+
+	public int getZ(int i) {
+		return zs[i];
+	}
+
+	/**
+	 * Appends cells at all offsets from the center to the list.
+	 */
+	public void addAll(Point2Di center, List<Point2Di> cells) {
+		for(int i = 0; i < xs.length; i++) {
+			cells.add(new Point2Di(center.getX() + xs[i], center.getZ() + zs[i]));
+		}
+	}
+
+}
@@ -51,8 +51,12 @@ public class OpenSimplexNoise {
 	//Generates a proper permutation (i.e. doesn't merely perform N successive pair swaps on a base array)
 	//Uses a simple 64-bit LCG.
 	public OpenSimplexNoise(long seed) {
-		perm = new short[256];
-		permGradIndex3D = new short[256];
+		this(permutation(seed));
+	}
+	
+	//Permutation generated from the seed, shared with FastSimplexNoise.
+	static short[] permutation(long seed) {
+		short[] perm = new short[256];
 		short[] source = new short[256];
 		for (short i = 0; i < 256; i++)
 			source[i] = i;
@@ -65,9 +69,9 @@ public class OpenSimplexNoise {
 			if (r < 0)
 				r += (i + 1);
 			perm[i] = source[r];
-			permGradIndex3D[i] = (short)((perm[i] % (gradients3D.length / 3)) * 3);
 			source[r] = source[i];
 		}
+		return perm;
 	}
 	
 	//2D OpenSimplex Noise.
@@ -185,6 +189,106 @@ public class OpenSimplexNoise {
 		return value / NORM_CONSTANT_2D;
 	}
 	
+	//2D OpenSimplex Noise with its partial derivatives by x and y, written to derivatives.
+	//Value is equal to the one returned by eval(x, y).
+	public double eval(double x, double y, double[] derivatives) {
+		derivatives[0] = 0;
+		derivatives[1] = 0;
+	
+		//Place input coordinates onto grid.
+		double stretchOffset = (x + y) * STRETCH_CONSTANT_2D;
+		double xs = x + stretchOffset;
+		double ys = y + stretchOffset;
+		
+		//Floor to get grid coordinates of rhombus (stretched square) super-cell origin.
+		int xsb = fastFloor(xs);
+		int ysb = fastFloor(ys);
+		
+		//Skew out to get actual coordinates of rhombus origin.
+		double squishOffset = (xsb + ysb) * SQUISH_CONSTANT_2D;
+		double xb = xsb + squishOffset;
+		double yb = ysb + squishOffset;
+		
+		//Compute grid coordinates relative to rhombus origin.
+		double xins = xs - xsb;
+		double yins = ys - ysb;
+		
+		//Sum those together to get a value that determines which region we're in.
+		double inSum = xins + yins;
+
+		//Positions relative to origin point, their derivatives by x and y are 1.
+		double dx0 = x - xb;
+		double dy0 = y - yb;
+		
+		double dx_ext, dy_ext;
+		int xsv_ext, ysv_ext;
+		
+		double value = 0;
+
+		//Contribution (1,0)
+		value += contribute(xsb + 1, ysb + 0, dx0 - 1 - SQUISH_CONSTANT_2D, dy0 - 0 - SQUISH_CONSTANT_2D, derivatives);
+
+		//Contribution (0,1)
+		value += contribute(xsb + 0, ysb + 1, dx0 - 0 - SQUISH_CONSTANT_2D, dy0 - 1 - SQUISH_CONSTANT_2D, derivatives);
+		
+		//Extra vertex is chosen like in eval(x, y).
+		if (inSum <= 1) {
+			double zins = 1 - inSum;
+			if (zins > xins || zins > yins) {
+				if (xins > yins) {
+					xsv_ext = xsb + 1;
+					ysv_ext = ysb - 1;
+					dx_ext = dx0 - 1;
+					dy_ext = dy0 + 1;
+				} else {
+					xsv_ext = xsb - 1;
+					ysv_ext = ysb + 1;
+					dx_ext = dx0 + 1;
+					dy_ext = dy0 - 1;
+				}
+			} else {
+				xsv_ext = xsb + 1;
+				ysv_ext = ysb + 1;
+				dx_ext = dx0 - 1 - 2 * SQUISH_CONSTANT_2D;
+				dy_ext = dy0 - 1 - 2 * SQUISH_CONSTANT_2D;
+			}
+		} else {
+			double zins = 2 - inSum;
+			if (zins < xins || zins < yins) {
+				if (xins > yins) {
+					xsv_ext = xsb + 2;
+					ysv_ext = ysb + 0;
+					dx_ext = dx0 - 2 - 2 * SQUISH_CONSTANT_2D;
+					dy_ext = dy0 + 0 - 2 * SQUISH_CONSTANT_2D;
+				} else {
+					xsv_ext = xsb + 0;
+					ysv_ext = ysb + 2;
+					dx_ext = dx0 + 0 - 2 * SQUISH_CONSTANT_2D;
+					dy_ext = dy0 - 2 - 2 * SQUISH_CONSTANT_2D;
+				}
+			} else {
+				dx_ext = dx0;
+				dy_ext = dy0;
+				xsv_ext = xsb;
+				ysv_ext = ysb;
+			}
+			xsb += 1;
+			ysb += 1;
+			dx0 = dx0 - 1 - 2 * SQUISH_CONSTANT_2D;
+			dy0 = dy0 - 1 - 2 * SQUISH_CONSTANT_2D;
+		}
+		
+		//Contribution (0,0) or (1,1)
+		value += contribute(xsb, ysb, dx0, dy0, derivatives);
+		
+		//Extra Vertex
+		value += contribute(xsv_ext, ysv_ext, dx_ext, dy_ext, derivatives);
+		
+		derivatives[0] /= NORM_CONSTANT_2D;
+		derivatives[1] /= NORM_CONSTANT_2D;
+		return value / NORM_CONSTANT_2D;
+	}
+	
 	//3D OpenSimplex Noise.
 	public double eval(double x, double y, double z) {
 	
@@ -2067,6 +2171,25 @@ public class OpenSimplexNoise {
 			+ gradients2D[index + 1] * dy;
 	}
 	
+	//Contribution of a 2D vertex, adds its partial derivatives to derivatives.
+	private double contribute(int xsv, int ysv, double dx, double dy, double[] derivatives)
+	{
+		double attn = 2 - dx * dx - dy * dy;
+		if (attn <= 0)
+			return 0;
+		
+		int index = perm[(perm[xsv & 0xFF] + ysv) & 0xFF] & 0x0E;
+		double gx = gradients2D[index];
+		double gy = gradients2D[index + 1];
+		double extrapolation = gx * dx + gy * dy;
+		
+		double attn2 = attn * attn;
+		double attn3 = attn2 * attn;
+		derivatives[0] += attn2 * attn2 * gx - 8 * attn3 * dx * extrapolation;
+		derivatives[1] += attn2 * attn2 * gy - 8 * attn3 * dy * extrapolation;
+		return attn2 * attn2 * extrapolation;
+	}
+	
 	private double extrapolate(int xsb, int ysb, int zsb, double dx, double dy, double dz)
 	{
 		int index = permGradIndex3D[(perm[(perm[xsb & 0xFF] + ysb) & 0xFF] + zsb) & 0xFF];
@@ -2091,7 +2214,7 @@ public class OpenSimplexNoise {
 	
 	//Gradients for 2D. They approximate the directions to the
 	//vertices of an octagon from the center.
-	private static byte[] gradients2D = new byte[] {
+	static final byte[] gradients2D = new byte[] {
 		 5,  2,    2,  5,
 		-5,  2,   -2,  5,
 		 5, -2,    2, -5,
@@ -2135,4 +2258,4 @@ public class OpenSimplexNoise {
 	     3, -1, -1, -1,      1, -3, -1, -1,      1, -1, -3, -1,      1, -1, -1, -3,
 	    -3, -1, -1, -1,     -1, -3, -1, -1,     -1, -1, -3, -1,     -1, -1, -1, -3,
 	};
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -4,7 +4,6 @@ import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
 import java.util.concurrent.BlockingQueue;
 import java.util.function.BiFunction;
 import java.util.logging.Level;
@@ -22,6 +21,11 @@ public class PoissonDiskSampler extends Sampler {
 	/** If max number of points is not specified, this one is used. */
 	private static final int DEFAULT_MAX_POINTS = 100_000;
 	
+	/** Random streams of the starting point, active point choice and candidates. */
+	private static final int START_STREAM = 1;
+	private static final int ACTIVE_STREAM = 2;
+	private static final int CANDIDATE_STREAM = 3;
+	
 	/** 
 	 * Minimal allowed value for the inner radius of the circular crown in 
 	 * which the next point will be chosen. This is also minimum possible 
@@ -44,7 +48,7 @@ public class PoissonDiskSampler extends Sampler {
 	private final BiFunction<Float, Float, Float> distribution;
 	private final int pointsToGenerate;
 	private final int maxPoints;
-	private final Random random;
+	private final CoordinateRandom random; // draws are keyed by iteration, not by order of calls
 	
 	private final Point2D.Float startingPoint;
 
@@ -62,7 +66,7 @@ public class PoissonDiskSampler extends Sampler {
 		this.minInnerRadius = minInnerRadius;
 		this.maxInnerRadius = maxInnerRadius;
 		this.distribution = distribution;
-		this.random = new Random(seed);
+		this.random = new CoordinateRandom(seed);
 		this.pointsToGenerate = pointsToGenerate;
 		this.maxPoints = maxPoints;
 		this.cellSize = (float) (maxInnerRadius / Math.sqrt(2));
@@ -101,14 +105,14 @@ public class PoissonDiskSampler extends Sampler {
 
 		addFirstPoint(startingPoint, grid, activeList, pointList);
 
-		while(!activeList.isEmpty() && (pointList.size() < maxPoints)) {
-			int listIndex = random.nextInt(activeList.size());
+		for(int iteration = 0; !activeList.isEmpty() && (pointList.size() < maxPoints); iteration++) {
+			int listIndex = random.getInt(ACTIVE_STREAM, iteration, 0, 0, activeList.size());
 
 			Point2D.Float point = activeList.get(listIndex);
 			boolean found = false;
 
 			for(int k = 0; k < pointsToGenerate; k++) {
-				found |= addNextPoint(grid, activeList, pointList, point);
+				found |= addNextPoint(grid, activeList, pointList, point, iteration, k);
 			}
 
 			if(!found) {
@@ -136,14 +140,14 @@ public class PoissonDiskSampler extends Sampler {
 
 		addFirstPoint(startingPoint, grid, activeList, pointList);
 
-		while(!activeList.isEmpty() && (pointList.size() < maxPoints)) {
-			int listIndex = random.nextInt(activeList.size());
+		for(int iteration = 0; !activeList.isEmpty() && (pointList.size() < maxPoints); iteration++) {
+			int listIndex = random.getInt(ACTIVE_STREAM, iteration, 0, 0, activeList.size());
 
 			Point2D.Float point = activeList.get(listIndex);
 			boolean found = false;
 
 			for(int k = 0; k < pointsToGenerate; k++) {
-				found |= addNextPoint(grid, activeList, pointList, point);
+				found |= addNextPoint(grid, activeList, pointList, point, iteration, k);
 				if(pointList.size() == batchSize) {
 					batchQueue.put(new QueueProduct<>(pointList));
 					
@@ -169,7 +173,7 @@ public class PoissonDiskSampler extends Sampler {
 	}
 
 	private boolean addNextPoint(List<Point2D.Float>[][] grid, List<Point2D.Float> activeList,
-			List<Point2D.Float> pointList, Point2D.Float point) {
+			List<Point2D.Float> pointList, Point2D.Float point, int iteration, int attempt) {
 		boolean found = false;
 		
 		float fraction = distribution.apply(point.x, point.y);
@@ -177,7 +181,7 @@ public class PoissonDiskSampler extends Sampler {
 		
 		float minDist =  minInnerRadius + fraction * (maxInnerRadius - minInnerRadius);
 		
-		Point2D.Float q = generateRandomAround(point, minDist);
+		Point2D.Float q = generateRandomAround(point, minDist, iteration, attempt);
 
 		if ((q.x >= p0.x) && (q.x < p1.x) && (q.y > p0.y) && (q.y < p1.y)) {
 			Point qIndex = pointFloatToInt(q, p0, cellSize);
@@ -215,10 +219,10 @@ public class PoissonDiskSampler extends Sampler {
 	}
 	
 	private Point2D.Float randomPoint(Point2D.Float p0, Point2D.Float dimensions) {
-		float d = random.nextFloat();
+		float d = random.getFloat(START_STREAM, 0, 0, 0);
 		float xr = p0.x + dimensions.x * d;
 
-		d = random.nextFloat();
+		d = random.getFloat(START_STREAM, 0, 0, 1);
 		float yr = p0.y + dimensions.y * d;
 
 		return new Point2D.Float(xr, yr);
@@ -229,11 +233,11 @@ public class PoissonDiskSampler extends Sampler {
 				(int) ((pointFloat.y - origin.y) / cellSize));
 	}
 
-	private Point2D.Float generateRandomAround(Point2D.Float centre, float minDist) {
-		float d = random.nextFloat();
+	private Point2D.Float generateRandomAround(Point2D.Float centre, float minDist, int iteration, int attempt) {
+		float d = random.getFloat(CANDIDATE_STREAM, iteration, attempt, 0);
 		float radius = (minDist + minDist * d);
 
-		d = random.nextFloat();
+		d = random.getFloat(CANDIDATE_STREAM, iteration, attempt, 1);
 		float angle = (float) (2 * Math.PI * d);
 
 		float newX = (float) (radius * Math.sin(angle));
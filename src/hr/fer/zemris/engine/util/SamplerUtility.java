@@ -1,21 +1,66 @@
 package hr.fer.zemris.engine.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SamplerUtility {
 
+	// tables are computed once per combination of parameters
+	private static final Map<List<Object>, OffsetTable> offsetTables = new ConcurrentHashMap<>();
+
 	public static List<Point2Di> sampleCircularCrown(Point2Di center, float innerRadius, float outerRadius,
 			float cellSize, boolean avoidSameDirections, int samples, Random random) {
 		if(samples != -1 && samples < 0) {
 			throw new IllegalArgumentException("Cannot limit number of samples to less than 0.");
 		}
 		
-		int outerDist = (int) Math.ceil(outerRadius / cellSize);
+		List<Point2Di> candidatePoints = new ArrayList<>();
+		circularCrownOffsets(innerRadius, outerRadius, cellSize, avoidSameDirections).addAll(center, candidatePoints);
 
+		if(samples == -1) return candidatePoints;
+		return randomElements(candidatePoints, samples, random);
+	}
+	
+	public static List<Point2Di> sampleCircularCrown(Point2Di center, float innerRadius, float outerRadius,
+			float cellSize, boolean avoidSameDirections) {
+		return sampleCircularCrown(center, innerRadius, outerRadius, cellSize, avoidSameDirections, -1, null);
+	}
+	
+	public static List<Point2Di> sampleSquare(Point2Di center, int outerRadius, SamplingType samplingType, 
+			boolean excludeCenter) {
 		List<Point2Di> candidatePoints = new ArrayList<>();
+		squareOffsets(outerRadius, samplingType, excludeCenter).addAll(center, candidatePoints);
+		return candidatePoints;
+	}
+	
+	/**
+	 * Offsets of cells sampled by sampleCircularCrown, in the same order.
+	 */
+	public static OffsetTable circularCrownOffsets(float innerRadius, float outerRadius, float cellSize,
+			boolean avoidSameDirections) {
+		return offsetTables.computeIfAbsent(Arrays.asList("crown", innerRadius, outerRadius, cellSize, avoidSameDirections),
+				key -> computeCircularCrownOffsets(innerRadius, outerRadius, cellSize, avoidSameDirections));
+	}
+	
+	/**
+	 * Offsets of cells sampled by sampleSquare, in the same order.
+	 */
+	public static OffsetTable squareOffsets(int outerRadius, SamplingType samplingType, boolean excludeCenter) {
+		return offsetTables.computeIfAbsent(Arrays.asList("square", outerRadius, samplingType, excludeCenter),
+				key -> computeSquareOffsets(outerRadius, samplingType, excludeCenter));
+	}
+	
+	private static OffsetTable computeCircularCrownOffsets(float innerRadius, float outerRadius, float cellSize,
+			boolean avoidSameDirections) {
+		int outerDist = (int) Math.ceil(outerRadius / cellSize);
+		
+		List<Integer> xs = new ArrayList<>();
+		List<Integer> zs = new ArrayList<>();
 		
 		for(int z = -outerDist; z <= outerDist; z++) {
 			for(int x = -outerDist; x <= outerDist; x++) {
@@ -27,23 +72,17 @@ public class SamplerUtility {
 				if(distSquared < innerRadius * innerRadius) continue;
 				if(avoidSameDirections && gcd(Math.abs(x), Math.abs(z)) != 1) continue;
 
-				Point2Di tunnelPoint = new Point2Di(center.getX() + x, center.getZ() + z);
-				candidatePoints.add(tunnelPoint);
+				xs.add(x);
+				zs.add(z);
 			}
 		}
-
-		if(samples == -1) return candidatePoints;
-		return randomElements(candidatePoints, samples, random);
-	}
-	
-	public static List<Point2Di> sampleCircularCrown(Point2Di center, float innerRadius, float outerRadius,
-			float cellSize, boolean avoidSameDirections) {
-		return sampleCircularCrown(center, innerRadius, outerRadius, cellSize, avoidSameDirections, -1, null);
+		
+		return toOffsetTable(xs, zs);
 	}
 	
-	public static List<Point2Di> sampleSquare(Point2Di center, int outerRadius, SamplingType samplingType, 
-			boolean excludeCenter) {
-		List<Point2Di> candidatePoints = new ArrayList<>();
+	private static OffsetTable computeSquareOffsets(int outerRadius, SamplingType samplingType, boolean excludeCenter) {
+		List<Integer> xs = new ArrayList<>();
+		List<Integer> zs = new ArrayList<>();
 
 		for(int z = -outerRadius; z <= outerRadius; z++) {
 			for(int x = -outerRadius; x <= outerRadius; x++) {
@@ -62,12 +101,18 @@ public class SamplerUtility {
 				
 				if(excludeCenter && x == 0 && z == 0) continue;
 
-				Point2Di tunnelPoint = new Point2Di(center.getX() + x, center.getZ() + z);
-				candidatePoints.add(tunnelPoint);
+				xs.add(x);
+				zs.add(z);
 			}
 		}
 
-		return candidatePoints;
+		return toOffsetTable(xs, zs);
+	}
+	
+	private static OffsetTable toOffsetTable(List<Integer> xs, List<Integer> zs) {
+		return new OffsetTable(
+				xs.stream().mapToInt(Integer::intValue).toArray(),
+				zs.stream().mapToInt(Integer::intValue).toArray());
 	}
 
 	private static int gcd(int a, int b) {